@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A tiny HTTP server on the loopback interface that answers every GET with the same PNG, and
+ * counts the requests, so tests can see what the app downloads without the real art servers.
+ */
+class StandInImageServer implements Runnable {
+
+    private final ServerSocket mServerSocket;
+    private final byte[] mImage;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private volatile long mDelayMillis;
+
+    StandInImageServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+
+        Bitmap bitmap = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.YELLOW);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+        bitmap.recycle();
+        mImage = png.toByteArray();
+
+        Thread thread = new Thread(this, "StandInImageServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns a URL prefix that no cache has seen before, so every test starts cold.
+     */
+    String newBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/" + System.nanoTime() + "/";
+    }
+
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Makes every response wait this long before it is sent, like a slow server.
+     */
+    void setDelayMillis(long delayMillis) {
+        mDelayMillis = delayMillis;
+    }
+
+    void shutdown() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }).start();
+            } catch (IOException e) {
+                // Closed by shutdown()
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            // Skip the request line and the headers
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.length() > 0);
+            mRequestCount.incrementAndGet();
+
+            if (mDelayMillis > 0) {
+                Thread.sleep(mDelayMillis);
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(("HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: image/png\r\n" +
+                    "Content-Length: " + mImage.length + "\r\n" +
+                    "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+            out.write(mImage);
+            out.flush();
+        } catch (IOException | InterruptedException e) {
+            // The client went away
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing else to do
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v4.app.FragmentManager;
+import android.test.ActivityInstrumentationTestCase2;
+import android.text.TextUtils;
+import android.util.Log;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.katmitchell.sunshine.data.Forecast;
+import com.katmitchell.sunshine.data.ForecastRepository;
+import com.katmitchell.sunshine.data.TestUtilities;
+import com.katmitchell.sunshine.data.WeatherContract;
+import com.katmitchell.sunshine.data.WeatherContract.WeatherEntry;
+
+public class TestDetailPane extends ActivityInstrumentationTestCase2<DetailActivity> {
+
+    public static final String LOG_TAG = TestDetailPane.class.getSimpleName();
+
+    private Context mContext;
+    private String mOriginalLocation;
+    private final ForecastRepository.Observer mObserver = new ForecastRepository.Observer() {
+        @Override
+        public void onForecastChanged(Forecast forecast) {
+        }
+    };
+
+    public TestDetailPane() {
+        super(DetailActivity.class);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        mOriginalLocation = TestUtilities.setLocation(mContext, TestUtilities.TEST_LOCATION);
+        TestUtilities.insertForecast(mContext);
+
+        // As the list would have, before anything is selected
+        final ForecastRepository repository = ForecastRepository.getInstance(mContext);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                repository.observe(TestUtilities.TEST_LOCATION, mObserver);
+            }
+        });
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                final boolean[] loaded = new boolean[1];
+                getInstrumentation().runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        Forecast forecast = repository.getForecast(TestUtilities.TEST_LOCATION);
+                        loaded[0] = forecast != null
+                                && forecast.days.count == TestUtilities.DAYS;
+                    }
+                });
+                return loaded[0];
+            }
+        }.run();
+
+        setActivityIntent(new Intent().setData(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, today())));
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ForecastRepository.getInstance(mContext).removeObserver(mObserver);
+            }
+        });
+        super.tearDown();
+        TestUtilities.setLocation(mContext, mOriginalLocation);
+    }
+
+    private static long today() {
+        return WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    /*
+        Steps through the days the way arrow keys through the list would, replacing the detail
+        fragment each time as the two pane layout does.  Every day should render within the
+        transaction from the list's forecast, and once the first day's extras have loaded, every
+        next day's should already be there.  Also logs the selection to render latency.
+     */
+    public void testSelectionRendersFromMemory() {
+        final DetailActivity activity = getActivity();
+        final long today = today();
+        final long dayMillis = 1000L * 60 * 60 * 24;
+        long totalNanos = 0;
+        int extrasReady = 0;
+
+        for (int day = 0; day < TestUtilities.DAYS; day++) {
+            final long date = today + day * dayMillis;
+            final long[] nanos = new long[1];
+            final boolean[] rendered = new boolean[2];
+            final DetailFragment[] fragment = new DetailFragment[1];
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    long startNanos = System.nanoTime();
+                    Bundle args = new Bundle();
+                    args.putParcelable(DetailFragment.DETAIL_URI,
+                            WeatherEntry.buildWeatherLocationWithDate(
+                                    TestUtilities.TEST_LOCATION, date));
+                    fragment[0] = new DetailFragment();
+                    fragment[0].setArguments(args);
+                    FragmentManager fragmentManager = activity.getSupportFragmentManager();
+                    fragmentManager.beginTransaction()
+                            .replace(R.id.weather_detail_container, fragment[0])
+                            .commit();
+                    fragmentManager.executePendingTransactions();
+                    nanos[0] = System.nanoTime() - startNanos;
+
+                    rendered[0] = !TextUtils.isEmpty(text(fragment[0], R.id.detail_date_textview));
+                    rendered[1] = !TextUtils.isEmpty(
+                            text(fragment[0], R.id.detail_humidity_textview));
+                }
+            });
+            assertTrue("Error: day " + day + " wasn't rendered with the selection", rendered[0]);
+            totalNanos += nanos[0];
+            if (rendered[1]) {
+                extrasReady++;
+            } else {
+                assertEquals("Error: day " + day + "'s extras weren't prefetched", 0, day);
+            }
+
+            // Its extras, and the next day's with them
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    final boolean[] loaded = new boolean[1];
+                    getInstrumentation().runOnMainSync(new Runnable() {
+                        @Override
+                        public void run() {
+                            loaded[0] = !TextUtils.isEmpty(
+                                    text(fragment[0], R.id.detail_humidity_textview));
+                        }
+                    });
+                    return loaded[0];
+                }
+            }.run();
+        }
+        Log.d(LOG_TAG, "Selection to render: " +
+                totalNanos / TestUtilities.DAYS / 1000 + "us on average, with the extras " +
+                "ready for " + extrasReady + " of " + TestUtilities.DAYS + " days");
+    }
+
+    private static CharSequence text(DetailFragment fragment, int id) {
+        return ((TextView) fragment.getView().findViewById(id)).getText();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.RemoteViews;
+import android.widget.TextView;
+
+import com.katmitchell.sunshine.data.TestUtilities;
+import com.katmitchell.sunshine.widget.DetailWidgetViewsFactory;
+
+public class TestDetailWidget extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDetailWidget.class.getSimpleName();
+
+    private String mOriginalLocation;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mOriginalLocation = TestUtilities.setLocation(mContext, TestUtilities.TEST_LOCATION);
+        TestUtilities.insertForecast(mContext);
+    }
+
+    public void tearDown() throws Exception {
+        TestUtilities.setLocation(mContext, mOriginalLocation);
+        super.tearDown();
+    }
+
+    /*
+        Every row should be built by the time the data has changed, with its text and its
+        click through to the day it shows, and handed over as it is from then on.
+     */
+    public void testRowsBuiltWithData() {
+        DetailWidgetViewsFactory widget = new DetailWidgetViewsFactory(mContext);
+        assertEquals(0, widget.getCount());
+        widget.onDataSetChanged();
+        assertEquals("Error: the widget didn't load the forecast",
+                TestUtilities.DAYS, widget.getCount());
+        for (int position = 0; position < TestUtilities.DAYS; position++) {
+            assertSame("Error: row " + position + " was built again",
+                    widget.getViewAt(position), widget.getViewAt(position));
+        }
+        assertNull("Error: a row past the forecast", widget.getViewAt(TestUtilities.DAYS));
+
+        final RemoteViews first = widget.getViewAt(0);
+        final CharSequence[] high = new CharSequence[1];
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                View row = apply(first, new FrameLayout(mContext));
+                high[0] = ((TextView) row.findViewById(R.id.widget_high_temperature)).getText();
+            }
+        });
+        assertEquals("Error: the row's high temperature",
+                Utility.formatTemperature(mContext, 20), high[0].toString());
+
+        widget.onDestroy();
+        assertEquals(0, widget.getCount());
+    }
+
+    /*
+        Not a pass/fail test: logs what a launcher scrolling through the widget waits for each
+        row, from asking for it through to its views being ready to draw.
+     */
+    public void testScrollLatency() {
+        final DetailWidgetViewsFactory widget = new DetailWidgetViewsFactory(mContext);
+        long startNanos = System.nanoTime();
+        widget.onDataSetChanged();
+        long refreshNanos = System.nanoTime() - startNanos;
+
+        final FrameLayout parent = new FrameLayout(mContext);
+        final long[] fetchNanos = new long[1];
+        final long[] applyNanos = new long[1];
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                for (int position = 0; position < TestUtilities.DAYS; position++) {
+                    // What the launcher waits for across binder
+                    long startNanos = System.nanoTime();
+                    RemoteViews views = unparcel(widget.getViewAt(position));
+                    long fetchedNanos = System.nanoTime();
+                    apply(views, parent);
+                    fetchNanos[0] += fetchedNanos - startNanos;
+                    applyNanos[0] += System.nanoTime() - fetchedNanos;
+                }
+            }
+        });
+        Log.d(LOG_TAG, "Refreshing the widget took " + refreshNanos / 1000 + "us; scrolling, " +
+                "a row took " + fetchNanos[0] / TestUtilities.DAYS / 1000 + "us to fetch and " +
+                applyNanos[0] / TestUtilities.DAYS / 1000 + "us to apply on average");
+    }
+
+    private static RemoteViews unparcel(RemoteViews views) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            views.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return RemoteViews.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private View apply(RemoteViews views, FrameLayout parent) {
+        return views.apply(mContext, parent);
+    }
+}
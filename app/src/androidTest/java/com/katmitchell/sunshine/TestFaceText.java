@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.katmitchell.sunshine.common.FaceText;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/*
+    FaceText is what the watch face draws each frame; it lives in the common module so it can
+    be checked here.
+ */
+public class TestFaceText extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestFaceText.class.getSimpleName();
+
+    private static final String DATE_FORMAT = "EEE, MMM d yyyy";
+    // Sunday 31 July 2016, 09:05:00 UTC
+    private static final long MORNING = 1469955900000L;
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+
+    private static FaceText newFaceText(TimeZone timeZone) {
+        return new FaceText(new SimpleDateFormat(DATE_FORMAT, Locale.US), timeZone);
+    }
+
+    public void testText() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        FaceText text = newFaceText(utc);
+        text.update(MORNING);
+        assertEquals("9:05", new String(text.time, 0, text.timeLength));
+        assertEquals("Sun, Jul 31 2016", new String(text.date, 0, text.dateLength));
+
+        text.update(MORNING + 14 * 60 * MINUTE_IN_MILLIS + 59 * MINUTE_IN_MILLIS);
+        assertEquals("Error: the time wasn't rewritten", "0:04",
+                new String(text.time, 0, text.timeLength));
+        assertEquals("Error: the date wasn't rewritten at midnight", "Mon, Aug 1 2016",
+                new String(text.date, 0, text.dateLength));
+
+        text.setTimeZone(TimeZone.getTimeZone("GMT-10:00"));
+        text.update(MORNING);
+        assertEquals("23:05", new String(text.time, 0, text.timeLength));
+        assertEquals("Sat, Jul 30 2016", new String(text.date, 0, text.dateLength));
+
+        text.setTemperatures(21, -4);
+        assertEquals("21\u00B0", new String(text.high, 0, text.highLength));
+        assertEquals("-4\u00B0", new String(text.low, 0, text.lowLength));
+        text.setTemperatures(Integer.MIN_VALUE, 0);
+        assertEquals(Integer.MIN_VALUE + "\u00B0", new String(text.high, 0, text.highLength));
+        assertEquals("0\u00B0", new String(text.low, 0, text.lowLength));
+    }
+
+    /*
+        Draws 20 hours of frames, a second apart, the way WeatherFace.onDraw does, and
+        checks that none of them allocate.  Midnight is avoided, since the date is formatted
+        again then, once a day.
+     */
+    @SuppressWarnings("deprecation")
+    public void testFrameAllocatesNothing() {
+        FaceText text = newFaceText(TimeZone.getDefault());
+        text.setTemperatures(21, -4);
+        Bitmap bitmap = Bitmap.createBitmap(320, 320, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setTextSize(40);
+
+        long start = (text.getLocalDay(System.currentTimeMillis()) * 24L * 60 + 60)
+                * MINUTE_IN_MILLIS - TimeZone.getDefault().getOffset(System.currentTimeMillis());
+        int frames = 20 * 60 * 60;
+        // Warm up, so the first frame's one-off costs aren't counted
+        drawFrame(canvas, paint, text, start);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long startNanos = System.nanoTime();
+        for (int i = 1; i <= frames; i++) {
+            drawFrame(canvas, paint, text, start + i * 1000L);
+        }
+        long nanos = System.nanoTime() - startNanos;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+        Debug.resetThreadAllocCount();
+
+        Log.d(LOG_TAG, "Frame: " + (nanos / frames) + "ns, " + allocations +
+                " allocations in " + frames + " frames");
+        assertEquals("Error: drawing frames allocated", 0, allocations);
+        bitmap.recycle();
+    }
+
+    private static void drawFrame(Canvas canvas, Paint paint, FaceText text, long now) {
+        text.update(now);
+        canvas.drawText(text.time, 0, text.timeLength, 10, 100, paint);
+        canvas.drawText(text.date, 0, text.dateLength, 10, 150, paint);
+        canvas.drawText(text.high, 0, text.highLength, 10, 200, paint);
+        canvas.drawText(text.low, 0, text.lowLength, 100, 200, paint);
+    }
+}
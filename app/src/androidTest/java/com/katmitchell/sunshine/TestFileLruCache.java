@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class TestFileLruCache extends AndroidTestCase {
+
+    private static final int MAX_FILES = 3;
+
+    private FileLruCache mCache;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mCache = new FileLruCache(new File(mContext.getCacheDir(), "test_lru"), MAX_FILES);
+        mCache.clear();
+    }
+
+    public void tearDown() throws Exception {
+        mCache.clear();
+        super.tearDown();
+    }
+
+    private static FileLruCache.Writer bytes(final int value) {
+        return new FileLruCache.Writer() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                out.write(value);
+            }
+        };
+    }
+
+    /*
+        Once there are more files than the cache keeps, the least recently used go, where
+        reading a file counts as using it.
+     */
+    public void testKeepsMostRecentlyUsed() throws IOException {
+        File first = mCache.put("first", bytes(1));
+        assertEquals(1, first.length());
+        mCache.put("second", bytes(2));
+        mCache.put("third", bytes(3));
+        // Modified times are only kept to the second on some file systems
+        first.setLastModified(System.currentTimeMillis() - 60 * 1000);
+        new File(first.getParentFile(), "second")
+                .setLastModified(System.currentTimeMillis() - 30 * 1000);
+        assertNotNull(mCache.get("first"));
+
+        mCache.put("fourth", bytes(4));
+        assertTrue("Error: a file that was just read was let go", mCache.contains("first"));
+        assertFalse("Error: the least recently used file was kept", mCache.contains("second"));
+        assertTrue(mCache.contains("third"));
+        assertTrue(mCache.contains("fourth"));
+        assertNull(mCache.get("second"));
+    }
+
+    /*
+        A write that fails part of the way through should leave nothing behind, not even its
+        temporary file.
+     */
+    public void testFailedWriteLeavesNothing() {
+        try {
+            mCache.put("broken", new FileLruCache.Writer() {
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    out.write(1);
+                    throw new IOException("Stand-in failure");
+                }
+            });
+            fail("Error: the failure wasn't passed on");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertFalse("Error: a half written file was kept", mCache.contains("broken"));
+        File[] files = new File(mContext.getCacheDir(), "test_lru").listFiles();
+        assertEquals("Error: the temporary file was left behind", 0, files.length);
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Debug;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.katmitchell.sunshine.data.Forecast;
+import com.katmitchell.sunshine.data.PackedForecast;
+import com.katmitchell.sunshine.data.TestUtilities;
+import com.katmitchell.sunshine.data.WeatherContract;
+import com.katmitchell.sunshine.data.WeatherContract.WeatherEntry;
+
+public class TestForecastAdapter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastAdapter.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+    private static final int DAYS = TestUtilities.DAYS;
+    // Walk through a few conditions, so rows get different strings and icons
+    private static final int[] WEATHER_IDS = {500, 600, 700, 800};
+
+    private String mOriginalArtPack;
+    private long mLocationRowId;
+    private long mToday;
+    private Forecast mForecast;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        // Remote art goes through Glide, which allocates for every request whatever we do
+        mOriginalArtPack = TestUtilities.setArtPack(mContext,
+                mContext.getString(R.string.pref_art_pack_sunshine));
+        mLocationRowId = TestUtilities.insertForecast(mContext, WEATHER_IDS);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mForecast = loadForecast(mToday, DAYS);
+    }
+
+    // A sync rewriting a single day, which gives its row a new id
+    private void syncDay(int day, double high) {
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{TestUtilities.createForecastValues(mLocationRowId, day, high,
+                        WEATHER_IDS[day % WEATHER_IDS.length])});
+    }
+
+    private Forecast loadForecast(long startDate, int days) {
+        return new Forecast(TestUtilities.TEST_LOCATION, startDate, 64.7488, -147.353,
+                PackedForecast.load(mContext, TestUtilities.TEST_LOCATION, startDate, days));
+    }
+
+    public void tearDown() throws Exception {
+        TestUtilities.setArtPack(mContext, mOriginalArtPack);
+        super.tearDown();
+    }
+
+    // The choice manager registers an observer, which fails if stable ids are set after it
+    public void testConstructs() {
+        final ForecastAdapter[] adapter = new ForecastAdapter[1];
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                adapter[0] = new ForecastAdapter(mContext, null, new View(mContext),
+                        AbsListView.CHOICE_MODE_SINGLE);
+            }
+        });
+        assertNotNull(adapter[0]);
+        assertTrue("Error: adapter doesn't have stable ids", adapter[0].hasStableIds());
+    }
+
+    /*
+        In two-pane mode the selected row is kept across syncs by its id.  Selecting the last
+        row and then showing fewer rows, as the midnight rollover or a location without a
+        forecast does, should move or clear the selection rather than look past the end.
+     */
+    public void testSelectionSurvivesFewerRows() {
+        final ForecastRow[] rows = ForecastRow.buildRows(mContext, mForecast);
+        final ForecastRow[] rolledOver = ForecastRow.buildRows(mContext,
+                loadForecast(mToday + DAY_IN_MILLIS, DAYS - 1));
+        final int[] selected = new int[3];
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                Context context = new ContextThemeWrapper(mContext, R.style.AppTheme);
+                RecyclerView recyclerView = new RecyclerView(context);
+                recyclerView.setLayoutManager(new LinearLayoutManager(context));
+                recyclerView.setItemAnimator(null);
+                ForecastAdapter adapter = new ForecastAdapter(context,
+                        new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                            @Override
+                            public void onClick(Long date,
+                                                ForecastAdapter.ForecastAdapterViewHolder vh) {
+                            }
+                        }, new View(context), AbsListView.CHOICE_MODE_SINGLE);
+                recyclerView.setAdapter(adapter);
+                adapter.swapRows(rows, null);
+                recyclerView.scrollToPosition(rows.length - 1);
+                layout(recyclerView);
+                adapter.selectView(
+                        recyclerView.findViewHolderForAdapterPosition(rows.length - 1));
+                selected[0] = adapter.getSelectedItemPosition();
+
+                adapter.swapRows(rolledOver, null);
+                layout(recyclerView);
+                selected[1] = adapter.getSelectedItemPosition();
+
+                adapter.swapRows(ForecastRow.EMPTY, null);
+                layout(recyclerView);
+                selected[2] = adapter.getSelectedItemPosition();
+            }
+        });
+        assertEquals("Error: the last row wasn't selected", rows.length - 1, selected[0]);
+        assertEquals("Error: the selected day didn't move up with the rollover",
+                rolledOver.length - 1, selected[1]);
+        assertEquals("Error: the selection outlived the rows",
+                RecyclerView.NO_POSITION, selected[2]);
+    }
+
+    public void testRowsMatchUtility() {
+        ForecastRow[] rows = ForecastRow.buildRows(mContext, mForecast);
+        assertEquals(DAYS, rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            ForecastRow row = rows[i];
+            int weatherId = mForecast.days.weatherIds[i];
+            assertEquals(mForecast.days.dates[i], row.date);
+            assertEquals(Utility.getIconResourceForWeatherCondition(weatherId), row.iconResourceId);
+            assertEquals(Utility.getArtResourceForWeatherCondition(weatherId), row.artResourceId);
+            assertNull("Error: local graphics row has an art url", row.artUrl);
+            assertEquals(Utility.getFriendlyDayString(mContext, row.date, false), row.dateText);
+            assertEquals(Utility.getFriendlyDayString(mContext, row.date, i == 0),
+                    row.longDateText);
+            assertEquals(Utility.getStringForWeatherCondition(mContext, weatherId),
+                    row.description);
+            assertEquals(Utility.formatTemperature(mContext, mForecast.days.maxTemps[i]),
+                    row.highText);
+            assertEquals(Utility.formatTemperature(mContext, mForecast.days.minTemps[i]),
+                    row.lowText);
+            assertEquals(mContext.getString(R.string.a11y_low_temp, row.lowText), row.lowA11y);
+        }
+    }
+
+    public void testDiff() {
+        ForecastRow[] rows = ForecastRow.buildRows(mContext, mForecast);
+
+        ForecastRowDiff diff = ForecastRowDiff.compute(rows,
+                ForecastRow.buildRows(mContext, mForecast), true);
+        assertTrue("Error: identical rows gave a non-empty diff", diff.isEmpty());
+
+        syncDay(3, 99);
+        ForecastRow[] changed = ForecastRow.buildRows(mContext, loadForecast(mToday, DAYS));
+        assertFalse("Error: test sync didn't change the row id", rows[3].id == changed[3].id);
+        assertEquals("Error: one changed day should affect one position",
+                1, ForecastRowDiff.compute(rows, changed, true).getAffectedCount());
+
+        // After midnight the first day drops off, and the new first row needs the today layout
+        ForecastRow[] rolledOver = ForecastRow.buildRows(mContext,
+                loadForecast(mToday + DAY_IN_MILLIS, DAYS - 1));
+        assertEquals(2, ForecastRowDiff.compute(changed, rolledOver, true).getAffectedCount());
+        assertEquals(1, ForecastRowDiff.compute(changed, rolledOver, false).getAffectedCount());
+
+        syncDay(DAYS, 30);
+        ForecastRow[] extended = ForecastRow.buildRows(mContext,
+                loadForecast(mToday, DAYS + 1));
+        assertEquals("Error: one new day should affect one position",
+                1, ForecastRowDiff.compute(changed, extended, true).getAffectedCount());
+    }
+
+    /*
+        Lays out a RecyclerView the size of a phone screen, then counts the rows it rebinds when
+        a sync changes one day, once through the diff and once through notifyDataSetChanged.
+     */
+    public void testSyncRebindsOnlyChangedRows() {
+        syncDay(3, 99);
+        final ForecastRow[] before = ForecastRow.buildRows(mContext, mForecast);
+        final ForecastRow[] after = ForecastRow.buildRows(mContext, loadForecast(mToday, DAYS));
+        final int[] binds = new int[3];
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                Context context = new ContextThemeWrapper(mContext, R.style.AppTheme);
+                RecyclerView recyclerView = new RecyclerView(context);
+                recyclerView.setLayoutManager(new LinearLayoutManager(context));
+                recyclerView.setItemAnimator(null);
+                CountingAdapter adapter = new CountingAdapter(context);
+                recyclerView.setAdapter(adapter);
+
+                adapter.swapRows(before, null);
+                layout(recyclerView);
+
+                adapter.mBinds = 0;
+                adapter.swapRows(after, ForecastRowDiff.compute(before, after, true));
+                layout(recyclerView);
+                binds[0] = adapter.mBinds;
+
+                adapter.mBinds = 0;
+                adapter.swapRows(after, ForecastRowDiff.compute(after, after, true));
+                layout(recyclerView);
+                binds[1] = adapter.mBinds;
+
+                adapter.mBinds = 0;
+                adapter.swapRows(after, null);
+                layout(recyclerView);
+                binds[2] = adapter.mBinds;
+            }
+        });
+        Log.d(LOG_TAG, "Rebinds for a sync changing one day: " + binds[0] + " with the diff, " +
+                binds[2] + " with notifyDataSetChanged; " + binds[1] + " for an unchanged sync");
+        assertEquals("Error: unchanged sync rebound rows", 0, binds[1]);
+        assertTrue("Error: diff didn't save any rebinds", binds[0] < binds[2]);
+        assertTrue("Error: changed row wasn't rebound", binds[0] >= 1);
+    }
+
+    private static void layout(RecyclerView recyclerView) {
+        recyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1080, 1920);
+    }
+
+    private static class CountingAdapter extends ForecastAdapter {
+        int mBinds;
+
+        CountingAdapter(Context context) {
+            super(context, null, new View(context), AbsListView.CHOICE_MODE_SINGLE);
+        }
+
+        @Override
+        public void onBindViewHolder(ForecastAdapterViewHolder holder, int position) {
+            mBinds++;
+            super.onBindViewHolder(holder, position);
+        }
+    }
+
+    /*
+        Not a pass/fail test: binds rows the way a fling does, cycling through every position
+        with a handful of recycled holders, and logs the time and allocations per bind.  It also
+        logs the cost of building a row, which is the work that used to happen inside bind and
+        now happens in the background.
+     */
+    @SuppressWarnings("deprecation")
+    public void testScrollBenchmark() {
+        final int binds = 5000;
+        final long[] result = new long[4];
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView recyclerView = new RecyclerView(mContext);
+                recyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+                ForecastAdapter adapter = new ForecastAdapter(mContext, null,
+                        new View(mContext), AbsListView.CHOICE_MODE_SINGLE);
+                recyclerView.setAdapter(adapter);
+                adapter.swapRows(ForecastRow.buildRows(mContext, mForecast), null);
+
+                // Enough holders to fill a screen, as the RecyclerView would keep around
+                ForecastAdapter.ForecastAdapterViewHolder[] holders =
+                        new ForecastAdapter.ForecastAdapterViewHolder[8];
+                for (int i = 0; i < holders.length; i++) {
+                    holders[i] = adapter.onCreateViewHolder(recyclerView,
+                            adapter.getItemViewType(i));
+                }
+                // Warm up, so the first binds' one-off costs aren't counted
+                for (int i = 0; i < DAYS; i++) {
+                    adapter.onBindViewHolder(holders[i % holders.length], i);
+                }
+
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                long startNanos = System.nanoTime();
+                for (int i = 0; i < binds; i++) {
+                    // Skip position 0, which has its own view type
+                    int position = 1 + i % (DAYS - 1);
+                    adapter.onBindViewHolder(holders[position % holders.length], position);
+                }
+                result[0] = System.nanoTime() - startNanos;
+                Debug.stopAllocCounting();
+                result[1] = Debug.getThreadAllocCount();
+
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                startNanos = System.nanoTime();
+                for (int i = 0; i < 20; i++) {
+                    ForecastRow.buildRows(mContext, mForecast);
+                }
+                result[2] = System.nanoTime() - startNanos;
+                Debug.stopAllocCounting();
+                result[3] = Debug.getThreadAllocCount();
+            }
+        });
+        int rowsBuilt = 20 * DAYS;
+        Log.d(LOG_TAG, "Bind: " + (result[0] / binds) + "ns, " +
+                ((double) result[1] / binds) + " allocations; building a row off the main " +
+                "thread: " + (result[2] / rowsBuilt) + "ns, " + (result[3] / rowsBuilt) +
+                " allocations");
+    }
+}
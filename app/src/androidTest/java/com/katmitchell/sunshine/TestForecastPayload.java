@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.google.android.gms.wearable.DataMap;
+import com.katmitchell.sunshine.common.ForecastPayload;
+import com.katmitchell.sunshine.data.PackedForecast;
+import com.katmitchell.sunshine.data.TestUtilities;
+import com.katmitchell.sunshine.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.TimeZone;
+
+public class TestForecastPayload extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastPayload.class.getSimpleName();
+
+    private static final int FIRST_DAY = 17000;
+    private static final int SEQUENCE = 1469923200;
+
+    private static ForecastPayload.Forecast forecast(int firstDay, int days, double offset) {
+        int[] weatherIds = new int[days];
+        double[] highs = new double[days];
+        double[] lows = new double[days];
+        for (int i = 0; i < days; i++) {
+            weatherIds[i] = i % 3 == 0 ? 800 : 801;
+            highs[i] = 20.3 + i * 0.7 + offset;
+            lows[i] = -3.6 - i * 1.1 + offset;
+        }
+        return new ForecastPayload.Forecast(firstDay, weatherIds, highs, lows);
+    }
+
+    /**
+     * Returns a copy of forecast with one day's weather and high changed.
+     */
+    private static ForecastPayload.Forecast change(ForecastPayload.Forecast forecast, int index,
+                                                   int weatherId, double high) {
+        int days = forecast.getDayCount();
+        int[] weatherIds = new int[days];
+        double[] highs = new double[days];
+        double[] lows = new double[days];
+        for (int i = 0; i < days; i++) {
+            weatherIds[i] = forecast.getWeatherId(i);
+            highs[i] = forecast.getHigh(i);
+            lows[i] = forecast.getLow(i);
+        }
+        weatherIds[index] = weatherId;
+        highs[index] = high;
+        return new ForecastPayload.Forecast(forecast.getFirstDay(), weatherIds, highs, lows);
+    }
+
+    public void testRoundTrip() {
+        int[] weatherIds = {800, 501, 211, 781};
+        double[] highs = {21.26, -0.2, 39.9, -40.74};
+        double[] lows = {10.0, -12.3, 25.24, -51.5};
+        ForecastPayload.Forecast forecast =
+                new ForecastPayload.Forecast(FIRST_DAY, weatherIds, highs, lows);
+        ForecastPayload.Forecast decoded =
+                ForecastPayload.decode(ForecastPayload.encode(forecast, SEQUENCE), null, 0);
+
+        assertEquals(forecast, decoded);
+        assertEquals(FIRST_DAY, decoded.getFirstDay());
+        for (int i = 0; i < weatherIds.length; i++) {
+            assertEquals(weatherIds[i], decoded.getWeatherId(i));
+            assertEquals("Error: high for day " + i + " is off by more than rounding",
+                    highs[i], decoded.getHigh(i), ForecastPayload.TEMPERATURE_STEP / 2);
+            assertEquals("Error: low for day " + i + " is off by more than rounding",
+                    lows[i], decoded.getLow(i), ForecastPayload.TEMPERATURE_STEP / 2);
+        }
+        assertEquals(SEQUENCE,
+                ForecastPayload.getSequence(ForecastPayload.encode(forecast, SEQUENCE)));
+    }
+
+    public void testDeltaRoundTrip() {
+        ForecastPayload.Forecast base = forecast(FIRST_DAY, 14, 0);
+        // A day later, a degree warmer, and a day longer than the base reaches
+        ForecastPayload.Forecast forecast = forecast(FIRST_DAY + 1, 14, 1);
+
+        byte[] delta = ForecastPayload.encodeDelta(forecast, base, SEQUENCE);
+        assertTrue(ForecastPayload.isDelta(delta));
+        assertEquals(forecast, ForecastPayload.decode(delta, base, SEQUENCE));
+        assertNull("Error: a delta was decoded against the wrong base",
+                ForecastPayload.decode(delta, base, SEQUENCE + 1));
+        assertNull(ForecastPayload.decode(delta, null, 0));
+    }
+
+    /*
+        The exact sizes are logged for comparison with a DataMap of the same days; the checks
+        are only the bounds the format is meant to keep to.
+     */
+    public void testSize() {
+        ForecastPayload.Forecast base = forecast(FIRST_DAY, 14, 0);
+        byte[] full = ForecastPayload.encode(base, SEQUENCE);
+        byte[] unchanged = ForecastPayload.encodeDelta(base, base, SEQUENCE);
+        byte[] oneDayChanged = ForecastPayload.encodeDelta(
+                change(base, 3, 202, base.getHigh(3) + 2), base, SEQUENCE);
+
+        ArrayList<Integer> weatherIds = new ArrayList<>();
+        float[] highs = new float[14];
+        float[] lows = new float[14];
+        for (int i = 0; i < 14; i++) {
+            weatherIds.add(base.getWeatherId(i));
+            highs[i] = (float) base.getHigh(i);
+            lows[i] = (float) base.getLow(i);
+        }
+        DataMap dataMap = new DataMap();
+        dataMap.putIntegerArrayList("weather_ids", weatherIds);
+        dataMap.putFloatArray("highs", highs);
+        dataMap.putFloatArray("lows", lows);
+        int dataMapSize = dataMap.toByteArray().length;
+
+        Log.d(LOG_TAG, "14 days: full " + full.length + " bytes, unchanged delta " +
+                unchanged.length + ", one day changed " + oneDayChanged.length +
+                ", DataMap " + dataMapSize);
+        assertTrue("Error: full payload is " + full.length + " bytes",
+                full.length <= 16 + 3 * 14);
+        assertTrue("Error: an unchanged day should take one byte, but 14 took " +
+                unchanged.length, unchanged.length <= 10 + 14);
+        assertTrue("Error: changing one day took " + oneDayChanged.length + " bytes",
+                oneDayChanged.length <= unchanged.length + 3);
+        assertTrue(full.length < dataMapSize);
+    }
+
+    public void testRejectsMalformed() {
+        byte[] full = ForecastPayload.encode(forecast(FIRST_DAY, 3, 0), SEQUENCE);
+
+        byte[] otherVersion = full.clone();
+        otherVersion[0] = ForecastPayload.VERSION + 1;
+        byte[] truncated = new byte[full.length - 1];
+        System.arraycopy(full, 0, truncated, 0, truncated.length);
+        byte[] tooLong = new byte[full.length + 1];
+        System.arraycopy(full, 0, tooLong, 0, full.length);
+
+        for (byte[] payload : new byte[][] {otherVersion, truncated, tooLong, new byte[0]}) {
+            try {
+                ForecastPayload.decode(payload, null, 0);
+                fail("Error: decoded a malformed payload of " + payload.length + " bytes");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    /*
+        The phone should send a base once, then only deltas against it until they grow too
+        big, and every delta should decode against the latest base.
+     */
+    public void testSendsBaseThenDeltas() {
+        final FakeTransport transport = new FakeTransport();
+        WearForecast wearForecast = new WearForecast(new WearChannel(transport, 50, 200));
+
+        ForecastPayload.Forecast first = forecast(FIRST_DAY, 14, 0);
+        ForecastPayload.Forecast second = change(first, 5, 500, 12);
+        ForecastPayload.Forecast third = forecast(FIRST_DAY + 7, 14, 5);
+        int firstSize = wearForecast.send(first);
+        transport.waitForPuts(2);
+        int secondSize = wearForecast.send(second);
+        transport.waitForPuts(3);
+        wearForecast.send(third);
+        transport.waitForPuts(5);
+
+        assertEquals(WearForecast.BASE_PATH, transport.paths.get(0));
+        assertEquals(WearForecast.PATH, transport.paths.get(1));
+        assertEquals("Error: a small change sent a new base",
+                WearForecast.PATH, transport.paths.get(2));
+        assertTrue(secondSize < firstSize / 2);
+        assertEquals("Error: a week on, a new base should have been sent",
+                WearForecast.BASE_PATH, transport.paths.get(3));
+
+        byte[] firstBase = transport.getPayload(0);
+        byte[] secondBase = transport.getPayload(3);
+        assertEquals(first, decodeAgainst(transport.getPayload(1), firstBase));
+        assertEquals(second, decodeAgainst(transport.getPayload(2), firstBase));
+        assertEquals(third, decodeAgainst(transport.getPayload(4), secondBase));
+        assertNull("Error: a new base reused the sequence of the old one",
+                decodeAgainst(transport.getPayload(4), firstBase));
+    }
+
+    public void testForecastFromDatabase() {
+        TestUtilities.insertForecast(mContext);
+        PackedForecast packed = PackedForecast.load(mContext, TestUtilities.TEST_LOCATION,
+                System.currentTimeMillis(), Wear.DAYS);
+        ForecastPayload.Forecast forecast = Wear.toForecast(packed);
+
+        long now = System.currentTimeMillis();
+        int today = ForecastPayload.getLocalDay(now, TimeZone.getDefault().getOffset(now) / 1000);
+        assertEquals("Error: the forecast should start today", today, forecast.getFirstDay());
+        assertEquals(TestUtilities.DAYS, forecast.getDayCount());
+        for (int i = 0; i < forecast.getDayCount(); i++) {
+            assertEquals(800, forecast.getWeatherId(i));
+            assertEquals(20.0 + i, forecast.getHigh(i));
+            assertEquals(10.0 - i, forecast.getLow(i));
+        }
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                null, null);
+    }
+
+    private static ForecastPayload.Forecast decodeAgainst(byte[] delta, byte[] basePayload) {
+        ForecastPayload.Forecast base = ForecastPayload.decode(basePayload, null, 0);
+        return ForecastPayload.decode(delta, base, ForecastPayload.getSequence(basePayload));
+    }
+
+    /**
+     * Stands in for the Data API, keeping the payloads put in order.
+     */
+    private static class FakeTransport implements WearChannel.Transport {
+        final ArrayList<String> paths = new ArrayList<>();
+        final ArrayList<DataMap> puts = new ArrayList<>();
+
+        @Override
+        public int connect(long timeoutMillis) {
+            return WearChannel.CONNECTED;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public synchronized boolean putDataItem(String path, DataMap data,
+                                                long timeoutMillis) {
+            paths.add(path);
+            puts.add(data);
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        synchronized int getPutCount() {
+            return puts.size();
+        }
+
+        synchronized byte[] getPayload(int index) {
+            return puts.get(index).getByteArray(WearForecast.KEY_PAYLOAD);
+        }
+
+        void waitForPuts(final int count) {
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return getPutCount() >= count;
+                }
+            }.run();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.katmitchell.sunshine.data.TestUtilities;
+
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class TestForecastScrolling extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public static final String LOG_TAG = TestForecastScrolling.class.getSimpleName();
+
+    // 60Hz
+    private static final long REFRESH_NANOS = 16666667;
+
+    private Context mContext;
+    private String mOriginalLocation;
+
+    public TestForecastScrolling() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        mOriginalLocation = TestUtilities.setLocation(mContext, TestUtilities.TEST_LOCATION);
+        TestUtilities.insertForecast(mContext);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        TestUtilities.setLocation(mContext, mOriginalLocation);
+    }
+
+    public void testCountsJank() {
+        FrameMetricsCollector collector = new FrameMetricsCollector(REFRESH_NANOS);
+        for (int i = 0; i < 10; i++) {
+            collector.recordFrame(REFRESH_NANOS);
+        }
+        // Just over a refresh is still on time, within the vsync jitter
+        collector.recordFrame(REFRESH_NANOS + 2000000);
+        // One and three refreshes missed
+        collector.recordFrame(2 * REFRESH_NANOS);
+        collector.recordFrame(4 * REFRESH_NANOS);
+        collector.recordBind(300000);
+
+        assertEquals("Error: every frame should have been counted",
+                13, collector.getFrames().getCount());
+        assertEquals("Error: the wrong number of janky frames", 2, collector.getJankFrames());
+        assertEquals("Error: the wrong number of missed refreshes",
+                4, collector.getDroppedFrames());
+        assertEquals("Error: the longest frame is wrong",
+                4 * REFRESH_NANOS, collector.getFrames().getMaxNanos());
+        // The on time frames all fall in the 12-17ms bucket
+        assertEquals("Error: the median is in the wrong bucket",
+                17000000, collector.getFrames().getPercentileNanos(50));
+        assertEquals(1, collector.getBinds().getCount());
+
+        collector.reset();
+        assertEquals("Error: reset didn't clear the frames", 0, collector.getFrames().getCount());
+        assertEquals("Error: reset didn't clear the jank", 0, collector.getJankFrames());
+    }
+
+    /*
+        Scrolls the forecast to the end and back, and logs what the collector made of it.  Only
+        checks that frames and binds were recorded; how many of them were janky depends on the
+        device.
+     */
+    public void testScrollRecordsFrames() {
+        if (!BuildConfig.DEBUG || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+        final MainActivity activity = getActivity();
+        final RecyclerView recyclerView =
+                (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+        final FrameMetricsCollector collector = FrameMetricsCollector.getInstance(activity);
+        new PollingCheck(10000) {
+            @Override
+            protected boolean check() {
+                return recyclerView.getChildCount() > 0;
+            }
+        }.run();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                collector.reset();
+            }
+        });
+
+        scrollTo(recyclerView, TestUtilities.DAYS - 1);
+        scrollTo(recyclerView, 0);
+
+        final String[] report = new String[1];
+        final int[] counts = new int[2];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                report[0] = collector.getReport();
+                counts[0] = collector.getFrames().getCount();
+                counts[1] = collector.getBinds().getCount();
+            }
+        });
+        Log.d(LOG_TAG, "Scrolling the forecast:\n" + report[0]);
+        assertTrue("Error: no frames were recorded while scrolling", counts[0] > 0);
+        assertTrue("Error: no binds were recorded while scrolling", counts[1] > 0);
+    }
+
+    private void scrollTo(final RecyclerView recyclerView, final int position) {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                recyclerView.smoothScrollToPosition(position);
+            }
+        });
+        // The scroll starts on the next frame
+        getInstrumentation().waitForIdleSync();
+        new PollingCheck(10000) {
+            @Override
+            protected boolean check() {
+                return recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE;
+            }
+        }.run();
+    }
+}
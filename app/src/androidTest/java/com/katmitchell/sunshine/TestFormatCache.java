@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.katmitchell.sunshine.data.WeatherContract;
+
+import java.util.Locale;
+
+public class TestFormatCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestFormatCache.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+    private static final int DAYS = 14;
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mOriginalUnits;
+    private long mToday;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mOriginalUnits = mPrefs.getString(mUnitsKey, mContext.getString(R.string.pref_units_metric));
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        FormatCache.invalidate();
+    }
+
+    public void tearDown() throws Exception {
+        mPrefs.edit().putString(mUnitsKey, mOriginalUnits).commit();
+        super.tearDown();
+    }
+
+    public void testMatchesUncached() {
+        // Twice, so the second pass compares hits
+        for (int pass = 0; pass < 2; pass++) {
+            assertMatchesUncached();
+        }
+    }
+
+    public void testUnitChange() {
+        setUnits(R.string.pref_units_metric);
+        assertMatchesUncached();
+        setUnits(R.string.pref_units_imperial);
+        assertMatchesUncached();
+    }
+
+    public void testLocaleChange() {
+        Locale original = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.US);
+            assertMatchesUncached();
+            String englishName = Utility.getDayName(mContext, mToday + 3 * DAY_IN_MILLIS);
+
+            Locale.setDefault(Locale.FRENCH);
+            assertMatchesUncached();
+            assertFalse("Error: day name wasn't reformatted for the new locale",
+                    englishName.equals(Utility.getDayName(mContext, mToday + 3 * DAY_IN_MILLIS)));
+        } finally {
+            Locale.setDefault(original);
+            FormatCache.invalidate();
+        }
+    }
+
+    /*
+        Not a pass/fail test: logs the time to format what the list shows for two weeks, the
+        date and both temperatures of every row, plus the detail screen's wind, through the
+        uncached methods and through the cache once it is warm.
+     */
+    public void testBenchmark() {
+        final int iterations = 200;
+        boolean metric = Utility.isMetric(mContext);
+
+        int sink = 0;
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (int day = 0; day < DAYS; day++) {
+                long date = mToday + day * DAY_IN_MILLIS;
+                sink += Utility.formatFriendlyDayString(mContext, date, day == 0).length();
+                sink += Utility.formatTemperature(mContext, 20 + day, metric).length();
+                sink += Utility.formatTemperature(mContext, 10 - day, metric).length();
+                sink += Utility.formatWind(mContext, 5.5f, 45 * day, metric).length();
+            }
+        }
+        long uncachedNanos = System.nanoTime() - startNanos;
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (int day = 0; day < DAYS; day++) {
+                long date = mToday + day * DAY_IN_MILLIS;
+                sink -= Utility.getFriendlyDayString(mContext, date, day == 0).length();
+                sink -= Utility.formatTemperature(mContext, 20 + day).length();
+                sink -= Utility.formatTemperature(mContext, 10 - day).length();
+                sink -= Utility.getFormattedWind(mContext, 5.5f, 45 * day).length();
+            }
+        }
+        long cachedNanos = System.nanoTime() - startNanos;
+
+        assertEquals(0, sink);
+        int rows = iterations * DAYS;
+        Log.d(LOG_TAG, "Uncached: " + (uncachedNanos / rows / 1000) + "us/row, cached: " +
+                (cachedNanos / rows / 1000) + "us/row");
+    }
+
+    private void assertMatchesUncached() {
+        boolean metric = Utility.isMetric(mContext);
+        for (int day = 0; day < DAYS; day++) {
+            // Anywhere in the day should give that day's strings
+            long date = mToday + day * DAY_IN_MILLIS + day * 1000 * 60 * 60;
+            assertEquals(Utility.formatFriendlyDayString(mContext, date, true),
+                    Utility.getFriendlyDayString(mContext, date, true));
+            assertEquals(Utility.formatFriendlyDayString(mContext, date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals(Utility.formatFullFriendlyDayString(mContext, date),
+                    Utility.getFullFriendlyDayString(mContext, date));
+            assertEquals(Utility.formatDayName(mContext, date),
+                    Utility.getDayName(mContext, date));
+            assertEquals(Utility.formatMonthDay(date),
+                    Utility.getFormattedMonthDay(mContext, date));
+            assertEquals(Utility.formatTemperature(mContext, 20.5 - day, metric),
+                    Utility.formatTemperature(mContext, 20.5 - day));
+            assertEquals(Utility.formatWind(mContext, 3.2f * day, 30 * day, metric),
+                    Utility.getFormattedWind(mContext, 3.2f * day, 30 * day));
+        }
+    }
+
+    private void setUnits(int unitsResId) {
+        final String units = mContext.getString(unitsResId);
+        mPrefs.edit().putString(mUnitsKey, units).commit();
+        // The cache hears about it on the main thread
+        final String sample = Utility.formatTemperature(mContext, 10, units.equals(
+                mContext.getString(R.string.pref_units_metric)));
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return sample.equals(Utility.formatTemperature(mContext, 10));
+            }
+        }.run();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.google.android.apps.muzei.api.Artwork;
+import com.katmitchell.sunshine.muzei.MuzeiArtCache;
+import com.katmitchell.sunshine.muzei.MuzeiUpdater;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TestMuzeiUpdater extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+
+    /**
+     * Stands in for the art source, keeping what was published as Muzei would.
+     */
+    private static class FakePublisher implements MuzeiUpdater.Publisher {
+        Artwork current;
+        int published;
+
+        @Override
+        public Artwork getCurrentArtwork() {
+            return current;
+        }
+
+        @Override
+        public void publishArtwork(Artwork artwork) {
+            current = artwork;
+            published++;
+        }
+    }
+
+    private StandInImageServer mServer;
+    private MuzeiArtCache mArtCache;
+    private MuzeiUpdater mUpdater;
+    private FakePublisher mPublisher;
+    private String mClearUrl;
+    private String mRainUrl;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInImageServer();
+        mArtCache = new MuzeiArtCache(mContext);
+        mArtCache.clear();
+        mUpdater = new MuzeiUpdater(mContext, mArtCache);
+        mPublisher = new FakePublisher();
+        String baseUrl = mServer.newBaseUrl();
+        mClearUrl = baseUrl + "clear.jpg";
+        mRainUrl = baseUrl + "rain.jpg";
+    }
+
+    public void tearDown() throws Exception {
+        mArtCache.clear();
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /*
+        A sync that brings the same weather shouldn't publish again, and tomorrow's photo,
+        fetched ahead, shouldn't be fetched again when it becomes today's.
+     */
+    public void testSkipsUnchangedAndPrefetches() {
+        assertTrue(mUpdater.update(mPublisher, LOCATION, "Clear", mClearUrl, mRainUrl));
+        assertEquals("Error: today's and tomorrow's photos should each be fetched once",
+                2, mServer.getRequestCount());
+        assertEquals(mClearUrl, mPublisher.current.getToken());
+        Uri imageUri = mPublisher.current.getImageUri();
+        assertEquals("Error: the photo wasn't published from the local copy",
+                "content", imageUri.getScheme());
+
+        assertFalse("Error: the same artwork was published again",
+                mUpdater.update(mPublisher, LOCATION, "Clear", mClearUrl, mRainUrl));
+        assertEquals(1, mPublisher.published);
+        assertEquals("Error: an unchanged update fetched a photo", 2, mServer.getRequestCount());
+
+        // The next day
+        assertTrue(mUpdater.update(mPublisher, LOCATION, "Rain", mRainUrl, mClearUrl));
+        assertEquals(mRainUrl, mPublisher.current.getToken());
+        assertEquals("Error: the prefetched photo was fetched again",
+                2, mServer.getRequestCount());
+
+        // Same photo, new words
+        assertTrue("Error: a new title wasn't published",
+                mUpdater.update(mPublisher, LOCATION, "Light rain", mRainUrl, null));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    public void testPublishedUriIsReadable() throws IOException {
+        mUpdater.update(mPublisher, LOCATION, "Clear", mClearUrl, null);
+        InputStream in = mContext.getContentResolver().openInputStream(
+                mPublisher.current.getImageUri());
+        assertNotNull(in);
+        try {
+            Bitmap bitmap = BitmapFactory.decodeStream(in);
+            assertNotNull("Error: the published photo couldn't be decoded", bitmap);
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testFailedFetchFallsBackToRemote() {
+        mServer.shutdown();
+        assertTrue(mUpdater.update(mPublisher, LOCATION, "Clear", mClearUrl, null));
+        assertEquals("Error: without a local copy, Muzei should be given the photo's URL",
+                mClearUrl, mPublisher.current.getImageUri().toString());
+        assertFalse(mArtCache.contains(mClearUrl));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.katmitchell.sunshine.data.TestUtilities;
+import com.katmitchell.sunshine.sync.NotificationArtCache;
+import com.katmitchell.sunshine.sync.WeatherNotifier;
+
+public class TestNotificationArt extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNotificationArt.class.getSimpleName();
+
+    private static final long ICON_TIMEOUT_MILLIS = 1000;
+    private static final long SERVER_DELAY_MILLIS = 5000;
+
+    private StandInImageServer mServer;
+    private String mOriginalArtPack;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInImageServer();
+        mOriginalArtPack = TestUtilities.setArtPack(mContext, mServer.newBaseUrl() + "%s.png");
+        new NotificationArtCache(mContext).clear();
+    }
+
+    public void tearDown() throws Exception {
+        ((NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE))
+                .cancel(WeatherNotifier.WEATHER_NOTIFICATION_ID);
+        new NotificationArtCache(mContext).clear();
+        TestUtilities.setArtPack(mContext, mOriginalArtPack);
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /*
+        However slow the art server, notifying should give up on it after the timeout, and
+        show the local art rather than cache it in place of the remote art.
+     */
+    public void testSlowServerIsBounded() {
+        mServer.setDelayMillis(SERVER_DELAY_MILLIS);
+        WeatherNotifier notifier = new WeatherNotifier(mContext, ICON_TIMEOUT_MILLIS);
+
+        long startNanos = System.nanoTime();
+        notifier.notifyWeather(800, "Clear", 21, 12);
+        long millis = (System.nanoTime() - startNanos) / 1000000;
+        Log.d(LOG_TAG, "Notifying with a server " + SERVER_DELAY_MILLIS + "ms slow took " +
+                millis + "ms");
+
+        assertTrue("Error: notifying waited " + millis + "ms on the art server",
+                millis < SERVER_DELAY_MILLIS);
+        assertFalse("Error: the local art was cached as the remote art",
+                notifier.getArtCache().contains(800));
+    }
+
+    /*
+        Once an icon has been cached it should come from disk, at the notification's size,
+        without asking the server again, even from another instance as after a restart.
+        Also logs the cold and cached notify times.
+     */
+    public void testCachedIconSkipsServer() {
+        WeatherNotifier notifier = new WeatherNotifier(mContext, ICON_TIMEOUT_MILLIS * 10);
+        long startNanos = System.nanoTime();
+        notifier.notifyWeather(800, "Clear", 21, 12);
+        long coldMillis = (System.nanoTime() - startNanos) / 1000000;
+        assertEquals(1, mServer.getRequestCount());
+        assertTrue("Error: the icon wasn't cached", notifier.getArtCache().contains(800));
+
+        // The server would now hold things up, if it were asked
+        mServer.setDelayMillis(SERVER_DELAY_MILLIS);
+        NotificationArtCache cache = new NotificationArtCache(mContext);
+        startNanos = System.nanoTime();
+        Bitmap icon = cache.get(800, ICON_TIMEOUT_MILLIS * 10);
+        long cachedMillis = (System.nanoTime() - startNanos) / 1000000;
+        Log.d(LOG_TAG, "Large icon took " + coldMillis + "ms to notify with cold and " +
+                cachedMillis + "ms to read once cached");
+
+        assertNotNull("Error: the cached icon couldn't be read", icon);
+        assertEquals("Error: the cached icon was fetched again", 1, mServer.getRequestCount());
+        assertTrue("Error: the cached icon is bigger than the notification shows",
+                icon.getWidth() <= cache.getWidth() && icon.getHeight() <= cache.getHeight());
+    }
+
+    public void testKeyedByArtPack() {
+        NotificationArtCache cache = new NotificationArtCache(mContext);
+        assertNotNull(cache.get(800, ICON_TIMEOUT_MILLIS * 10));
+        assertEquals(1, mServer.getRequestCount());
+
+        TestUtilities.setArtPack(mContext, mServer.newBaseUrl() + "%s.png");
+        assertFalse("Error: another pack's icon was used", cache.contains(800));
+        assertNotNull(cache.get(800, ICON_TIMEOUT_MILLIS * 10));
+        assertEquals(2, mServer.getRequestCount());
+
+        TestUtilities.setArtPack(mContext, mContext.getString(R.string.pref_art_pack_sunshine));
+        assertNotNull("Error: no icon from the local art", cache.get(800, ICON_TIMEOUT_MILLIS));
+        assertTrue("Error: the local art wasn't cached", cache.contains(800));
+        assertEquals(2, mServer.getRequestCount());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestPreferenceSnapshot extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestPreferenceSnapshot.class.getSimpleName();
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mArtPackKey;
+    private String mOriginalUnits;
+    private String mOriginalArtPack;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mArtPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mOriginalUnits = mPrefs.getString(mUnitsKey,
+                mContext.getString(R.string.pref_units_metric));
+        mOriginalArtPack = mPrefs.getString(mArtPackKey,
+                mContext.getString(R.string.pref_art_pack_sunshine));
+    }
+
+    public void tearDown() throws Exception {
+        commitOnMainThread(mUnitsKey, mOriginalUnits);
+        commitOnMainThread(mArtPackKey, mOriginalArtPack);
+        super.tearDown();
+    }
+
+    public void testMatchesSharedPreferences() {
+        String[] units = {
+                mContext.getString(R.string.pref_units_metric),
+                mContext.getString(R.string.pref_units_imperial)
+        };
+        String[] artPacks = {
+                mContext.getString(R.string.pref_art_pack_sunshine),
+                mContext.getString(R.string.pref_art_pack_cute_dogs)
+        };
+        for (String unit : units) {
+            for (String artPack : artPacks) {
+                commitOnMainThread(mUnitsKey, unit);
+                commitOnMainThread(mArtPackKey, artPack);
+                assertEquals(legacyIsMetric(mContext), Utility.isMetric(mContext));
+                assertEquals(legacyUsingLocalGraphics(mContext),
+                        Utility.usingLocalGraphics(mContext));
+                assertEquals(legacyPreferredLocation(mContext),
+                        Utility.getPreferredLocation(mContext));
+                assertEquals(legacyArtUrl(mContext, "clouds"),
+                        Utility.getArtUrlForWeatherCondition(mContext, 803));
+            }
+        }
+    }
+
+    public void testSnapshotIsSwapped() {
+        commitOnMainThread(mUnitsKey, mContext.getString(R.string.pref_units_metric));
+        PreferenceSnapshot before = SunshineApplication.get(mContext).getPreferences();
+        assertTrue(before.metric);
+
+        commitOnMainThread(mUnitsKey, mContext.getString(R.string.pref_units_imperial));
+        PreferenceSnapshot after = SunshineApplication.get(mContext).getPreferences();
+        assertNotSame("Error: snapshot wasn't replaced", before, after);
+        assertFalse(after.metric);
+        assertTrue("Error: old snapshot changed under its readers", before.metric);
+
+        // Preferences outside the snapshot leave it alone
+        mPrefs.edit().putLong(mContext.getString(R.string.pref_last_notification), 0).commit();
+        assertSame(after, SunshineApplication.get(mContext).getPreferences());
+    }
+
+    /*
+        Not a pass/fail test: logs the cost of the preference reads binding one forecast row
+        makes (the units for each temperature, whether the art is local, and the art URL),
+        reading SharedPreferences each time against reading the snapshot.
+     */
+    public void testBenchmark() {
+        final int binds = 10000;
+
+        int sink = 0;
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < binds; i++) {
+            sink += legacyIsMetric(mContext) ? 1 : 0;
+            sink += legacyIsMetric(mContext) ? 1 : 0;
+            sink += legacyUsingLocalGraphics(mContext) ? 1 : 0;
+            sink += legacyArtUrl(mContext, "clouds").length();
+        }
+        long legacyNanos = System.nanoTime() - startNanos;
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < binds; i++) {
+            sink -= Utility.isMetric(mContext) ? 1 : 0;
+            sink -= Utility.isMetric(mContext) ? 1 : 0;
+            sink -= Utility.usingLocalGraphics(mContext) ? 1 : 0;
+            sink -= Utility.getArtUrlForWeatherCondition(mContext, 803).length();
+        }
+        long snapshotNanos = System.nanoTime() - startNanos;
+
+        assertEquals(0, sink);
+        Log.d(LOG_TAG, "SharedPreferences: " + (legacyNanos / binds) + "ns/bind, snapshot: " +
+                (snapshotNanos / binds) + "ns/bind");
+    }
+
+    // The reads as they were before the snapshot
+
+    private static String legacyPreferredLocation(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+    }
+
+    private static boolean legacyIsMetric(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+    }
+
+    private static boolean legacyUsingLocalGraphics(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        return prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack).equals(sunshineArtPack);
+    }
+
+    private static String legacyArtUrl(Context context, String artName) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+        return String.format(Locale.US, formatArtUrl, artName);
+    }
+
+    // Commits on the main thread, so the snapshot is swapped before this returns
+    private void commitOnMainThread(final String key, final String value) {
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                mPrefs.edit().putString(key, value).commit();
+                done.countDown();
+            }
+        });
+        try {
+            assertTrue("Error: main thread didn't commit", done.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            fail("Error: interrupted waiting for the main thread");
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.katmitchell.sunshine.data.TestUtilities;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestStartup extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public static final String LOG_TAG = TestStartup.class.getSimpleName();
+
+    private Context mContext;
+    private String mOriginalLocation;
+
+    public TestStartup() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        mOriginalLocation = TestUtilities.setLocation(mContext, TestUtilities.TEST_LOCATION);
+
+        TestUtilities.insertForecast(mContext);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        TestUtilities.setLocation(mContext, mOriginalLocation);
+    }
+
+    /*
+        Rows inflated by the pool should end up in it as view holders of the right type, ready
+        for the list's first layout.
+     */
+    public void testPoolIsFilledAhead() {
+        final MainActivity activity = getActivity();
+        final ForecastViewPool[] pool = new ForecastViewPool[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                pool[0] = new ForecastViewPool(activity);
+                RecyclerView recyclerView = new RecyclerView(activity);
+                recyclerView.setLayoutManager(new LinearLayoutManager(activity));
+                ForecastAdapter adapter = new ForecastAdapter(activity, null,
+                        new View(activity), AbsListView.CHOICE_MODE_NONE);
+                recyclerView.setAdapter(adapter);
+                pool[0].attach(recyclerView, adapter);
+            }
+        });
+        assertTrue("Error: the pool doesn't cover a screen of rows",
+                pool[0].getFutureRows() > 1);
+
+        final ArrayList<RecyclerView.ViewHolder> today = new ArrayList<>();
+        final ArrayList<RecyclerView.ViewHolder> future = new ArrayList<>();
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                getInstrumentation().runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        take(pool[0], ForecastAdapter.VIEW_TYPE_TODAY, today);
+                        take(pool[0], ForecastAdapter.VIEW_TYPE_FUTURE_DAY, future);
+                    }
+                });
+                return today.size() == pool[0].getTodayRows()
+                        && future.size() == pool[0].getFutureRows();
+            }
+        }.run();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                pool[0].cancel();
+            }
+        });
+
+        for (RecyclerView.ViewHolder holder : today) {
+            assertEquals("Error: a today holder was pooled as the wrong type",
+                    ForecastAdapter.VIEW_TYPE_TODAY, holder.getItemViewType());
+        }
+        for (RecyclerView.ViewHolder holder : future) {
+            assertEquals("Error: a future day holder was pooled as the wrong type",
+                    ForecastAdapter.VIEW_TYPE_FUTURE_DAY, holder.getItemViewType());
+            assertNotNull("Error: a pooled holder is missing its views",
+                    ((ForecastAdapter.ForecastAdapterViewHolder) holder).mIconView);
+        }
+    }
+
+    // Moves the holders of viewType out of the pool
+    private static void take(ForecastViewPool pool, int viewType,
+                             ArrayList<RecyclerView.ViewHolder> holders) {
+        RecyclerView.ViewHolder holder;
+        while ((holder = pool.getRecycledView(viewType)) != null) {
+            holders.add(holder);
+        }
+    }
+
+    /*
+        Not a pass/fail test: logs the time from launching MainActivity to the first frame that
+        draws forecast rows.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    public void testTimeToFirstPopulatedFrame() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        final AtomicLong firstFrameNanos = new AtomicLong();
+        Application application = (Application) mContext.getApplicationContext();
+        Application.ActivityLifecycleCallbacks callbacks = new FirstFrameCallbacks(firstFrameNanos);
+        application.registerActivityLifecycleCallbacks(callbacks);
+
+        long startNanos = System.nanoTime();
+        Activity activity = getActivity();
+        try {
+            new PollingCheck(10000) {
+                @Override
+                protected boolean check() {
+                    return firstFrameNanos.get() != 0;
+                }
+            }.run();
+        } finally {
+            application.unregisterActivityLifecycleCallbacks(callbacks);
+        }
+
+        ForecastViewPool pool = ((MainActivity) activity).getForecastViewPool();
+        Log.d(LOG_TAG, "First populated frame after " +
+                (firstFrameNanos.get() - startNanos) / 1000000 + "ms, with " +
+                pool.getTodayRows() + " today and " + pool.getFutureRows() +
+                " future day rows inflated ahead");
+    }
+
+    /*
+        Not a pass/fail test: launches MainActivity a few times, and logs the time to the first
+        populated frame and how long the deferred startup stages took after it.  The first
+        launch of the run loads the app's classes and opens its database, so it stands in for a
+        cold start; the others are warm.  A cold start of a fresh process is better measured
+        from outside it, with "adb shell am start -S -W".
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    public void testColdAndWarmStartBenchmark() throws InterruptedException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        final int launches = 6;
+        String[] stages = {MainActivity.STAGE_SYNC_ACCOUNT, MainActivity.STAGE_PLAY_SERVICES,
+                MainActivity.STAGE_GCM_REGISTRATION, MainActivity.STAGE_WEAR};
+        long warmFrameMillis = 0;
+        long warmStartupMillis = 0;
+        for (int i = 0; i < launches; i++) {
+            final AtomicLong firstFrameNanos = new AtomicLong();
+            Application application = (Application) mContext.getApplicationContext();
+            Application.ActivityLifecycleCallbacks callbacks =
+                    new FirstFrameCallbacks(firstFrameNanos);
+            application.registerActivityLifecycleCallbacks(callbacks);
+
+            Intent intent = new Intent(Intent.ACTION_MAIN)
+                    .setClassName(mContext, MainActivity.class.getName())
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            long startNanos = System.nanoTime();
+            final MainActivity activity =
+                    (MainActivity) getInstrumentation().startActivitySync(intent);
+            StartupInitializer initializer = activity.getStartupInitializer();
+            try {
+                new PollingCheck(10000) {
+                    @Override
+                    protected boolean check() {
+                        return firstFrameNanos.get() != 0;
+                    }
+                }.run();
+                // Updating the watch can wait on a connection for a while
+                assertTrue("Error: the deferred startup stages didn't finish",
+                        initializer.await(30000));
+            } finally {
+                application.unregisterActivityLifecycleCallbacks(callbacks);
+            }
+            long startupMillis = (System.nanoTime() - startNanos) / 1000000;
+            long frameMillis = (firstFrameNanos.get() - startNanos) / 1000000;
+
+            StringBuilder stageTimes = new StringBuilder();
+            for (String stage : stages) {
+                stageTimes.append(' ').append(stage).append('=')
+                        .append(initializer.getStageMillis(stage)).append("ms");
+            }
+            Log.d(LOG_TAG, (i == 0 ? "Cold" : "Warm") + " start: first populated frame after " +
+                    frameMillis + "ms, startup finished after " + startupMillis + "ms;" +
+                    stageTimes);
+            if (i > 0) {
+                warmFrameMillis += frameMillis;
+                warmStartupMillis += startupMillis;
+            }
+
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    activity.finish();
+                }
+            });
+            getInstrumentation().waitForIdleSync();
+        }
+        Log.d(LOG_TAG, "Warm start average: first populated frame after " +
+                warmFrameMillis / (launches - 1) + "ms, startup finished after " +
+                warmStartupMillis / (launches - 1) + "ms");
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static class FirstFrameCallbacks implements Application.ActivityLifecycleCallbacks {
+        private final AtomicLong mFirstFrameNanos;
+
+        FirstFrameCallbacks(AtomicLong firstFrameNanos) {
+            mFirstFrameNanos = firstFrameNanos;
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            // Not in onActivityCreated, where asking for the decor view would fix the window
+            // features before AppCompat has set them
+            final View decorView = activity.getWindow().getDecorView();
+            decorView.getViewTreeObserver().addOnPreDrawListener(
+                    new ViewTreeObserver.OnPreDrawListener() {
+                        @Override
+                        public boolean onPreDraw() {
+                            View list = decorView.findViewById(R.id.recyclerview_forecast);
+                            if (list instanceof RecyclerView
+                                    && ((RecyclerView) list).getChildCount() > 0) {
+                                mFirstFrameNanos.compareAndSet(0, System.nanoTime());
+                                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                            }
+                            return true;
+                        }
+                    });
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+}
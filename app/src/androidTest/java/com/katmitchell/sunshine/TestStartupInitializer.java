@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TestStartupInitializer extends AndroidTestCase {
+
+    // Names of the stages in the order they ran, from any thread
+    private final List<String> mRan = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean mMainStageOnMainThread;
+
+    private StartupInitializer.Stage stage(final String name, final boolean complete,
+                                           String... dependencies) {
+        return new StartupInitializer.Stage(name, false, dependencies) {
+            @Override
+            boolean run() {
+                mRan.add(name);
+                return complete;
+            }
+        };
+    }
+
+    /*
+        Stages added before the ones they depend on should still run after them, and a stage
+        that doesn't complete should skip everything that depends on it, directly or not.
+     */
+    public void testRunsInDependencyOrder() throws InterruptedException {
+        StartupInitializer initializer = new StartupInitializer()
+                .add(stage("wear", true, "services"))
+                .add(stage("gcm", true, "services", "account"))
+                .add(stage("account", true))
+                .add(new StartupInitializer.Stage("services", true) {
+                    @Override
+                    boolean run() {
+                        mMainStageOnMainThread = Looper.myLooper() == Looper.getMainLooper();
+                        mRan.add("services");
+                        return true;
+                    }
+                });
+        initializer.start();
+        assertTrue("Error: the stages didn't finish", initializer.await(5000));
+
+        assertTrue("Error: a main thread stage ran on another thread", mMainStageOnMainThread);
+        assertEquals("Error: every stage should have run once", 4, mRan.size());
+        assertTrue("Error: wear ran before the services it depends on",
+                mRan.indexOf("services") < mRan.indexOf("wear"));
+        assertTrue("Error: gcm ran before the services it depends on",
+                mRan.indexOf("services") < mRan.indexOf("gcm"));
+        assertTrue("Error: gcm ran before the account it depends on",
+                mRan.indexOf("account") < mRan.indexOf("gcm"));
+        assertTrue("Error: a stage that ran wasn't timed",
+                initializer.getStageMillis("gcm") >= 0);
+    }
+
+    public void testIncompleteStageSkipsDependents() throws InterruptedException {
+        StartupInitializer initializer = new StartupInitializer()
+                .add(stage("services", false))
+                .add(stage("gcm", true, "services"))
+                .add(stage("wear", true, "gcm"))
+                .add(stage("account", true));
+        initializer.start();
+        assertTrue("Error: the stages didn't finish", initializer.await(5000));
+
+        assertEquals("Error: only the services and account stages should have run",
+                2, mRan.size());
+        assertTrue(mRan.contains("services"));
+        assertTrue(mRan.contains("account"));
+        assertEquals("Error: a skipped stage was timed", -1, initializer.getStageMillis("wear"));
+    }
+
+    public void testBadDependencies() {
+        try {
+            new StartupInitializer()
+                    .add(stage("gcm", true, "wear"))
+                    .add(stage("wear", true, "gcm"))
+                    .start();
+            fail("Error: circular dependencies weren't caught");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            new StartupInitializer()
+                    .add(stage("gcm", true, "services"))
+                    .start();
+            fail("Error: a missing dependency wasn't caught");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertTrue("Error: a stage ran despite bad dependencies", mRan.isEmpty());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.util.SparseIntArray;
+import android.widget.RemoteViews;
+
+import com.katmitchell.sunshine.widget.TodayWidgetUpdater;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class TestTodayWidget extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestTodayWidget.class.getSimpleName();
+
+    /**
+     * Stands in for the widget service, counting the calls that would each be a binder
+     * transaction.
+     */
+    private static class FakeHost implements TodayWidgetUpdater.Host {
+        final SparseIntArray widths = new SparseIntArray();
+        final ArrayList<int[]> updates = new ArrayList<>();
+        int binderCalls;
+
+        @Override
+        public int[] getAppWidgetIds() {
+            binderCalls++;
+            int[] ids = new int[widths.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = widths.keyAt(i);
+            }
+            return ids;
+        }
+
+        @Override
+        public int getWidgetWidth(int appWidgetId) {
+            binderCalls++;
+            return widths.get(appWidgetId);
+        }
+
+        @Override
+        public void updateAppWidget(int[] appWidgetIds, RemoteViews views) {
+            binderCalls++;
+            updates.add(appWidgetIds);
+        }
+
+        void reset() {
+            binderCalls = 0;
+            updates.clear();
+        }
+    }
+
+    private TodayWidgetUpdater mUpdater;
+    private FakeHost mHost;
+    private String mHigh;
+    private String mLow;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mUpdater = new TodayWidgetUpdater(mContext);
+        mHost = new FakeHost();
+        int small = mContext.getResources().getDimensionPixelSize(
+                R.dimen.widget_today_default_width) - 1;
+        int large = mContext.getResources().getDimensionPixelSize(
+                R.dimen.widget_today_large_width);
+        mHost.widths.put(1, small);
+        mHost.widths.put(2, small);
+        mHost.widths.put(3, large);
+        mHigh = Utility.formatTemperature(mContext, 21);
+        mLow = Utility.formatTemperature(mContext, 12);
+    }
+
+    private int sync(String high) {
+        mHost.reset();
+        mUpdater.update(mHost, R.drawable.art_clear, "Clear", high, mLow);
+        Log.d(LOG_TAG, "Binder calls for this sync: " + mHost.binderCalls);
+        return mHost.binderCalls;
+    }
+
+    /*
+        The first sync measures every widget and sends one update per size; syncs after it
+        that bring the same weather send nothing; a change sends one update per size again.
+     */
+    public void testSkipsUnchangedWidgets() {
+        // The ids, three widths and two updates
+        assertEquals("Error: binder calls for the first sync", 6, sync(mHigh));
+        assertEquals("Error: widgets of a size weren't updated together", 2, mHost.updates.size());
+        assertTrue(Arrays.equals(new int[]{1, 2}, mHost.updates.get(0)));
+        assertTrue(Arrays.equals(new int[]{3}, mHost.updates.get(1)));
+
+        assertEquals("Error: unchanged widgets were measured or updated", 1, sync(mHigh));
+        assertEquals("Error: unchanged widgets were measured or updated", 1, sync(mHigh));
+
+        assertEquals("Error: binder calls for a sync with new weather",
+                3, sync(Utility.formatTemperature(mContext, 25)));
+    }
+
+    /*
+        A resized widget should be measured again and updated on its own, and a new widget
+        updated without touching the rest.
+     */
+    public void testResizedAndAddedWidgets() {
+        sync(mHigh);
+
+        int large = mContext.getResources().getDimensionPixelSize(
+                R.dimen.widget_today_large_width);
+        mHost.widths.put(2, large);
+        mUpdater.invalidate(2);
+        assertEquals("Error: binder calls after a resize", 3, sync(mHigh));
+        assertEquals(1, mHost.updates.size());
+        assertTrue("Error: the wrong widget was updated after a resize",
+                Arrays.equals(new int[]{2}, mHost.updates.get(0)));
+
+        mHost.widths.put(4, large);
+        assertEquals("Error: binder calls after a widget was added", 3, sync(mHigh));
+        assertTrue("Error: the wrong widget was updated after one was added",
+                Arrays.equals(new int[]{4}, mHost.updates.get(0)));
+
+        mHost.widths.delete(4);
+        mHost.widths.delete(3);
+        assertEquals("Error: removing widgets updated the others", 1, sync(mHigh));
+    }
+}
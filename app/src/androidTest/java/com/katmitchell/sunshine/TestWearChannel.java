@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestWearChannel extends AndroidTestCase {
+
+    private static final long BACKOFF_MILLIS = 50;
+
+    /**
+     * Stands in for the Data API, keeping what was put.  It can be told to fail connecting a
+     * number of times, to be unavailable, and to hold the next put until released.
+     */
+    private static class FakeTransport implements WearChannel.Transport {
+        final ArrayList<String> paths = new ArrayList<>();
+        final ArrayList<DataMap> puts = new ArrayList<>();
+        volatile int connectFailuresLeft;
+        volatile boolean unavailable;
+        volatile int putFailuresLeft;
+        volatile CountDownLatch putGate;
+        volatile boolean connected;
+        volatile int connectCalls;
+
+        @Override
+        public int connect(long timeoutMillis) {
+            connectCalls++;
+            if (unavailable) {
+                return WearChannel.CONNECT_UNAVAILABLE;
+            }
+            if (connectFailuresLeft > 0) {
+                connectFailuresLeft--;
+                return WearChannel.CONNECT_FAILED;
+            }
+            connected = true;
+            return WearChannel.CONNECTED;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean putDataItem(String path, DataMap data, long timeoutMillis) {
+            CountDownLatch gate = putGate;
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            if (putFailuresLeft > 0) {
+                putFailuresLeft--;
+                return false;
+            }
+            synchronized (this) {
+                paths.add(path);
+                puts.add(data);
+            }
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+            connected = false;
+        }
+
+        synchronized int getPutCount() {
+            return puts.size();
+        }
+    }
+
+    private FakeTransport mTransport;
+    private WearChannel mChannel;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mTransport = new FakeTransport();
+        mChannel = new WearChannel(mTransport, BACKOFF_MILLIS, 4 * BACKOFF_MILLIS);
+    }
+
+    private static DataMap forecast(int high) {
+        DataMap dataMap = new DataMap();
+        dataMap.putInt("weather_id", 800);
+        dataMap.putDouble("high", high);
+        return dataMap;
+    }
+
+    private void waitForPuts(final int count) {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mTransport.getPutCount() >= count;
+            }
+        }.run();
+    }
+
+    /*
+        The connection should be made once, when first needed, and kept for later sends.
+     */
+    public void testConnectsLazilyAndOnce() {
+        assertEquals("Error: connected before there was anything to send",
+                0, mTransport.connectCalls);
+        mChannel.send(WearForecast.PATH, forecast(20));
+        waitForPuts(1);
+        mChannel.send(WearForecast.PATH, forecast(21));
+        waitForPuts(2);
+        assertEquals("Error: connected again for a second send", 1, mTransport.connectCalls);
+        assertEquals(1, mChannel.getConnects());
+        assertEquals(2, mChannel.getSent());
+    }
+
+    /*
+        While a put is in flight, later forecasts should replace one another, so only the
+        latest one is sent after it.
+     */
+    public void testCoalescesToLatest() {
+        mTransport.putGate = new CountDownLatch(1);
+        mChannel.send(WearForecast.PATH, forecast(20));
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mChannel.getPendingCount() == 0;
+            }
+        }.run();
+
+        for (int high = 21; high <= 25; high++) {
+            mChannel.send(WearForecast.PATH, forecast(high));
+        }
+        assertEquals("Error: forecasts for the same path weren't coalesced",
+                1, mChannel.getPendingCount());
+        assertEquals(4, mChannel.getCoalesced());
+
+        mTransport.putGate.countDown();
+        waitForPuts(2);
+        assertEquals(2, mTransport.getPutCount());
+        assertEquals("Error: the latest forecast wasn't the one sent",
+                25.0, mTransport.puts.get(1).getDouble("high"));
+    }
+
+    public void testQueueIsBounded() {
+        mTransport.putGate = new CountDownLatch(1);
+        mChannel.send("/first", forecast(20));
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mChannel.getPendingCount() == 0;
+            }
+        }.run();
+
+        int paths = WearChannel.MAX_PENDING + 2;
+        for (int i = 0; i < paths; i++) {
+            mChannel.send("/path" + i, forecast(i));
+        }
+        assertEquals(WearChannel.MAX_PENDING, mChannel.getPendingCount());
+        assertEquals(2, mChannel.getDropped());
+
+        mTransport.putGate.countDown();
+        waitForPuts(1 + WearChannel.MAX_PENDING);
+        assertEquals("Error: the oldest paths should have been dropped",
+                "/path2", mTransport.paths.get(1));
+    }
+
+    /*
+        A watch that can't be reached should be tried again, waiting longer each time, and
+        get the queued forecast once it can be.
+     */
+    public void testReconnectsWithBackoff() {
+        mTransport.connectFailuresLeft = 3;
+        long start = System.currentTimeMillis();
+        mChannel.send(WearForecast.PATH, forecast(20));
+        waitForPuts(1);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(4, mTransport.connectCalls);
+        assertEquals(3, mChannel.getConnectFailures());
+        assertEquals(1, mChannel.getConnects());
+        // Waits of 1, 2 and 4 times the initial backoff, the last capped at 4
+        assertTrue("Error: retried without backing off, in " + elapsed + "ms",
+                elapsed >= 7 * BACKOFF_MILLIS);
+    }
+
+    /*
+        A failed put should be sent again on a new connection, unless a newer forecast
+        replaced it in the meantime.
+     */
+    public void testFailedSendIsRetried() {
+        mTransport.putFailuresLeft = 1;
+        mChannel.send(WearForecast.PATH, forecast(20));
+        waitForPuts(1);
+        assertEquals(1, mChannel.getSendFailures());
+        assertEquals(1, mChannel.getSent());
+        assertEquals("Error: didn't reconnect after a failed put", 2, mTransport.connectCalls);
+        assertEquals(20.0, mTransport.puts.get(0).getDouble("high"));
+    }
+
+    /*
+        Without the Wearable API there is nothing to retry for, so the queue should be dropped
+        rather than held on to, and the next send should try again.
+     */
+    public void testGivesUpWhenUnavailable() {
+        mTransport.unavailable = true;
+        mChannel.send(WearForecast.PATH, forecast(20));
+        mChannel.send("/other", forecast(20));
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mChannel.getPendingCount() == 0;
+            }
+        }.run();
+        int connectCalls = mTransport.connectCalls;
+        sleep(8 * BACKOFF_MILLIS);
+        assertEquals("Error: retried while the API was unavailable",
+                connectCalls, mTransport.connectCalls);
+        assertEquals(2, mChannel.getDropped());
+
+        mTransport.unavailable = false;
+        mChannel.send(WearForecast.PATH, forecast(21));
+        waitForPuts(1);
+        assertEquals(21.0, mTransport.puts.get(0).getDouble("high"));
+    }
+
+    /*
+        A failed put that can't go back in the queue, because it filled up while the put was
+        in flight, is lost, and should be counted as dropped.
+     */
+    public void testLostRetryIsCounted() {
+        mTransport.putGate = new CountDownLatch(1);
+        mTransport.putFailuresLeft = 1;
+        mChannel.send("/first", forecast(20));
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mChannel.getPendingCount() == 0;
+            }
+        }.run();
+        for (int i = 0; i < WearChannel.MAX_PENDING; i++) {
+            mChannel.send("/path" + i, forecast(i));
+        }
+
+        mTransport.putGate.countDown();
+        waitForPuts(WearChannel.MAX_PENDING);
+        assertEquals(1, mChannel.getSendFailures());
+        assertEquals("Error: the lost put wasn't counted", 1, mChannel.getDropped());
+        assertFalse("Error: the lost put was sent", mTransport.paths.contains("/first"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
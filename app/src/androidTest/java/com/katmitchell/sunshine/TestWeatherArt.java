@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.katmitchell.sunshine.data.TestUtilities;
+
+public class TestWeatherArt extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherArt.class.getSimpleName();
+
+    private static final int DAYS = 14;
+
+    private StandInImageServer mServer;
+    private String mOriginalArtPack;
+    private String mArtPack;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInImageServer();
+        mArtPack = mServer.newBaseUrl() + "%s.png";
+        mOriginalArtPack = TestUtilities.setArtPack(mContext, mArtPack);
+    }
+
+    public void tearDown() throws Exception {
+        TestUtilities.setArtPack(mContext, mOriginalArtPack);
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /*
+        A sync's forecast with repeated conditions should download each image once, and leave
+        both sizes in the memory cache, so a bind straight after is served without waiting.
+     */
+    public void testPrefetchWarmsCaches() {
+        int[] weatherIds = {800, 800, 801, 500, 501, 800};
+        final String[] urls = {
+                String.format(mArtPack, "clear"),
+                String.format(mArtPack, "light_clouds"),
+                String.format(mArtPack, "rain")
+        };
+
+        long startNanos = System.nanoTime();
+        int loaded = WeatherArt.prefetch(mContext, weatherIds);
+        long prefetchMillis = (System.nanoTime() - startNanos) / 1000000;
+        Log.d(LOG_TAG, "Prefetched " + loaded + " images in " + prefetchMillis + "ms");
+
+        assertEquals("Error: not every image was prefetched at both sizes",
+                urls.length * 2, loaded);
+        assertEquals("Error: an image was downloaded more than once",
+                urls.length, mServer.getRequestCount());
+
+        final int[] sizes = {WeatherArt.getSmallSize(mContext), WeatherArt.getLargeSize(mContext)};
+        final int[] memoryHits = new int[1];
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                for (String url : urls) {
+                    for (int size : sizes) {
+                        // A memory cache hit is delivered before into() returns
+                        final boolean[] ready = new boolean[1];
+                        SimpleTarget<GlideDrawable> target = new SimpleTarget<GlideDrawable>() {
+                            @Override
+                            public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+                                ready[0] = true;
+                            }
+                        };
+                        WeatherArt.load(Glide.with(mContext), url, size).into(target);
+                        if (ready[0]) {
+                            memoryHits[0]++;
+                        }
+                        Glide.clear(target);
+                    }
+                }
+            }
+        });
+        assertEquals("Error: prefetched art wasn't in the memory cache",
+                urls.length * sizes.length, memoryHits[0]);
+        assertEquals("Error: binding downloaded prefetched art again",
+                urls.length, mServer.getRequestCount());
+    }
+
+    public void testLocalGraphicsSkipsPrefetch() {
+        TestUtilities.setArtPack(mContext, mContext.getString(R.string.pref_art_pack_sunshine));
+        assertEquals(0, WeatherArt.prefetch(mContext, new int[]{800, 500}));
+        assertEquals(0, mServer.getRequestCount());
+    }
+
+    /*
+        Scrolling to show rows up to position 5 should start loading the distinct art of the
+        next few rows, once each.
+     */
+    public void testPreloadsAhead() {
+        final String[] names = {"clear", "rain", "clear", "snow", "fog", "clear", "rain", "storm",
+                "clouds", "clear", "snow", "rain", "fog", "clear"};
+        final ArtPreloader preloader = new ArtPreloader(mContext, new ArtPreloader.Source() {
+            @Override
+            public int getCount() {
+                return DAYS;
+            }
+
+            @Override
+            public String getArtUrl(int position) {
+                return String.format(mArtPack, names[position]);
+            }
+        });
+
+        // Positions 6 to 9: rain, storm, clouds, clear
+        final int expected = 4;
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                preloader.preloadAfter(5);
+            }
+        });
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mServer.getRequestCount() >= expected;
+            }
+        }.run();
+
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                preloader.preloadAfter(5);
+                preloader.preloadAfter(6);
+            }
+        });
+        // Scrolling one more row brings in position 10, snow, which is the only new image
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mServer.getRequestCount() >= expected + 1;
+            }
+        }.run();
+        assertEquals("Error: art was preloaded more than once",
+                expected + 1, mServer.getRequestCount());
+
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                preloader.reset();
+            }
+        });
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.katmitchell.sunshine.data.TestUtilities;
+
+import java.util.Locale;
+
+/*
+    Checks the weatherId tables against the if/else chains they replaced, which are kept here
+    as they were.  The condition strings are checked against the resource names instead, since
+    every code with its own string has a condition_<code> resource.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    // Past both ends of every table
+    private static final int FIRST_ID = 0;
+    private static final int LAST_ID = 1100;
+
+    private String mOriginalArtPack;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mOriginalArtPack = PreferenceManager.getDefaultSharedPreferences(mContext).getString(
+                mContext.getString(R.string.pref_art_pack_key),
+                mContext.getString(R.string.pref_art_pack_sunshine));
+    }
+
+    public void tearDown() throws Exception {
+        TestUtilities.setArtPack(mContext, mOriginalArtPack);
+        super.tearDown();
+    }
+
+    public void testResourceParity() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Error: icon for " + id,
+                    legacyIconResource(id), Utility.getIconResourceForWeatherCondition(id));
+            assertEquals("Error: art for " + id,
+                    legacyArtResource(id), Utility.getArtResourceForWeatherCondition(id));
+            assertEquals("Error: image for " + id,
+                    legacyImageUrl(id), Utility.getImageUrlForWeatherCondition(id));
+        }
+    }
+
+    public void testArtUrlParity() {
+        String[] artPacks = {
+                mContext.getString(R.string.pref_art_pack_sunshine),
+                mContext.getString(R.string.pref_art_pack_cute_dogs)
+        };
+        for (String artPack : artPacks) {
+            TestUtilities.setArtPack(mContext, artPack);
+            for (int id = FIRST_ID; id <= LAST_ID; id++) {
+                assertEquals("Error: art URL for " + id,
+                        legacyArtUrl(mContext, id), Utility.getArtUrlForWeatherCondition(mContext, id));
+            }
+        }
+    }
+
+    public void testStringParity() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            String expected;
+            if (id >= 200 && id <= 232) {
+                expected = mContext.getString(R.string.condition_2xx);
+            } else if (id >= 300 && id <= 321) {
+                expected = mContext.getString(R.string.condition_3xx);
+            } else {
+                int stringId = mContext.getResources().getIdentifier(
+                        "condition_" + id, "string", mContext.getPackageName());
+                expected = stringId != 0 ? mContext.getString(stringId) :
+                        mContext.getString(R.string.condition_unknown, id);
+            }
+            assertEquals("Error: string for " + id,
+                    expected, Utility.getStringForWeatherCondition(mContext, id));
+        }
+    }
+
+    /*
+        Not a pass/fail test: logs the time to look up the icon and art of every code in the
+        OpenWeatherMap range through the old if/else chains and through the tables.
+     */
+    public void testBenchmark() {
+        final int iterations = 1000;
+
+        long sink = 0;
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (int id = 200; id <= 804; id++) {
+                sink += legacyIconResource(id) + legacyArtResource(id);
+            }
+        }
+        long chainNanos = System.nanoTime() - startNanos;
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (int id = 200; id <= 804; id++) {
+                sink -= Utility.getIconResourceForWeatherCondition(id) +
+                        Utility.getArtResourceForWeatherCondition(id);
+            }
+        }
+        long tableNanos = System.nanoTime() - startNanos;
+
+        assertEquals(0, sink);
+        int lookups = iterations * (804 - 200 + 1);
+        Log.d(LOG_TAG, "If/else chains: " + (chainNanos / lookups) + "ns/lookup, tables: " +
+                (tableNanos / lookups) + "ns/lookup");
+    }
+
+    private static int legacyIconResource(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int legacyArtResource(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String legacyArtUrl(Context context, int weatherId) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+
+    private static String legacyImageUrl(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.katmitchell.sunshine.common.WeatherConditions;
+import com.katmitchell.sunshine.common.WeatherIcons;
+
+/*
+    WeatherIcons is what the watch face draws its icon from; it lives in the common module so
+    it can be checked here, with the phone's icons, which are the same artwork.
+ */
+public class TestWeatherIcons extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherIcons.class.getSimpleName();
+
+    private static final int[] ICON_RESOURCES = {
+            R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain, R.drawable.ic_snow,
+            R.drawable.ic_fog, R.drawable.ic_clear, R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+    };
+
+    private WeatherIcons mIcons;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mIcons = new WeatherIcons(mContext.getResources(), ICON_RESOURCES);
+    }
+
+    public void testDecodesEachIconOnce() {
+        int rain = WeatherConditions.RAIN;
+        assertFalse(mIcons.contains(rain));
+        Bitmap color = mIcons.get(rain, WeatherIcons.MODE_COLOR);
+        Bitmap grayscale = mIcons.get(rain, WeatherIcons.MODE_GRAYSCALE);
+        Bitmap lowBit = mIcons.get(rain, WeatherIcons.MODE_LOW_BIT);
+        assertTrue(mIcons.contains(rain));
+        assertEquals(1, mIcons.getDecodeCount());
+
+        for (int i = 0; i < 10; i++) {
+            assertSame("Error: the icon was made again",
+                    color, mIcons.get(rain, WeatherIcons.MODE_COLOR));
+            assertSame(grayscale, mIcons.get(rain, WeatherIcons.MODE_GRAYSCALE));
+            assertSame(lowBit, mIcons.get(rain, WeatherIcons.MODE_LOW_BIT));
+        }
+        assertEquals("Error: switching modes decoded the icon again",
+                1, mIcons.getDecodeCount());
+
+        mIcons.get(WeatherConditions.CLEAR, WeatherIcons.MODE_GRAYSCALE);
+        assertEquals(2, mIcons.getDecodeCount());
+        assertNotSame("Error: another condition gave the same icon", grayscale,
+                mIcons.get(WeatherConditions.CLEAR, WeatherIcons.MODE_GRAYSCALE));
+    }
+
+    public void testVariants() {
+        Bitmap color = mIcons.get(WeatherConditions.CLEAR, WeatherIcons.MODE_COLOR);
+        Bitmap grayscale = mIcons.get(WeatherConditions.CLEAR, WeatherIcons.MODE_GRAYSCALE);
+        Bitmap lowBit = mIcons.get(WeatherConditions.CLEAR, WeatherIcons.MODE_LOW_BIT);
+        assertEquals(color.getWidth(), grayscale.getWidth());
+        assertEquals(color.getHeight(), lowBit.getHeight());
+
+        int lit = 0;
+        for (int y = 0; y < color.getHeight(); y++) {
+            for (int x = 0; x < color.getWidth(); x++) {
+                int gray = grayscale.getPixel(x, y);
+                // Only opaque pixels, since unpremultiplying faint ones is rough
+                if (Color.alpha(gray) == 0xff) {
+                    assertEquals("Error: grayscale pixel isn't gray at " + x + "," + y,
+                            Color.red(gray), Color.green(gray), 2);
+                    assertEquals(Color.green(gray), Color.blue(gray), 2);
+                }
+                int bit = lowBit.getPixel(x, y);
+                assertTrue("Error: low-bit pixel is neither on nor off at " + x + "," + y,
+                        bit == Color.WHITE || bit == Color.TRANSPARENT);
+                if (bit == Color.WHITE) {
+                    lit++;
+                }
+            }
+        }
+        assertTrue("Error: nothing is lit in the low-bit icon", lit > 0);
+    }
+
+    /*
+        Not a pass/fail test for the times, which are logged: compares going in and out of
+        ambient mode the way the watch face used to, decoding the icon and making a grayscale
+        copy each time, with picking from the cache.  Picking from the cache should allocate
+        nothing, though.
+     */
+    @SuppressWarnings("deprecation")
+    public void testAmbientTransitionLatency() {
+        final int transitions = 200;
+        int condition = WeatherConditions.LIGHT_CLOUDS;
+        int resource = ICON_RESOURCES[condition];
+        // Warm up both, so the first call's one-off costs aren't counted
+        toGrayscale(BitmapFactory.decodeResource(mContext.getResources(), resource));
+        mIcons.get(condition, WeatherIcons.MODE_COLOR);
+
+        long startNanos = System.nanoTime();
+        Bitmap bitmap = null;
+        for (int i = 0; i < transitions; i++) {
+            bitmap = BitmapFactory.decodeResource(mContext.getResources(), resource);
+            if (i % 2 == 0) {
+                bitmap = toGrayscale(bitmap);
+            }
+        }
+        long uncachedNanos = System.nanoTime() - startNanos;
+        assertNotNull(bitmap);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        startNanos = System.nanoTime();
+        for (int i = 0; i < transitions; i++) {
+            bitmap = mIcons.get(condition,
+                    i % 2 == 0 ? WeatherIcons.MODE_GRAYSCALE : WeatherIcons.MODE_COLOR);
+        }
+        long cachedNanos = System.nanoTime() - startNanos;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+        Debug.resetThreadAllocCount();
+
+        Log.d(LOG_TAG, "Ambient transition: decoding " + (uncachedNanos / transitions) +
+                "ns, cached " + (cachedNanos / transitions) + "ns, " + allocations +
+                " allocations in " + transitions + " cached transitions");
+        assertEquals("Error: a cached transition allocated", 0, allocations);
+        assertEquals(1, mIcons.getDecodeCount());
+    }
+
+    // As the watch face made its ambient icon before the cache
+    private static Bitmap toGrayscale(Bitmap bmpOriginal) {
+        Bitmap bmpGrayscale = Bitmap.createBitmap(bmpOriginal.getWidth(),
+                bmpOriginal.getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(bmpGrayscale);
+        Paint paint = new Paint();
+        ColorMatrix cm = new ColorMatrix();
+        cm.setSaturation(0);
+        paint.setColorFilter(new ColorMatrixColorFilter(cm));
+        c.drawBitmap(bmpOriginal, 0, 0, paint);
+        return bmpGrayscale;
+    }
+}
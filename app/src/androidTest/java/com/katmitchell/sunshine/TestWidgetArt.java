@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.graphics.Bitmap;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import com.katmitchell.sunshine.data.TestUtilities;
+import com.katmitchell.sunshine.widget.DetailWidgetViewsFactory;
+import com.katmitchell.sunshine.widget.WidgetArtCache;
+
+public class TestWidgetArt extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWidgetArt.class.getSimpleName();
+
+    // What a row used to carry: the stand-in server's image at its own size
+    private static final int SOURCE_BYTES = 256 * 256 * 4;
+
+    private StandInImageServer mServer;
+    private String mOriginalLocation;
+    private String mOriginalArtPack;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInImageServer();
+        mOriginalLocation = TestUtilities.setLocation(mContext, TestUtilities.TEST_LOCATION);
+        mOriginalArtPack = TestUtilities.setArtPack(mContext, mServer.newBaseUrl() + "%s.png");
+        TestUtilities.insertForecast(mContext);
+    }
+
+    public void tearDown() throws Exception {
+        TestUtilities.setArtPack(mContext, mOriginalArtPack);
+        TestUtilities.setLocation(mContext, mOriginalLocation);
+        WidgetArtCache.getInstance(mContext).evictAll();
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /*
+        Two widgets showing the same forecast, every day of which is clear, should download and
+        decode the art once between them, at the icon's size.  Also logs what the rows cost to
+        build and what a row costs to send across binder.
+     */
+    public void testDecodesEachArtOnce() {
+        DetailWidgetViewsFactory[] widgets = {
+                new DetailWidgetViewsFactory(mContext),
+                new DetailWidgetViewsFactory(mContext)
+        };
+        long[] refreshNanos = new long[widgets.length];
+        for (int i = 0; i < widgets.length; i++) {
+            long startNanos = System.nanoTime();
+            widgets[i].onDataSetChanged();
+            refreshNanos[i] = System.nanoTime() - startNanos;
+            assertEquals("Error: the widget didn't load the forecast",
+                    TestUtilities.DAYS, widgets[i].getCount());
+        }
+
+        int payloadBytes = 0;
+        for (DetailWidgetViewsFactory widget : widgets) {
+            for (int position = 0; position < TestUtilities.DAYS; position++) {
+                RemoteViews views = widget.getViewAt(position);
+                assertNotNull("Error: no row at " + position, views);
+                payloadBytes = Math.max(payloadBytes, getParcelSize(views));
+            }
+        }
+        Log.d(LOG_TAG, "Building the rows took " + refreshNanos[0] / 1000 + "us for the " +
+                "first widget and " + refreshNanos[1] / 1000 + "us for the second; the " +
+                "largest row was " + payloadBytes + " bytes across binder");
+
+        assertEquals("Error: the art was downloaded more than once", 1, mServer.getRequestCount());
+        WidgetArtCache cache = WidgetArtCache.getInstance(mContext);
+        assertEquals("Error: the rows' art wasn't shared", 1, cache.getCount());
+        Bitmap art = cache.get(800);
+        assertNotNull("Error: the art didn't load", art);
+        assertTrue("Error: the art was decoded larger than the icon",
+                art.getWidth() <= cache.getSize() && art.getHeight() <= cache.getSize());
+        assertTrue("Error: a row carried more than its icon needs", payloadBytes < SOURCE_BYTES);
+    }
+
+    /*
+        Switching art packs should let go of the last pack's images, and switching back to the
+        local graphics should leave nothing held.
+     */
+    public void testArtPackChangeEvicts() {
+        WidgetArtCache cache = WidgetArtCache.getInstance(mContext);
+        assertNotNull("Error: the art didn't load", cache.get(800));
+        assertNotNull("Error: the art didn't load", cache.get(500));
+        assertEquals(2, cache.getCount());
+
+        TestUtilities.setArtPack(mContext, mServer.newBaseUrl() + "%s.png");
+        assertNotNull("Error: the new pack's art didn't load", cache.get(800));
+        assertEquals("Error: the last pack's art wasn't evicted", 1, cache.getCount());
+        assertEquals(3, mServer.getRequestCount());
+
+        TestUtilities.setArtPack(mContext, mContext.getString(R.string.pref_art_pack_sunshine));
+        assertNull("Error: remote art was used with the local graphics", cache.get(800));
+        assertEquals("Error: art was held with the local graphics", 0, cache.getCount());
+    }
+
+    /*
+        An image that is slow to load mustn't hold up one that is already cached, as it would
+        if the wait happened under the cache's lock.
+     */
+    public void testSlowLoadDoesNotBlockCachedArt() throws InterruptedException {
+        final WidgetArtCache cache = WidgetArtCache.getInstance(mContext);
+        assertNotNull("Error: the art didn't load", cache.get(800));
+
+        final long delayMillis = 3000;
+        mServer.setDelayMillis(delayMillis);
+        final Bitmap[] slow = new Bitmap[1];
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                slow[0] = cache.get(500);
+            }
+        });
+        loader.start();
+        // Long enough for the slow load to be waiting
+        Thread.sleep(300);
+
+        long startNanos = System.nanoTime();
+        assertNotNull("Error: the cached art was lost", cache.get(800));
+        long cachedMillis = (System.nanoTime() - startNanos) / 1000000;
+        loader.join();
+        Log.d(LOG_TAG, "Cached art took " + cachedMillis + "ms behind a " + delayMillis +
+                "ms load");
+        assertTrue("Error: cached art waited " + cachedMillis + "ms on a slow load",
+                cachedMillis < delayMillis / 2);
+        assertNotNull("Error: the slow art didn't load", slow[0]);
+    }
+
+    private static int getParcelSize(RemoteViews views) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            views.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
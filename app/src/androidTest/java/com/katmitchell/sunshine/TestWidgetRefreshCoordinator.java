@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.test.AndroidTestCase;
+
+import com.katmitchell.sunshine.widget.WidgetRefreshCoordinator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static com.katmitchell.sunshine.widget.WidgetRefreshCoordinator.TYPE_DETAIL;
+import static com.katmitchell.sunshine.widget.WidgetRefreshCoordinator.TYPE_TODAY;
+
+public class TestWidgetRefreshCoordinator extends AndroidTestCase {
+
+    private static final long WINDOW_MILLIS = 1000;
+
+    /**
+     * A clock that only moves when told to, running what was scheduled as it passes.
+     */
+    private static class FakeClock implements WidgetRefreshCoordinator.Clock {
+        private final ArrayList<Runnable> mRunnables = new ArrayList<>();
+        private final ArrayList<Long> mTimes = new ArrayList<>();
+        private long mNow;
+
+        @Override
+        public long uptimeMillis() {
+            return mNow;
+        }
+
+        @Override
+        public void runAt(Runnable runnable, long uptimeMillis) {
+            mRunnables.add(runnable);
+            mTimes.add(uptimeMillis);
+        }
+
+        void advance(long millis) {
+            long end = mNow + millis;
+            while (true) {
+                // The earliest due, in the order they were scheduled
+                int next = -1;
+                for (int i = 0; i < mTimes.size(); i++) {
+                    if (mTimes.get(i) <= end && (next < 0 || mTimes.get(i) < mTimes.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                mNow = mTimes.remove(next);
+                mRunnables.remove(next).run();
+            }
+            mNow = end;
+        }
+    }
+
+    private FakeClock mClock;
+    private WidgetRefreshCoordinator mCoordinator;
+    // Refreshes that have started and not been told to finish, of either type
+    private final ArrayList<Integer> mInFlight = new ArrayList<>();
+    private final ArrayList<int[]> mAppWidgetIds = new ArrayList<>();
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mClock = new FakeClock();
+        mCoordinator = new WidgetRefreshCoordinator(mClock,
+                new WidgetRefreshCoordinator.Refresher() {
+                    @Override
+                    public void refresh(WidgetRefreshCoordinator coordinator, int type,
+                                        int[] appWidgetIds) {
+                        mInFlight.add(type);
+                        mAppWidgetIds.add(appWidgetIds);
+                    }
+                }, WINDOW_MILLIS);
+    }
+
+    private void finish(int type) {
+        assertTrue("Error: no refresh in flight", mInFlight.remove(Integer.valueOf(type)));
+        mCoordinator.finished(type);
+    }
+
+    public void testCollapsesBurst() {
+        // A sync, a resize and a preference change within the window
+        mCoordinator.request(TYPE_TODAY);
+        mClock.advance(100);
+        mCoordinator.request(TYPE_TODAY, 7);
+        mClock.advance(100);
+        mCoordinator.request(TYPE_TODAY, 9, 7);
+        assertEquals("Error: refreshed before the window was up", 0, mInFlight.size());
+
+        mClock.advance(WINDOW_MILLIS);
+        assertEquals(3, mCoordinator.getRequested(TYPE_TODAY));
+        assertEquals("Error: the burst wasn't collapsed", 1, mCoordinator.getExecuted(TYPE_TODAY));
+        assertTrue("Error: the widgets that asked weren't passed along",
+                Arrays.equals(new int[]{7, 9}, mAppWidgetIds.get(0)));
+        finish(TYPE_TODAY);
+
+        // Long after, a request is refreshed on its own
+        mClock.advance(10 * WINDOW_MILLIS);
+        mCoordinator.request(TYPE_TODAY);
+        mClock.advance(WINDOW_MILLIS);
+        assertEquals(2, mCoordinator.getExecuted(TYPE_TODAY));
+        assertEquals("Error: widget ids were passed along twice", 0, mAppWidgetIds.get(1).length);
+    }
+
+    public void testOneInFlight() {
+        mCoordinator.request(TYPE_TODAY);
+        mClock.advance(WINDOW_MILLIS);
+        assertEquals(1, mCoordinator.getExecuted(TYPE_TODAY));
+
+        // Requests while the refresh is running wait for it, however long it takes
+        mCoordinator.request(TYPE_TODAY);
+        mCoordinator.request(TYPE_TODAY);
+        mClock.advance(5 * WINDOW_MILLIS);
+        assertEquals("Error: a second refresh started while one was in flight",
+                1, mCoordinator.getExecuted(TYPE_TODAY));
+
+        finish(TYPE_TODAY);
+        mClock.advance(WINDOW_MILLIS);
+        assertEquals("Error: requests made in flight weren't refreshed after",
+                2, mCoordinator.getExecuted(TYPE_TODAY));
+        finish(TYPE_TODAY);
+        mClock.advance(10 * WINDOW_MILLIS);
+        assertEquals(2, mCoordinator.getExecuted(TYPE_TODAY));
+        assertEquals(3, mCoordinator.getRequested(TYPE_TODAY));
+    }
+
+    public void testTypesAreIndependent() {
+        mCoordinator.request(TYPE_TODAY);
+        mClock.advance(WINDOW_MILLIS / 2);
+        mCoordinator.request(TYPE_DETAIL);
+        mClock.advance(WINDOW_MILLIS / 2);
+        assertEquals(1, mCoordinator.getExecuted(TYPE_TODAY));
+        assertEquals("Error: the detail widget was refreshed early",
+                0, mCoordinator.getExecuted(TYPE_DETAIL));
+        mClock.advance(WINDOW_MILLIS / 2);
+        assertEquals("Error: the today widget's refresh held up the detail widget's",
+                1, mCoordinator.getExecuted(TYPE_DETAIL));
+    }
+
+    /*
+        A refresh that never reports back, say because its service was killed, mustn't stop
+        the widgets from ever refreshing again.
+     */
+    public void testLostRefreshTimesOut() {
+        mCoordinator.request(TYPE_TODAY);
+        mClock.advance(WINDOW_MILLIS);
+        mInFlight.clear();
+        mCoordinator.request(TYPE_TODAY);
+
+        mClock.advance(60 * 1000);
+        assertEquals("Error: a lost refresh held up the next one",
+                2, mCoordinator.getExecuted(TYPE_TODAY));
+    }
+
+    /*
+        An alarm can outlive the process that set it, and its requests with it.  The new
+        process has nothing to go on, so it refreshes everything that isn't already underway.
+     */
+    public void testOrphanedAlarmRefreshesEverything() {
+        mCoordinator.request(TYPE_DETAIL);
+        mCoordinator.onAlarm(0, 0);
+        assertEquals(1, mCoordinator.getExecuted(TYPE_TODAY));
+        assertEquals("Error: a scheduled refresh was started early",
+                0, mCoordinator.getExecuted(TYPE_DETAIL));
+
+        mClock.advance(WINDOW_MILLIS);
+        assertEquals(1, mCoordinator.getExecuted(TYPE_DETAIL));
+        mCoordinator.onAlarm(0, 0);
+        assertEquals("Error: a refresh started while one was in flight",
+                1, mCoordinator.getExecuted(TYPE_TODAY));
+        assertEquals(1, mCoordinator.getExecuted(TYPE_DETAIL));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.util.TimeZone;
+
+public class TestDateNormalizer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDateNormalizer.class.getSimpleName();
+
+    private static final long HOUR_IN_MILLIS = 1000L * 60 * 60;
+    private static final long START_TIME = 1356998400000L;  // January 1st, 2013 UTC
+    private static final int YEARS = 5;
+    // Not a whole number of hours, so we land on many different minutes of the day
+    private static final long STEP = HOUR_IN_MILLIS + 7 * 60 * 1000 + 13 * 1000;
+
+    // Zones with whole hour, half hour and 45 minute offsets, with and without DST, in both
+    // hemispheres.  Lord Howe moves its clocks by only 30 minutes.
+    private static final String[] TIME_ZONES = {
+            "UTC",
+            "America/Los_Angeles",
+            "America/New_York",
+            "Europe/London",
+            "Europe/Berlin",
+            "Asia/Kolkata",
+            "Asia/Kathmandu",
+            "Australia/Sydney",
+            "Australia/Lord_Howe",
+            "Pacific/Chatham",
+            "Pacific/Honolulu"
+    };
+
+    private TimeZone mOriginalTimeZone;
+
+    public void setUp() {
+        mOriginalTimeZone = TimeZone.getDefault();
+    }
+
+    public void tearDown() {
+        TimeZone.setDefault(mOriginalTimeZone);
+        DateNormalizer.invalidate();
+    }
+
+    // This is the implementation WeatherContract.normalizeDate used to have
+    private static long normalizeWithTime(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    public void testMatchesTimeImplementation() {
+        long end = START_TIME + YEARS * 366 * DateNormalizer.DAY_IN_MILLIS;
+        for (String id : TIME_ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(id));
+            DateNormalizer.invalidate();
+            for (long millis = START_TIME; millis < end; millis += STEP) {
+                long expected = normalizeWithTime(millis);
+                long actual = DateNormalizer.normalizeDate(millis);
+                if (expected != actual) {
+                    fail("Error: " + id + " normalized " + millis + " to " + actual +
+                            " instead of " + expected);
+                }
+            }
+        }
+    }
+
+    /*
+        Sao Paulo used to start daylight saving time at midnight, so some days have no 00:00.
+        Those days must start at the transition instead.
+     */
+    public void testDayStartsAtTransitionWhenMidnightIsSkipped() {
+        TimeZone saoPaulo = TimeZone.getTimeZone("America/Sao_Paulo");
+        TimeZone.setDefault(saoPaulo);
+        DateNormalizer.invalidate();
+        long end = START_TIME + YEARS * 366 * DateNormalizer.DAY_IN_MILLIS;
+        for (long millis = START_TIME; millis < end; millis += STEP) {
+            long start = DateNormalizer.normalizeDate(millis);
+            long localDay = localDay(saoPaulo, millis);
+            assertTrue("Error: day start is after the time itself", start <= millis);
+            assertEquals("Error: day start is on a different day",
+                    localDay, localDay(saoPaulo, start));
+            assertTrue("Error: day start is not the first instant of the day",
+                    localDay(saoPaulo, start - 1) < localDay);
+        }
+    }
+
+    public void testInvalidateFollowsTimeZoneChange() {
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+        DateNormalizer.invalidate();
+        long losAngeles = DateNormalizer.normalizeDate(START_TIME);
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+        DateNormalizer.invalidate();
+        long kolkata = DateNormalizer.normalizeDate(START_TIME);
+
+        assertEquals(normalizeWithTime(START_TIME), kolkata);
+        assertFalse(losAngeles == kolkata);
+    }
+
+    /*
+        A cached day should not survive a change of the default time zone, even when nothing
+        calls invalidate().
+     */
+    public void testCacheFollowsTimeZoneChangeWithoutInvalidate() {
+        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+        DateNormalizer.invalidate();
+        long losAngeles = DateNormalizer.normalizeDate(START_TIME);
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+        long kolkata = DateNormalizer.normalizeDate(START_TIME);
+
+        assertEquals("Error: a day cached for another time zone was returned",
+                normalizeWithTime(START_TIME), kolkata);
+        assertFalse(losAngeles == kolkata);
+    }
+
+    /*
+        Not a pass/fail test: logs how long each implementation takes for the pattern the
+        provider sees during a bulk insert, i.e. a couple of weeks of dates over and over.
+     */
+    public void testBenchmark() {
+        final int iterations = 200000;
+        long[] dates = new long[14];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = System.currentTimeMillis() + i * DateNormalizer.DAY_IN_MILLIS;
+        }
+
+        long sink = 0;
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += normalizeWithTime(dates[i % dates.length]);
+        }
+        long timeNanos = System.nanoTime() - startNanos;
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink -= DateNormalizer.normalizeDate(dates[i % dates.length]);
+        }
+        long normalizerNanos = System.nanoTime() - startNanos;
+
+        assertEquals(0, sink);
+        Log.d(LOG_TAG, "Time: " + (timeNanos / iterations) + "ns/call, DateNormalizer: " +
+                (normalizerNanos / iterations) + "ns/call");
+    }
+
+    private static long localDay(TimeZone timeZone, long millis) {
+        return DateNormalizer.floorDiv(millis + timeZone.getOffset(millis),
+                DateNormalizer.DAY_IN_MILLIS);
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.katmitchell.sunshine.R;
+import com.katmitchell.sunshine.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+
+public class TestForecastRepository extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastRepository.class.getSimpleName();
+
+    private static final long COALESCE_MILLIS = 50;
+    // Long enough for any load the test could have triggered to have been published
+    private static final long SETTLE_MILLIS = 1000;
+
+    private ForecastRepository mRepository;
+    private long mLocationRowId;
+    private final ArrayList<Forecast> mPublished = new ArrayList<>();
+
+    private final ForecastRepository.Observer mObserver = new ForecastRepository.Observer() {
+        @Override
+        public void onForecastChanged(Forecast forecast) {
+            synchronized (mPublished) {
+                mPublished.add(forecast);
+            }
+        }
+    };
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mLocationRowId = TestUtilities.insertForecast(mContext);
+
+        mRepository = new ForecastRepository(mContext, COALESCE_MILLIS);
+    }
+
+    public void tearDown() throws Exception {
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mRepository.removeObserver(mObserver);
+            }
+        });
+        mRepository.quit();
+        super.tearDown();
+    }
+
+    public void testPublishesForecastFromToday() {
+        observe();
+        waitForPublished(1);
+
+        Forecast forecast = getPublished(0);
+        assertEquals(TestUtilities.TEST_LOCATION, forecast.locationSetting);
+        assertEquals("Error: forecast has the wrong number of days",
+                TestUtilities.DAYS, forecast.days.count);
+        assertEquals("Error: forecast doesn't start today",
+                WeatherContract.normalizeDate(System.currentTimeMillis()), forecast.days.dates[0]);
+        assertTrue("Error: forecast has no coordinates", forecast.hasCoordinates());
+    }
+
+    /*
+        Every notifyChange used to make each CursorLoader requery.  A burst of them should now
+        cost at most one load queued behind one in flight, and since nothing actually changed,
+        nothing should be published.
+     */
+    public void testCoalescesChangeBurst() {
+        final int notifications = 20;
+        observe();
+        waitForPublished(1);
+
+        int queriesBefore = WeatherProvider.getQueryCount();
+        for (int i = 0; i < notifications; i++) {
+            mContext.getContentResolver().notifyChange(WeatherEntry.CONTENT_URI, null);
+        }
+        settle();
+        int queries = WeatherProvider.getQueryCount() - queriesBefore;
+
+        Log.d(LOG_TAG, notifications + " notifications: CursorLoader path " + notifications +
+                " queries per loader, repository " + queries + " queries");
+        assertTrue("Error: change burst cost " + queries + " queries", queries <= 2);
+        assertEquals("Error: identical snapshot was published again", 1, getPublishedCount());
+    }
+
+    /*
+        A typical session: open the list, leave for settings and change the units and art pack
+        a few times, come back, then a sync changes the data.  Logs the queries it costs next to
+        what the loaders used to run for the same session.
+     */
+    public void testSessionQueryCount() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String unitsKey = mContext.getString(R.string.pref_units_key);
+        String artPackKey = mContext.getString(R.string.pref_art_pack_key);
+        String originalUnits = prefs.getString(unitsKey,
+                mContext.getString(R.string.pref_units_metric));
+        String originalArtPack = prefs.getString(artPackKey,
+                mContext.getString(R.string.pref_art_pack_sunshine));
+
+        int queriesBefore = WeatherProvider.getQueryCount();
+        observe();
+        waitForPublished(1);
+        int initialQueries = WeatherProvider.getQueryCount() - queriesBefore;
+
+        // Stopped behind the settings screen
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mRepository.removeObserver(mObserver);
+            }
+        });
+        final int displayChanges = 6;
+        try {
+            for (int i = 0; i < displayChanges; i++) {
+                if (i % 2 == 0) {
+                    prefs.edit().putString(unitsKey, i % 4 == 0 ?
+                            mContext.getString(R.string.pref_units_imperial) :
+                            mContext.getString(R.string.pref_units_metric)).commit();
+                } else {
+                    prefs.edit().putString(artPackKey, i % 4 == 1 ?
+                            mContext.getString(R.string.pref_art_pack_cute_dogs) :
+                            mContext.getString(R.string.pref_art_pack_sunshine)).commit();
+                }
+            }
+        } finally {
+            prefs.edit().putString(unitsKey, originalUnits)
+                    .putString(artPackKey, originalArtPack).commit();
+        }
+
+        // Back again, which must be served from memory
+        int queriesBeforeReturn = WeatherProvider.getQueryCount();
+        observe();
+        assertEquals("Error: coming back didn't deliver the cached snapshot",
+                2, getPublishedCount());
+        assertEquals("Error: coming back queried the database",
+                queriesBeforeReturn, WeatherProvider.getQueryCount());
+
+        // A sync changes the highs
+        insertForecast(80);
+        waitForPublished(3);
+        assertEquals(80.0, getPublished(2).days.maxTemps[0]);
+        settle();
+
+        int queries = WeatherProvider.getQueryCount() - queriesBefore;
+        // Each loader (list and detail) queried once to start, once per display change and
+        // once for the sync
+        int loaderQueries = 2 * (1 + displayChanges + 1);
+        Log.d(LOG_TAG, "Session: loaders " + loaderQueries + " queries, repository " + queries +
+                " queries (" + initialQueries + " initial)");
+        assertTrue("Error: session cost " + queries + " queries", queries <= initialQueries + 2);
+    }
+
+    /*
+        Each bind of the detail screen asks for its day's extras.  While they are loading, asking
+        again should wait on the same query rather than start another.
+     */
+    public void testDayExtrasLoadOnce() {
+        observe();
+        waitForPublished(1);
+        final Forecast forecast = getPublished(0);
+        final ArrayList<DayExtras> loaded = new ArrayList<>();
+        final ForecastRepository.DayExtrasCallback callback =
+                new ForecastRepository.DayExtrasCallback() {
+                    @Override
+                    public void onDayExtrasLoaded(DayExtras extras) {
+                        loaded.add(extras);
+                    }
+                };
+
+        final DayExtras[] extras = new DayExtras[1];
+        int queriesBefore = WeatherProvider.getQueryCount();
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    mRepository.getDayExtras(forecast, 5, callback);
+                }
+                // A neighbour of the day being loaded
+                mRepository.getDayExtras(forecast, 6, callback);
+            }
+        });
+        settle();
+        assertEquals("Error: loading days asked for again queried again",
+                1, WeatherProvider.getQueryCount() - queriesBefore);
+
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                extras[0] = mRepository.getDayExtras(forecast, 5, callback);
+            }
+        });
+        assertNotNull("Error: loaded extras weren't kept", extras[0]);
+        assertEquals(TestUtilities.TEST_LOCATION, extras[0].locationSetting);
+        assertEquals("Error: not every request was called back", 11, loaded.size());
+    }
+
+    /*
+        Extras loading for one location mustn't be handed to, or kept for, another that asks for
+        the same days.
+     */
+    public void testDayExtrasKeptToTheirLocation() {
+        observe();
+        waitForPublished(1);
+        final Forecast forecast = getPublished(0);
+        final Forecast other = new Forecast("00000", forecast.startDate, 0, 0, forecast.days);
+        final ArrayList<DayExtras> loaded = new ArrayList<>();
+        final ForecastRepository.DayExtrasCallback callback =
+                new ForecastRepository.DayExtrasCallback() {
+                    @Override
+                    public void onDayExtrasLoaded(DayExtras extras) {
+                        loaded.add(extras);
+                    }
+                };
+
+        final DayExtras[] extras = new DayExtras[1];
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mRepository.getDayExtras(forecast, 5, callback);
+                mRepository.getDayExtras(other, 5, callback);
+            }
+        });
+        settle();
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                extras[0] = mRepository.getDayExtras(other, 5, callback);
+            }
+        });
+        assertEquals("Error: extras were delivered after the location changed",
+                0, loaded.size());
+        assertNull("Error: another location's extras were kept", extras[0]);
+    }
+
+    /*
+        Moving through more locations than the repository keeps should let the oldest
+        snapshots go, and never the one being observed.
+     */
+    public void testEvictsUnobservedSnapshots() {
+        final String[] locations = {TestUtilities.TEST_LOCATION, "94043", "London, UK", "Tokyo"};
+        for (int i = 0; i < locations.length; i++) {
+            final String location = locations[i];
+            TestUtilities.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    mRepository.observe(location, mObserver);
+                }
+            });
+            waitForPublished(i + 1);
+        }
+
+        final Forecast[] kept = new Forecast[locations.length];
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < locations.length; i++) {
+                    kept[i] = mRepository.getForecast(locations[i]);
+                }
+            }
+        });
+        for (int i = 0; i < locations.length - ForecastRepository.MAX_FORECASTS; i++) {
+            assertNull("Error: the snapshot of " + locations[i] + " was kept", kept[i]);
+        }
+        assertNotNull("Error: the observed location's snapshot was let go",
+                kept[locations.length - 1]);
+    }
+
+    // A sync rewriting every day with the same high
+    private void insertForecast(double high) {
+        ContentValues[] values = new ContentValues[TestUtilities.DAYS];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = TestUtilities.createForecastValues(mLocationRowId, i, high, 800);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    private void observe() {
+        TestUtilities.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mRepository.observe(TestUtilities.TEST_LOCATION, mObserver);
+            }
+        });
+    }
+
+    private void waitForPublished(final int count) {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return getPublishedCount() >= count;
+            }
+        }.run();
+    }
+
+    private int getPublishedCount() {
+        synchronized (mPublished) {
+            return mPublished.size();
+        }
+    }
+
+    private Forecast getPublished(int index) {
+        synchronized (mPublished) {
+            return mPublished.get(index);
+        }
+    }
+
+    private static void settle() {
+        try {
+            Thread.sleep(SETTLE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.katmitchell.sunshine.data.WeatherContract.LocationEntry;
+import com.katmitchell.sunshine.data.WeatherContract.WeatherEntry;
+
+public class TestPackedForecast extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestPackedForecast.class.getSimpleName();
+
+    // More days than the provider will pack, so we can check the cap
+    private static final int DAYS_TO_INSERT = PackedForecast.MAX_DAYS + 12;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = Long.parseLong(locationUri.getLastPathSegment());
+        ContentValues[] values = new ContentValues[DAYS_TO_INSERT];
+        for (int i = 0; i < DAYS_TO_INSERT; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationRowId);
+            values[i].put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + i * DateNormalizer.DAY_IN_MILLIS);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i);
+            values[i].put(WeatherEntry.COLUMN_MIN_TEMP, -i);
+            values[i].put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 5);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    public void testMatchesCursorQuery() {
+        PackedForecast forecast = PackedForecast.load(mContext, TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE, 14);
+        Cursor cursor = queryCursor(TestUtilities.TEST_DATE);
+        try {
+            assertEquals("Error: packed forecast has the wrong number of days",
+                    14, forecast.count);
+            for (int i = 0; i < forecast.count; i++) {
+                assertTrue(cursor.moveToNext());
+                assertEquals("Error: wrong row id", cursor.getLong(0), forecast.ids[i]);
+                assertEquals("Error: wrong date", cursor.getLong(1), forecast.dates[i]);
+                assertEquals("Error: wrong weather id", cursor.getInt(2), forecast.weatherIds[i]);
+                assertEquals("Error: wrong description", cursor.getString(3),
+                        forecast.shortDescs[i]);
+                assertEquals("Error: wrong high", cursor.getDouble(4), forecast.maxTemps[i]);
+                assertEquals("Error: wrong low", cursor.getDouble(5), forecast.minTemps[i]);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testStartDateAndCap() {
+        long secondDay = TestUtilities.TEST_DATE + DateNormalizer.DAY_IN_MILLIS;
+        PackedForecast forecast = PackedForecast.load(mContext, TestUtilities.TEST_LOCATION,
+                secondDay, 1);
+        assertEquals(1, forecast.count);
+        assertEquals("Error: packed forecast didn't start at the start date",
+                WeatherContract.normalizeDate(secondDay), forecast.dates[0]);
+
+        forecast = PackedForecast.load(mContext, TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE, Integer.MAX_VALUE);
+        assertEquals("Error: packed forecast wasn't capped",
+                PackedForecast.MAX_DAYS, forecast.count);
+
+        forecast = PackedForecast.load(mContext, "nowhere", TestUtilities.TEST_DATE, 7);
+        assertEquals("Error: unknown location should give an empty forecast", 0, forecast.count);
+    }
+
+    public void testBundleRoundTrip() {
+        PackedForecast forecast = PackedForecast.load(mContext, TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE, 7);
+        PackedForecast copy = PackedForecast.fromBundle(forecast.toBundle());
+        assertEquals(forecast.count, copy.count);
+        for (int i = 0; i < forecast.count; i++) {
+            assertEquals(forecast.ids[i], copy.ids[i]);
+            assertEquals(forecast.shortDescs[i], copy.shortDescs[i]);
+        }
+        assertEquals(0, PackedForecast.fromBundle(new Bundle()).count);
+    }
+
+    /*
+        Not a pass/fail test: logs the average latency of reading the detail widget's two weeks
+        through one call() against a cursor that is queried, walked and closed.  The call() path
+        is a single provider round trip whatever the number of days, while the cursor path
+        makes one for the query plus one per window fill when the provider is in another
+        process, and one more to close.
+     */
+    public void testBenchmark() {
+        final int iterations = 1000;
+        final int days = 14;
+
+        long sink = 0;
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Cursor cursor = queryCursor(TestUtilities.TEST_DATE);
+            for (int day = 0; day < days && cursor.moveToNext(); day++) {
+                sink += cursor.getInt(2) + cursor.getString(3).length();
+            }
+            cursor.close();
+        }
+        long cursorNanos = System.nanoTime() - startNanos;
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            PackedForecast forecast = PackedForecast.load(mContext, TestUtilities.TEST_LOCATION,
+                    TestUtilities.TEST_DATE, days);
+            for (int day = 0; day < forecast.count; day++) {
+                sink -= forecast.weatherIds[day] + forecast.shortDescs[day].length();
+            }
+        }
+        long packedNanos = System.nanoTime() - startNanos;
+
+        assertEquals(0, sink);
+        Log.d(LOG_TAG, "Cursor path: " + (cursorNanos / iterations / 1000) + "us/read, " +
+                "packed call(): " + (packedNanos / iterations / 1000) + "us/read (1 round trip)");
+    }
+
+    private Cursor queryCursor(long startDate) {
+        return mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        startDate),
+                PackedForecast.PACKED_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+    }
+}
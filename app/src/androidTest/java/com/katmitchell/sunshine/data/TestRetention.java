@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.katmitchell.sunshine.data.WeatherContract.LocationEntry;
+import com.katmitchell.sunshine.data.WeatherContract.WeatherEntry;
+
+public class TestRetention extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestRetention.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long START_TIME = 1419033600000L;  // December 20th, 2014
+    private static final int YEARS = 3;
+    private static final int DAYS_PER_SYNC = 3;
+    private static final int FORECAST_DAYS = 14;
+    private static final int SYNCS_PER_LOCATION = 30;
+    private static final String[] LOCATIONS = {"94043", "99705", "London, UK", "Tokyo"};
+
+    private SQLiteDatabase mDb;
+
+    public void setUp() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    public void tearDown() {
+        mDb.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    /*
+        The switch to incremental auto_vacuum takes a full VACUUM, so it waits for the first
+        sync's vacuum rather than running wherever the database is first opened.
+     */
+    public void testAutoVacuumIsIncremental() {
+        RetentionEnforcer.vacuum(mDb, new RetentionEnforcer.Stats(), START_TIME);
+        assertEquals("Error: weather.db should use incremental auto_vacuum",
+                WeatherDbHelper.AUTO_VACUUM_INCREMENTAL, WeatherDbHelper.getAutoVacuumMode(mDb));
+    }
+
+    /*
+        Simulates several years of syncs, with the user moving to a new location every few
+        months, and makes sure the database never holds more than the policy allows.
+     */
+    public void testMultiYearLoadStaysBounded() {
+        RetentionPolicy policy = RetentionPolicy.WEATHER;
+        long maxFileBytes = 0;
+        int syncs = YEARS * 365 / DAYS_PER_SYNC;
+        for (int sync = 0; sync < syncs; sync++) {
+            long now = START_TIME + sync * DAYS_PER_SYNC * DAY_IN_MILLIS;
+            String locationSetting = LOCATIONS[(sync / SYNCS_PER_LOCATION) % LOCATIONS.length];
+
+            mDb.beginTransaction();
+            RetentionEnforcer.Stats stats;
+            try {
+                long locationId = findOrInsertLocation(locationSetting);
+                for (int day = 0; day < FORECAST_DAYS; day++) {
+                    mDb.insert(WeatherEntry.TABLE_NAME, null, createWeatherValues(locationId,
+                            WeatherContract.normalizeDate(now + day * DAY_IN_MILLIS)));
+                }
+                stats = RetentionEnforcer.prune(mDb, policy, locationId, now);
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+            RetentionEnforcer.vacuum(mDb, stats, now);
+            maxFileBytes = Math.max(maxFileBytes, RetentionEnforcer.getFileBytes(mDb));
+
+            assertNoRowsBefore(WeatherContract.normalizeDate(now));
+            assertRowsPerLocationAtMost(policy.maxRowsPerLocation);
+            assertTrue("Error: bytes in use exceeded the retention budget",
+                    stats.bytesAfter <= policy.maxTotalBytes);
+        }
+
+        // Only the forecast from the last sync is still current
+        assertEquals(FORECAST_DAYS, countRows(WeatherEntry.TABLE_NAME));
+        assertEquals(1, countRows(LocationEntry.TABLE_NAME));
+
+        long[][] history = RetentionEnforcer.getSizeHistory();
+        assertTrue("Error: no database size samples were recorded", history.length > 0);
+        Log.d(LOG_TAG, syncs + " syncs, max file size " + maxFileBytes + " bytes, final size " +
+                history[history.length - 1][1] + " bytes");
+    }
+
+    public void testSizeBudgetDropsOldestRows() {
+        long locationId = insertLocation(LOCATIONS[0]);
+        // A policy with no age or count limit, and a budget smaller than what we are about to
+        // write
+        RetentionPolicy policy = new RetentionPolicy(WeatherEntry.TABLE_NAME,
+                WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_LOC_KEY,
+                RetentionPolicy.UNLIMITED, RetentionPolicy.UNLIMITED, 16 * 1024);
+
+        mDb.beginTransaction();
+        try {
+            for (int day = 0; day < 1000; day++) {
+                mDb.insert(WeatherEntry.TABLE_NAME, null,
+                        createWeatherValues(locationId, START_TIME + day * DAY_IN_MILLIS));
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+
+        RetentionEnforcer.Stats stats = RetentionEnforcer.prune(mDb, policy, locationId,
+                START_TIME);
+        assertTrue("Error: size budget did not delete anything", stats.rowsDeletedBySize > 0);
+        assertTrue("Error: a single run deleted more than its batch limit",
+                stats.rowsDeletedBySize <= RetentionEnforcer.SIZE_BATCH_ROWS *
+                        RetentionEnforcer.MAX_SIZE_BATCHES);
+        // The newest row must survive
+        assertEquals(1, countRows(WeatherEntry.TABLE_NAME + " WHERE " + WeatherEntry.COLUMN_DATE +
+                " = " + (START_TIME + 999 * DAY_IN_MILLIS)));
+    }
+
+    /*
+        The size budget should drop every other location's rows before any of the current
+        location's, even when the current location's are the oldest.
+     */
+    public void testSizeBudgetDropsOtherLocationsFirst() {
+        long currentId = insertLocation(LOCATIONS[0]);
+        long otherId = insertLocation(LOCATIONS[1]);
+        RetentionPolicy policy = new RetentionPolicy(WeatherEntry.TABLE_NAME,
+                WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_LOC_KEY,
+                RetentionPolicy.UNLIMITED, RetentionPolicy.UNLIMITED, 16 * 1024);
+
+        mDb.beginTransaction();
+        try {
+            for (int day = 0; day < FORECAST_DAYS; day++) {
+                mDb.insert(WeatherEntry.TABLE_NAME, null,
+                        createWeatherValues(currentId, START_TIME + day * DAY_IN_MILLIS));
+            }
+            for (int day = 0; day < 1000; day++) {
+                mDb.insert(WeatherEntry.TABLE_NAME, null, createWeatherValues(otherId,
+                        START_TIME + (FORECAST_DAYS + day) * DAY_IN_MILLIS));
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+
+        RetentionEnforcer.Stats stats = RetentionEnforcer.prune(mDb, policy, currentId,
+                START_TIME);
+        assertTrue("Error: size budget did not delete anything", stats.rowsDeletedBySize > 0);
+        assertEquals("Error: the current location lost rows while others still had some",
+                FORECAST_DAYS, countRows(WeatherEntry.TABLE_NAME + " WHERE " +
+                        WeatherEntry.COLUMN_LOC_KEY + " = " + currentId));
+    }
+
+    private long findOrInsertLocation(String locationSetting) {
+        Cursor c = mDb.query(LocationEntry.TABLE_NAME, new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{locationSetting},
+                null, null, null);
+        try {
+            if (c.moveToFirst()) {
+                return c.getLong(0);
+            }
+        } finally {
+            c.close();
+        }
+        return insertLocation(locationSetting);
+    }
+
+    private long insertLocation(String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, locationSetting);
+        values.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        values.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        long id = mDb.insert(LocationEntry.TABLE_NAME, null, values);
+        assertTrue(id != -1);
+        return id;
+    }
+
+    private static ContentValues createWeatherValues(long locationId, long date) {
+        ContentValues values = TestUtilities.createWeatherValues(locationId);
+        values.put(WeatherEntry.COLUMN_DATE, date);
+        return values;
+    }
+
+    private void assertNoRowsBefore(long date) {
+        assertEquals("Error: rows older than the retention window survived", 0,
+                countRows(WeatherEntry.TABLE_NAME + " WHERE " + WeatherEntry.COLUMN_DATE +
+                        " < " + date));
+    }
+
+    private void assertRowsPerLocationAtMost(int maxRows) {
+        Cursor c = mDb.rawQuery("SELECT MAX(n) FROM (SELECT COUNT(*) AS n FROM " +
+                WeatherEntry.TABLE_NAME + " GROUP BY " + WeatherEntry.COLUMN_LOC_KEY + ")", null);
+        try {
+            assertTrue(c.moveToFirst());
+            assertTrue("Error: too many rows kept for one location", c.getInt(0) <= maxRows);
+        } finally {
+            c.close();
+        }
+    }
+
+    private int countRows(String from) {
+        Cursor c = mDb.rawQuery("SELECT COUNT(*) FROM " + from, null);
+        try {
+            c.moveToFirst();
+            return c.getInt(0);
+        } finally {
+            c.close();
+        }
+    }
+}
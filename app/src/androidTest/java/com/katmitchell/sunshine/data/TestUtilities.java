@@ -17,18 +17,27 @@ package com.katmitchell.sunshine.data;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
+import android.preference.PreferenceManager;
 import android.test.AndroidTestCase;
 
 import com.example.android.sunshine.app.utils.PollingCheck;
+import com.katmitchell.sunshine.R;
+import com.katmitchell.sunshine.SunshineApplication;
+import com.katmitchell.sunshine.data.WeatherContract.LocationEntry;
+import com.katmitchell.sunshine.data.WeatherContract.WeatherEntry;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /*
     Students: These are functions and some test data to make it easier to test your database and
@@ -36,8 +45,10 @@ import java.util.Set;
     in our solution to use these as-given.
  */
 public class TestUtilities extends AndroidTestCase {
-    static final String TEST_LOCATION = "99705";
+    public static final String TEST_LOCATION = "99705";
     static final long TEST_DATE = 1419033600L;  // December 20th, 2014
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+    public static final int DAYS = 14;
 
     static void validateCursor(String error, Cursor valueCursor, ContentValues expectedValues) {
         assertTrue("Empty cursor returned. " + error, valueCursor.moveToFirst());
@@ -111,6 +122,117 @@ public class TestUtilities extends AndroidTestCase {
         return locationRowId;
     }
 
+    /**
+     * Makes locationSetting the preferred location, and returns the one it replaced, for the
+     * test to put back when it is done.
+     */
+    public static String setLocation(Context context, String locationSetting) {
+        return setPreference(context, R.string.pref_location_key,
+                R.string.pref_location_default, locationSetting);
+    }
+
+    /**
+     * Makes artPack the art pack, and returns the one it replaced, for the test to put back
+     * when it is done.
+     */
+    public static String setArtPack(Context context, String artPack) {
+        return setPreference(context, R.string.pref_art_pack_key,
+                R.string.pref_art_pack_sunshine, artPack);
+    }
+
+    private static String setPreference(Context context, int keyId, int defaultId,
+                                        String value) {
+        String key = context.getString(keyId);
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String previous = prefs.getString(key, context.getString(defaultId));
+        prefs.edit().putString(key, value).commit();
+        // Rather than wait for the snapshot to hear about it on the main thread
+        ((SunshineApplication) context.getApplicationContext()).reloadPreferences();
+        return previous;
+    }
+
+    /**
+     * Replaces the database's weather with a clear forecast of {@link #DAYS} days from today
+     * for {@link #TEST_LOCATION}, so lists have rows as soon as they are loaded.
+     *
+     * @return the location's row id
+     */
+    public static long insertForecast(Context context) {
+        return insertForecast(context, new int[]{800});
+    }
+
+    /**
+     * Like {@link #insertForecast(Context)}, but walks the days through weatherIds.
+     */
+    public static long insertForecast(Context context, int[] weatherIds) {
+        context.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        context.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        Uri locationUri = context.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                createNorthPoleLocationValues());
+        long locationRowId = Long.parseLong(locationUri.getLastPathSegment());
+
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            values[i] = createForecastValues(locationRowId, i, 20 + i,
+                    weatherIds[i % weatherIds.length]);
+        }
+        context.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        return locationRowId;
+    }
+
+    /**
+     * Returns the weather for the day that many days from today, as
+     * {@link #insertForecast(Context)} writes it.  Inserting it again over the same day is how
+     * a sync rewrites it.
+     */
+    public static ContentValues createForecastValues(long locationRowId, int day, double high,
+                                                     int weatherId) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+        values.put(WeatherEntry.COLUMN_DATE,
+                WeatherContract.normalizeDate(System.currentTimeMillis()) + day * DAY_IN_MILLIS);
+        values.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 10 - day);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        return values;
+    }
+
+    /**
+     * Runs runnable on the main thread and waits for it.  Anything it throws is thrown again
+     * here, since an assertion failing on the main thread would take the process down.
+     */
+    public static void runOnMainThread(final Runnable runnable) {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Throwable[] error = new Throwable[1];
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    error[0] = t;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        try {
+            assertTrue("Error: main thread didn't run the task", done.await(60, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            fail("Error: interrupted waiting for the main thread");
+        }
+        if (error[0] instanceof Error) {
+            throw (Error) error[0];
+        } else if (error[0] != null) {
+            throw new RuntimeException(error[0]);
+        }
+    }
+
     /*
         Students: The functions we provide inside of TestProvider use this utility class to test
         the ContentObserver callbacks using the PollingCheck class that we grabbed from the Android
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.katmitchell.sunshine.data.WeatherContract.LocationEntry;
+import com.katmitchell.sunshine.data.WeatherContract.WeatherEntry;
+
+public class TestWeatherQuery extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherQuery.class.getSimpleName();
+
+    private static final String[] PROJECTION = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = Long.parseLong(locationUri.getLastPathSegment());
+        ContentValues[] values = TestProvider.createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    public void testMatchesUriQueries() {
+        long date = TestUtilities.TEST_DATE;
+        assertSameRows(
+                mContext.getContentResolver().query(
+                        WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                        PROJECTION, null, null, SORT_ORDER),
+                WeatherQuery.forLocation(TestUtilities.TEST_LOCATION, PROJECTION, SORT_ORDER)
+                        .query(mContext));
+        assertSameRows(
+                mContext.getContentResolver().query(
+                        WeatherEntry.buildWeatherLocationWithStartDate(
+                                TestUtilities.TEST_LOCATION, date),
+                        PROJECTION, null, null, SORT_ORDER),
+                WeatherQuery.forLocationWithStartDate(TestUtilities.TEST_LOCATION, date,
+                        PROJECTION, SORT_ORDER).query(mContext));
+        assertSameRows(
+                mContext.getContentResolver().query(
+                        WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, date),
+                        PROJECTION, null, null, null),
+                WeatherQuery.forLocationAndDate(TestUtilities.TEST_LOCATION, date, PROJECTION)
+                        .query(mContext));
+    }
+
+    public void testToUri() {
+        long date = TestUtilities.TEST_DATE;
+        assertEquals(WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, date),
+                WeatherQuery.forLocationAndDate(TestUtilities.TEST_LOCATION, date, PROJECTION)
+                        .toUri());
+        assertEquals(WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        date),
+                WeatherQuery.forLocationWithStartDate(TestUtilities.TEST_LOCATION, date,
+                        PROJECTION, SORT_ORDER).toUri());
+    }
+
+    /*
+        Not a pass/fail test: logs the time spent per query on each path, and separately the
+        time spent only building, matching and parsing the Uri, which is what the typed path
+        skips.
+     */
+    public void testBenchmark() {
+        final int iterations = 2000;
+        final long now = System.currentTimeMillis();
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, now),
+                    PROJECTION, null, null, SORT_ORDER).close();
+        }
+        long uriNanos = System.nanoTime() - startNanos;
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            WeatherQuery.forLocationWithStartDate(TestUtilities.TEST_LOCATION, now,
+                    PROJECTION, SORT_ORDER).query(mContext).close();
+        }
+        long typedNanos = System.nanoTime() - startNanos;
+
+        UriMatcher matcher = WeatherProvider.buildUriMatcher();
+        long sink = 0;
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations * 10; i++) {
+            Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(
+                    TestUtilities.TEST_LOCATION, now);
+            sink += matcher.match(uri);
+            sink += WeatherEntry.getLocationSettingFromUri(uri).length();
+            sink += WeatherEntry.getStartDateFromUri(uri);
+        }
+        long uriOnlyNanos = System.nanoTime() - startNanos;
+
+        Log.d(LOG_TAG, "Uri query: " + (uriNanos / iterations) + "ns, typed query: " +
+                (typedNanos / iterations) + "ns, Uri build+match+parse alone: " +
+                (uriOnlyNanos / (iterations * 10)) + "ns (" + sink + ")");
+    }
+
+    private static void assertSameRows(Cursor expected, Cursor actual) {
+        try {
+            assertEquals("Error: typed query returned a different number of rows",
+                    expected.getCount(), actual.getCount());
+            while (expected.moveToNext()) {
+                assertTrue(actual.moveToNext());
+                for (int column = 0; column < expected.getColumnCount(); column++) {
+                    assertEquals("Error: typed query returned a different value",
+                            expected.getString(column), actual.getString(column));
+                }
+            }
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+
+/**
+ * Starts loading the art of the rows just below the ones on screen as the list scrolls, so it
+ * is in Glide's memory cache by the time they are bound.
+ * <p>
+ * Loads for the same URL are only started once.  At most {@link #MAX_PRELOADS} are held at a
+ * time; the oldest is let go into the memory cache when another starts.
+ */
+class ArtPreloader extends RecyclerView.OnScrollListener {
+
+    // Rows past the last visible one to look at
+    static final int PRELOAD_AHEAD = 4;
+    // More than the number of distinct images in a forecast
+    private static final int MAX_PRELOADS = 8;
+
+    interface Source {
+        int getCount();
+
+        /**
+         * Returns the remote art shown at position, or null if it is local.
+         */
+        String getArtUrl(int position);
+    }
+
+    private final Context mContext;
+    private final Source mSource;
+    private final int mSize;
+    private final ArrayDeque<SimpleTarget<GlideDrawable>> mTargets = new ArrayDeque<>();
+    private final HashSet<String> mPreloaded = new HashSet<>();
+    // Not until it is needed, since the local art never needs it
+    private RequestManager mGlide;
+
+    ArtPreloader(Context context, Source source) {
+        mContext = context;
+        mSource = source;
+        // Only the first row uses the large size, and it is never below the screen
+        mSize = WeatherArt.getSmallSize(context);
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy <= 0) {
+            return;
+        }
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if (layoutManager instanceof LinearLayoutManager) {
+            preloadAfter(((LinearLayoutManager) layoutManager).findLastVisibleItemPosition());
+        }
+    }
+
+    /**
+     * Preloads the art for the rows following lastVisible.
+     */
+    void preloadAfter(int lastVisible) {
+        if (lastVisible < 0) {
+            return;
+        }
+        int end = Math.min(lastVisible + PRELOAD_AHEAD, mSource.getCount() - 1);
+        for (int position = lastVisible + 1; position <= end; position++) {
+            String url = mSource.getArtUrl(position);
+            if (url != null && mPreloaded.add(url)) {
+                if (mGlide == null) {
+                    mGlide = Glide.with(mContext);
+                }
+                if (mTargets.size() == MAX_PRELOADS) {
+                    Glide.clear(mTargets.removeFirst());
+                }
+                mTargets.addLast(WeatherArt.load(mGlide, url, mSize)
+                        .into(new PreloadTarget(mSize)));
+            }
+        }
+    }
+
+    /**
+     * Lets go of every preload, for when the rows have changed.
+     */
+    void reset() {
+        while (!mTargets.isEmpty()) {
+            Glide.clear(mTargets.removeFirst());
+        }
+        mPreloaded.clear();
+    }
+
+    private static class PreloadTarget extends SimpleTarget<GlideDrawable> {
+        PreloadTarget(int size) {
+            super(size, size);
+        }
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            // Nothing to show, this only fills the cache
+        }
+    }
+}
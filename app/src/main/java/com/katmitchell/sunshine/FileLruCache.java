@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A directory of files that keeps only the most recently used few, going by their modified
+ * times.  Files are written under another name and renamed into place, so a half written one
+ * is never read.  The methods here touch the disk, so don't call them on the main thread.
+ */
+public class FileLruCache {
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * Writes a file's contents.
+     */
+    public interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private final File mDirectory;
+    private final int mMaxFiles;
+
+    public FileLruCache(File directory, int maxFiles) {
+        mDirectory = directory;
+        mMaxFiles = maxFiles;
+    }
+
+    /**
+     * Returns the file called name, marked as the most recently used, or null if it isn't here.
+     */
+    public File get(String name) {
+        File file = new File(mDirectory, name);
+        if (!file.exists()) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    public boolean contains(String name) {
+        return new File(mDirectory, name).exists();
+    }
+
+    /**
+     * Writes the file called name with writer, then lets the least recently used files go
+     * until there are no more than the cache keeps.
+     *
+     * @return the file
+     * @throws IOException if the file couldn't be written, in which case nothing is left of it
+     */
+    public File put(String name, Writer writer) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Couldn't create " + mDirectory);
+        }
+        File file = new File(mDirectory, name);
+        File temporary = new File(mDirectory, name + TEMPORARY_SUFFIX);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temporary);
+            writer.write(out);
+            out.close();
+            out = null;
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Couldn't rename " + temporary + " to " + file);
+            }
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Already failed
+                }
+            }
+            temporary.delete();
+        }
+        prune();
+        return file;
+    }
+
+    /**
+     * Deletes every file.
+     */
+    public void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private void prune() {
+        File[] files = mDirectory.listFiles();
+        if (files == null || files.length <= mMaxFiles) {
+            return;
+        }
+        // Oldest first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - mMaxFiles; i++) {
+            files[i].delete();
+        }
+    }
+}
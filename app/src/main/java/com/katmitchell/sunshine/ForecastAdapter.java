@@ -16,7 +16,7 @@
 package com.katmitchell.sunshine;
 
 import android.content.Context;
-import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
@@ -28,25 +28,38 @@ import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
 import com.katmitchell.sunshine.R;
-import com.katmitchell.sunshine.data.WeatherContract;
+import com.katmitchell.sunshine.data.Forecast;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link Forecast} to a {@link android.support.v7.widget.RecyclerView}.
+ * <p>
+ * Each forecast is turned into {@link ForecastRow}s in the background, and the adapter only
+ * shows it once they are ready, so binding a row during a scroll does no formatting at all.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ArtPreloader.Source {
 
-    private static final int VIEW_TYPE_TODAY = 0;
-    private static final int VIEW_TYPE_FUTURE_DAY = 1;
+    static final int VIEW_TYPE_TODAY = 0;
+    static final int VIEW_TYPE_FUTURE_DAY = 1;
 
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private Forecast mForecast;
+    private ForecastRow[] mRows = ForecastRow.EMPTY;
+    // Bumped for every rebuild, so that only the latest one is applied
+    private int mRowsGeneration;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private ArtPreloader mArtPreloader;
+    // Rows inflated ahead of time, if the activity started any
+    private ForecastViewPool mViewPool;
+    // Times the binds, in debug builds
+    private FrameMetricsCollector mFrameMetrics;
+    private OnRowsSwappedListener mOnRowsSwappedListener;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -71,9 +84,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mRows[adapterPosition].date, this);
             mICM.onClick(this);
         }
     }
@@ -82,12 +93,24 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         void onClick(Long date, ForecastAdapterViewHolder vh);
     }
 
+    /**
+     * Told when new rows are shown, which happens a while after {@link #swapForecast}, once
+     * they have been built in the background.
+     */
+    public interface OnRowsSwappedListener {
+        void onRowsSwapped(ForecastAdapter adapter);
+    }
+
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
+        // Days keep their id across syncs, so RecyclerView and the choice manager can follow them.
+        // This has to come before anything registers an observer, or it throws.
+        setHasStableIds(true);
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mArtPreloader = new ArtPreloader(context, this);
     }
 
     /*
@@ -112,7 +135,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
                     break;
                 }
             }
-            View view = LayoutInflater.from(viewGroup.getContext()).inflate(layoutId, viewGroup, false);
+            View view = mViewPool != null ? mViewPool.takeView(viewType) : null;
+            if (view == null) {
+                view = LayoutInflater.from(viewGroup.getContext()).inflate(layoutId, viewGroup, false);
+            }
             view.setFocusable(true);
             return new ForecastAdapterViewHolder(view);
         } else {
@@ -122,65 +148,43 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
-        }
+        long startNanos = mFrameMetrics != null ? System.nanoTime() : 0;
+        ForecastRow row = mRows[position];
+        boolean today = getItemViewType(position) == VIEW_TYPE_TODAY;
+        int defaultImage = today ? row.artResourceId : row.iconResourceId;
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( row.artUrl == null ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            // At the size the art was prefetched at, so a prefetched image is a cache hit
+            WeatherArt.load(Glide.with(mContext), row.artUrl,
+                    today ? WeatherArt.getLargeSize(mContext) : WeatherArt.getSmallSize(mContext))
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
-        // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.transitionName);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        forecastAdapterViewHolder.mDateView.setText(today ? row.longDateText : row.dateText);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        if (mFrameMetrics != null) {
+            mFrameMetrics.recordBind(System.nanoTime() - startNanos);
+        }
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -191,6 +195,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mICM.onSaveInstanceState(outState);
     }
 
+    void setViewPool(ForecastViewPool viewPool) {
+        mViewPool = viewPool;
+    }
+
+    void setFrameMetricsCollector(FrameMetricsCollector frameMetrics) {
+        mFrameMetrics = frameMetrics;
+    }
+
     public void setUseTodayLayout(boolean useTodayLayout) {
         mUseTodayLayout = useTodayLayout;
     }
@@ -204,20 +216,108 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        if (position < 0 || position >= mRows.length) {
+            return RecyclerView.NO_ID;
+        }
+        return mRows[position].date;
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mRows.length;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        recyclerView.addOnScrollListener(mArtPreloader);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(mArtPreloader);
+        super.onDetachedFromRecyclerView(recyclerView);
+    }
+
+    @Override
+    public int getCount() {
+        return mRows.length;
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    @Override
+    public String getArtUrl(int position) {
+        return mRows[position].artUrl;
+    }
+
+    /**
+     * Shows newForecast once its rows have been built in the background.
+     */
+    public void swapForecast(Forecast newForecast) {
+        mForecast = newForecast;
+        buildRows();
+    }
+
+    /**
+     * Rebuilds the rows of the current forecast, for when the units or art pack have changed.
+     */
+    public void refreshDisplay() {
+        if (mForecast != null) {
+            buildRows();
+        }
+    }
+
+    private void buildRows() {
+        final int generation = ++mRowsGeneration;
+        final Forecast forecast = mForecast;
+        // Nothing else is applied before this task finishes or is superseded, so these are
+        // still the rows on screen when it is applied
+        final ForecastRow[] oldRows = mRows;
+        final boolean todayLayout = mUseTodayLayout;
+        new AsyncTask<Void, Void, ForecastRowDiff>() {
+            private ForecastRow[] mNewRows;
+
+            @Override
+            protected ForecastRowDiff doInBackground(Void... params) {
+                mNewRows = ForecastRow.buildRows(mContext, forecast);
+                return ForecastRowDiff.compute(oldRows, mNewRows, todayLayout);
+            }
+
+            @Override
+            protected void onPostExecute(ForecastRowDiff diff) {
+                if (generation == mRowsGeneration) {
+                    swapRows(mNewRows, diff);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Shows rows, telling the RecyclerView only about the positions in diff, or about
+     * everything if diff is null.
+     */
+    void swapRows(ForecastRow[] rows, ForecastRowDiff diff) {
+        mRows = rows;
+        // The art may have changed with the rows
+        mArtPreloader.reset();
+        if (diff == null) {
+            notifyDataSetChanged();
+        } else {
+            diff.dispatchTo(this);
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        if (mOnRowsSwappedListener != null) {
+            mOnRowsSwappedListener.onRowsSwapped(this);
+        }
+    }
+
+    public void setOnRowsSwappedListener(OnRowsSwappedListener listener) {
+        mOnRowsSwappedListener = listener;
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    public Forecast getForecast() {
+        return mForecast;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
@@ -20,16 +20,12 @@ import android.app.Activity;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -46,13 +42,15 @@ import android.widget.AbsListView;
 import android.widget.TextView;
 
 import com.katmitchell.sunshine.R;
+import com.katmitchell.sunshine.data.Forecast;
+import com.katmitchell.sunshine.data.ForecastRepository;
 import com.katmitchell.sunshine.data.WeatherContract;
 import com.katmitchell.sunshine.sync.SunshineSyncAdapter;
 
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class ForecastFragment extends Fragment implements ForecastRepository.Observer, SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -60,42 +58,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // The units and art pack the list was last bound with
+    private String mDisplayPreferences;
 
     private static final String SELECTED_KEY = "selected_position";
 
-    private static final int FORECAST_LOADER = 0;
-    // For the forecast view we're showing only a small subset of the stored data.
-    // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
-            // In this case the id needs to be fully qualified with a table name, since
-            // the content provider joins the location & weather tables in the background
-            // (both have an _id column)
-            // On the one hand, that's annoying.  On the other, you can search the weather table
-            // using the location set by the user, which is only in the Location table.
-            // So the convenience is worth it.
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
-    };
-
-    // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
-    // must change.
-    static final int COL_WEATHER_ID = 0;
-    static final int COL_WEATHER_DATE = 1;
-    static final int COL_WEATHER_DESC = 2;
-    static final int COL_WEATHER_MAX_TEMP = 3;
-    static final int COL_WEATHER_MIN_TEMP = 4;
-    static final int COL_LOCATION_SETTING = 5;
-    static final int COL_WEATHER_CONDITION_ID = 6;
-    static final int COL_COORD_LAT = 7;
-    static final int COL_COORD_LONG = 8;
-
     /**
      * A callback interface that all activities containing this fragment must
      * implement. This mechanism allows activities to be notified of item
@@ -118,6 +85,27 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         setHasOptionsMenu(true);
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        // We may have been stopped behind the settings screen, in which case the list is still
+        // bound with the old units or art pack
+        String displayPreferences = Utility.getDisplayPreferences(getActivity());
+        if (mDisplayPreferences != null && !mDisplayPreferences.equals(displayPreferences)) {
+            mForecastAdapter.refreshDisplay();
+        }
+        mDisplayPreferences = displayPreferences;
+        // The repository keeps the forecast in memory, so coming back here doesn't cost a query
+        ForecastRepository.getInstance(getActivity())
+                .observe(Utility.getPreferredLocation(getActivity()), this);
+    }
+
+    @Override
+    public void onStop() {
+        ForecastRepository.getInstance(getActivity()).removeObserver(this);
+        super.onStop();
+    }
+
     @Override
     public void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
@@ -197,10 +185,31 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         );
             }
         }, emptyView, mChoiceMode);
+        // The empty view can only say why the list is empty once the rows are in
+        mForecastAdapter.setOnRowsSwappedListener(new ForecastAdapter.OnRowsSwappedListener() {
+            @Override
+            public void onRowsSwapped(ForecastAdapter adapter) {
+                if (getView() != null) {
+                    updateEmptyView();
+                }
+            }
+        });
 
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        // Start from the rows the activity inflated while it was being created
+        if (getActivity() instanceof ForecastViewPool.Host) {
+            ((ForecastViewPool.Host) getActivity()).getForecastViewPool()
+                    .attach(mRecyclerView, mForecastAdapter);
+        }
+
+        // For the frame stats screen
+        if (BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            FrameMetricsCollector.getInstance(getActivity())
+                    .attach(mRecyclerView, mForecastAdapter);
+        }
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -260,13 +269,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
-        getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
 
-    // since we read the location when we create the loader, all we need to do is restart things
+    // observing a location replaces the one we observed before
     void onLocationChanged() {
-        getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
+        ForecastRepository.getInstance(getActivity())
+                .observe(Utility.getPreferredLocation(getActivity()), this);
     }
 
     private void openPreferredLocationInMap() {
@@ -274,11 +283,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
         if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
-            if (null != c) {
-                c.moveToPosition(0);
-                String posLat = c.getString(COL_COORD_LAT);
-                String posLong = c.getString(COL_COORD_LONG);
+            Forecast forecast = mForecastAdapter.getForecast();
+            if (null != forecast && forecast.hasCoordinates()) {
+                String posLat = Double.toString(forecast.coordLat);
+                String posLong = Double.toString(forecast.coordLong);
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
 
                 Intent intent = new Intent(Intent.ACTION_VIEW);
@@ -303,33 +311,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // This is called when a new Loader needs to be created.  This
-        // fragment only uses one loader, so we don't care about checking the id.
-
-        // To only show current and future dates, filter the query to return weather only for
-        // dates after or including today.
-
-        // Sort order:  Ascending, by date.
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-
-        String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
-
-        return new CursorLoader(getActivity(),
-                weatherForLocationUri,
-                FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
-    }
-
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
-        updateEmptyView();
-        if ( data.getCount() == 0 ) {
+    public void onForecastChanged(Forecast forecast) {
+        if (forecast == mForecastAdapter.getForecast()) {
+            // Observing again after a stop hands us the snapshot we are already showing
+            return;
+        }
+        mForecastAdapter.swapForecast(forecast);
+        if ( forecast.days.count == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
         } else {
             mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
@@ -342,16 +330,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
+                            position = mForecastAdapter.getForecast()
+                                    .indexOfDate(mInitialSelectedDate);
                         }
                         if (position == RecyclerView.NO_POSITION) position = 0;
                         // If we don't need to restart the loader, and there's a desired position to restore
@@ -379,15 +359,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onDestroy() {
         super.onDestroy();
         if (null != mRecyclerView) {
+            if (BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                FrameMetricsCollector.getInstance(getActivity()).detach(mRecyclerView);
+            }
             mRecyclerView.clearOnScrollListeners();
         }
     }
 
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
-    }
-
     public void setUseTodayLayout(boolean useTodayLayout) {
         mUseTodayLayout = useTodayLayout;
         if (mForecastAdapter != null) {
@@ -434,6 +412,20 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (key.equals(getString(R.string.pref_location_status_key))) {
             updateEmptyView();
+        } else if (key.equals(getString(R.string.pref_units_key)) ||
+                key.equals(getString(R.string.pref_art_pack_key))) {
+            // Only the way the forecast is displayed has changed, so just rebuild the rows.  Wait
+            // until every listener has heard about the change, since the rows read the
+            // preferences from SunshineApplication's snapshot, which is swapped by one of them.
+            mRecyclerView.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (getActivity() != null) {
+                        mDisplayPreferences = Utility.getDisplayPreferences(getActivity());
+                        mForecastAdapter.refreshDisplay();
+                    }
+                }
+            });
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.Context;
+
+import com.katmitchell.sunshine.data.Forecast;
+import com.katmitchell.sunshine.data.PackedForecast;
+
+/**
+ * One row of the forecast list with every string and resource already worked out for the
+ * current units, art pack and day, so that {@link ForecastAdapter} only has to assign them.
+ * Rows are built in the background by {@link #buildRows}.
+ */
+public class ForecastRow {
+
+    static final ForecastRow[] EMPTY = new ForecastRow[0];
+
+    public final long id;
+    public final long date;
+    public final int weatherId;
+    // Small icon for future days, large art for the today layout
+    public final int iconResourceId;
+    public final int artResourceId;
+    // null when the local graphics are in use
+    public final String artUrl;
+    public final String dateText;
+    // "Today, June 24" for the today layout, the same as dateText on other days
+    public final String longDateText;
+    public final String description;
+    public final String descriptionA11y;
+    public final String highText;
+    public final String highA11y;
+    public final String lowText;
+    public final String lowA11y;
+    public final String transitionName;
+
+    private ForecastRow(Context context, PackedForecast days, int position, boolean localGraphics) {
+        id = days.ids[position];
+        date = days.dates[position];
+        weatherId = days.weatherIds[position];
+        iconResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+        dateText = Utility.getFriendlyDayString(context, date, false);
+        longDateText = position == 0 ?
+                Utility.getFriendlyDayString(context, date, true) : dateText;
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+        highText = Utility.formatTemperature(context, days.maxTemps[position]);
+        highA11y = context.getString(R.string.a11y_high_temp, highText);
+        lowText = Utility.formatTemperature(context, days.minTemps[position]);
+        lowA11y = context.getString(R.string.a11y_low_temp, lowText);
+        // this enables better animations. even if we lose state due to a device rotation,
+        // the animator can use this to re-find the original view.  It follows the day rather
+        // than the position, so that a row moving up after midnight keeps its name.
+        transitionName = "iconView" + date;
+    }
+
+    /**
+     * Prepares every row of the forecast.  This does all the formatting, so call it off the
+     * main thread.
+     */
+    static ForecastRow[] buildRows(Context context, Forecast forecast) {
+        if (forecast == null || forecast.days.count == 0) {
+            return EMPTY;
+        }
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        ForecastRow[] rows = new ForecastRow[forecast.days.count];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ForecastRow(context, forecast.days, i, localGraphics);
+        }
+        return rows;
+    }
+}
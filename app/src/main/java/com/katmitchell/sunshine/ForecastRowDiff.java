@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * The changes that turn one array of {@link ForecastRow}s into another, as the smallest runs of
+ * inserted, removed and changed positions.
+ * <p>
+ * Rows are matched on their date, which is unique within a forecast and, unlike the row id,
+ * survives a sync replacing the row.  Both arrays are sorted by date, so a single merge pass
+ * finds everything; it is cheap, but still meant to run next to the row building, off the main
+ * thread.
+ */
+class ForecastRowDiff {
+
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int CHANGE = 2;
+
+    // Runs, in the order they have to be dispatched
+    private int[] mTypes = new int[8];
+    private int[] mPositions = new int[8];
+    private int[] mCounts = new int[8];
+    private int mSize;
+
+    private ForecastRowDiff() {
+    }
+
+    /**
+     * @param todayLayout whether the first position uses its own layout, in which case a row
+     *                    arriving there has to be rebound even if it didn't change
+     */
+    static ForecastRowDiff compute(ForecastRow[] oldRows, ForecastRow[] newRows,
+                                   boolean todayLayout) {
+        ForecastRowDiff diff = new ForecastRowDiff();
+        int oldIndex = 0;
+        int newIndex = 0;
+        // The adapter's positions at each step are newRows[0, newIndex) then oldRows[oldIndex, end)
+        while (oldIndex < oldRows.length || newIndex < newRows.length) {
+            if (newIndex == newRows.length ||
+                    (oldIndex < oldRows.length && oldRows[oldIndex].date < newRows[newIndex].date)) {
+                diff.add(REMOVE, newIndex);
+                oldIndex++;
+            } else if (oldIndex == oldRows.length || oldRows[oldIndex].date > newRows[newIndex].date) {
+                diff.add(INSERT, newIndex);
+                newIndex++;
+            } else {
+                if (!sameContent(oldRows[oldIndex], newRows[newIndex]) ||
+                        (todayLayout && newIndex == 0 && oldIndex != 0)) {
+                    diff.add(CHANGE, newIndex);
+                }
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        return diff;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Returns the number of positions inserted, removed or changed.
+     */
+    int getAffectedCount() {
+        int count = 0;
+        for (int i = 0; i < mSize; i++) {
+            count += mCounts[i];
+        }
+        return count;
+    }
+
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mSize; i++) {
+            switch (mTypes[i]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(mPositions[i], mCounts[i]);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(mPositions[i], mCounts[i]);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(mPositions[i], mCounts[i]);
+            }
+        }
+    }
+
+    private void add(int type, int position) {
+        if (mSize > 0 && mTypes[mSize - 1] == type) {
+            int last = mSize - 1;
+            // Removals keep happening at the same position, inserts and changes move along
+            int next = type == REMOVE ? mPositions[last] : mPositions[last] + mCounts[last];
+            if (position == next) {
+                mCounts[last]++;
+                return;
+            }
+        }
+        if (mSize == mTypes.length) {
+            int[] types = new int[mSize * 2];
+            int[] positions = new int[mSize * 2];
+            int[] counts = new int[mSize * 2];
+            System.arraycopy(mTypes, 0, types, 0, mSize);
+            System.arraycopy(mPositions, 0, positions, 0, mSize);
+            System.arraycopy(mCounts, 0, counts, 0, mSize);
+            mTypes = types;
+            mPositions = positions;
+            mCounts = counts;
+        }
+        mTypes[mSize] = type;
+        mPositions[mSize] = position;
+        mCounts[mSize] = 1;
+        mSize++;
+    }
+
+    private static boolean sameContent(ForecastRow a, ForecastRow b) {
+        return a.weatherId == b.weatherId
+                && a.iconResourceId == b.iconResourceId
+                && a.artResourceId == b.artResourceId
+                && equals(a.artUrl, b.artUrl)
+                && a.dateText.equals(b.dateText)
+                && a.longDateText.equals(b.longDateText)
+                && a.description.equals(b.description)
+                && a.highText.equals(b.highText)
+                && a.lowText.equals(b.lowText);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
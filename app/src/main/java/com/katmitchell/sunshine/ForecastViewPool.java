@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.InflateException;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.util.ArrayDeque;
+
+/**
+ * A {@link RecyclerView.RecycledViewPool} for the forecast list that is filled before the list
+ * needs it.
+ * <p>
+ * {@link MainActivity} creates it before its own layout is inflated, which starts inflating
+ * enough rows to fill the screen and begin a scroll on a background thread.  Once the
+ * {@link ForecastFragment} has attached its list, the rows are made into view holders on the
+ * main thread and put into the pool, where the first layout finds them instead of inflating.
+ * A row the list asks for before it has been put into the pool is handed over directly.
+ * <p>
+ * Rows are inflated without AppCompat's view factory, like the support library's
+ * AsyncLayoutInflater, since it isn't safe off the main thread.  The rows only use framework
+ * widgets and the support GridLayout, which don't need it.
+ */
+class ForecastViewPool extends RecyclerView.RecycledViewPool implements Runnable {
+
+    public static final String LOG_TAG = ForecastViewPool.class.getSimpleName();
+
+    // Whatever the height of the screen
+    private static final int MAX_FUTURE_ROWS = 16;
+
+    /**
+     * Implemented by the activity the forecast list is in, to share its pool with the list.
+     */
+    interface Host {
+        ForecastViewPool getForecastViewPool();
+    }
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final int mTodayRows;
+    private final int mFutureRows;
+    // Inflated rows that haven't been made into view holders yet, guarded by this
+    private final ArrayDeque<View> mTodayViews = new ArrayDeque<>();
+    private final ArrayDeque<View> mFutureViews = new ArrayDeque<>();
+    private volatile boolean mCancelled;
+
+    // Only touched on the main thread
+    private RecyclerView mRecyclerView;
+    private ForecastAdapter mAdapter;
+
+    private final Runnable mFill = new Runnable() {
+        @Override
+        public void run() {
+            fill();
+        }
+    };
+
+    ForecastViewPool(Activity activity) {
+        mContext = activity;
+        // Only the single pane layout has a today row
+        mTodayRows = activity.getResources().getBoolean(R.bool.use_detail_activity) ? 1 : 0;
+        mFutureRows = getFutureRowsPerScreen(activity);
+        setMaxRecycledViews(ForecastAdapter.VIEW_TYPE_TODAY, Math.max(mTodayRows, 1));
+        setMaxRecycledViews(ForecastAdapter.VIEW_TYPE_FUTURE_DAY, mFutureRows);
+
+        Thread thread = new Thread(this, LOG_TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns enough future day rows to cover the screen, plus the one a scroll brings in.
+     */
+    private static int getFutureRowsPerScreen(Activity activity) {
+        DisplayMetrics metrics = activity.getResources().getDisplayMetrics();
+        TypedValue value = new TypedValue();
+        int rowHeight = 0;
+        if (activity.getTheme().resolveAttribute(android.R.attr.listPreferredItemHeight,
+                value, true)) {
+            rowHeight = (int) value.getDimension(metrics);
+        }
+        if (rowHeight <= 0) {
+            return MAX_FUTURE_ROWS;
+        }
+        return Math.min(metrics.heightPixels / rowHeight + 2, MAX_FUTURE_ROWS);
+    }
+
+    int getTodayRows() {
+        return mTodayRows;
+    }
+
+    int getFutureRows() {
+        return mFutureRows;
+    }
+
+    /**
+     * Makes this the pool of recyclerView, which shows adapter, and hands it the rows
+     * inflated so far.  Call it once the adapter has been set.
+     */
+    void attach(RecyclerView recyclerView, ForecastAdapter adapter) {
+        mRecyclerView = recyclerView;
+        mAdapter = adapter;
+        adapter.setViewPool(this);
+        recyclerView.setRecycledViewPool(this);
+        fill();
+    }
+
+    /**
+     * Stops inflating and lets go of the rows waiting for a list, for when the activity goes.
+     */
+    void cancel() {
+        mCancelled = true;
+        mMainHandler.removeCallbacks(mFill);
+        synchronized (this) {
+            mTodayViews.clear();
+            mFutureViews.clear();
+        }
+        if (mAdapter != null) {
+            mAdapter.setViewPool(null);
+        }
+        mRecyclerView = null;
+        mAdapter = null;
+    }
+
+    /**
+     * Returns an inflated row of viewType that hasn't been made into a view holder yet, or null
+     * if there isn't one.
+     */
+    synchronized View takeView(int viewType) {
+        return viewType == ForecastAdapter.VIEW_TYPE_TODAY
+                ? mTodayViews.pollFirst() : mFutureViews.pollFirst();
+    }
+
+    private synchronized boolean hasView(int viewType) {
+        return viewType == ForecastAdapter.VIEW_TYPE_TODAY
+                ? !mTodayViews.isEmpty() : !mFutureViews.isEmpty();
+    }
+
+    private void fill() {
+        if (mAdapter == null) {
+            return;
+        }
+        int[] viewTypes = {ForecastAdapter.VIEW_TYPE_TODAY, ForecastAdapter.VIEW_TYPE_FUTURE_DAY};
+        for (int viewType : viewTypes) {
+            // The adapter takes the view back from takeView()
+            while (hasView(viewType)) {
+                putRecycledView(mAdapter.createViewHolder(mRecyclerView, viewType));
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        LayoutInflater inflater = new BasicInflater(mContext);
+        // Only for the layout params; the list converts them when it adds the row
+        ViewGroup parent = new FrameLayout(mContext);
+        try {
+            // Top to bottom, the order the list lays them out in
+            for (int i = 0; i < mTodayRows && !mCancelled; i++) {
+                add(mTodayViews, inflater.inflate(R.layout.list_item_forecast_today, parent, false));
+            }
+            for (int i = 0; i < mFutureRows && !mCancelled; i++) {
+                add(mFutureViews, inflater.inflate(R.layout.list_item_forecast, parent, false));
+            }
+        } catch (InflateException | IllegalStateException e) {
+            // The list inflates the rest itself
+            Log.w(LOG_TAG, "Couldn't inflate rows in the background", e);
+        }
+    }
+
+    private void add(ArrayDeque<View> views, View view) {
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            views.addLast(view);
+        }
+        mMainHandler.post(mFill);
+    }
+
+    /**
+     * A LayoutInflater without any factories, which finds the framework widgets by name.
+     */
+    private static class BasicInflater extends LayoutInflater {
+        private static final String[] CLASS_PREFIXES = {
+                "android.widget.",
+                "android.webkit.",
+                "android.app."
+        };
+
+        BasicInflater(Context context) {
+            super(context);
+        }
+
+        @Override
+        public LayoutInflater cloneInContext(Context newContext) {
+            return new BasicInflater(newContext);
+        }
+
+        @Override
+        protected View onCreateView(String name, AttributeSet attrs) throws ClassNotFoundException {
+            for (String prefix : CLASS_PREFIXES) {
+                try {
+                    View view = createView(name, prefix, attrs);
+                    if (view != null) {
+                        return view;
+                    }
+                } catch (ClassNotFoundException e) {
+                    // Try the next package
+                }
+            }
+            return super.onCreateView(name, attrs);
+        }
+    }
+}
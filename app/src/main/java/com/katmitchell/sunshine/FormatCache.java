@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.Context;
+import android.support.v4.util.LongSparseArray;
+
+import com.katmitchell.sunshine.data.DateNormalizer;
+
+import java.util.Locale;
+
+/**
+ * Remembers the strings {@link Utility} formats for dates, temperatures and wind, so that the
+ * list, the detail screen, the widgets and the notification each format a given day or value
+ * once rather than on every bind.
+ * <p>
+ * Day strings are keyed by the start of the local day, temperatures and wind by the bits of
+ * their values.  Everything is thrown away when the locale, the units or the current day change,
+ * and on {@link #invalidate()}, which {@link TimeChangeReceiver} calls when the time zone,
+ * locale or date changes underneath us.  A miss falls through to the uncached formatting in
+ * Utility.
+ */
+class FormatCache {
+
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+
+    // Per table; a table that reaches this is cleared rather than grown
+    private static final int MAX_ENTRIES = 256;
+
+    private static FormatCache sInstance;
+
+    private final SunshineApplication mApplication;
+
+    // Day strings
+    private final LongSparseArray<String> mFriendlyDays = new LongSparseArray<>();
+    private final LongSparseArray<String> mLongFriendlyDays = new LongSparseArray<>();
+    private final LongSparseArray<String> mFullFriendlyDays = new LongSparseArray<>();
+    private final LongSparseArray<String> mDayNames = new LongSparseArray<>();
+    private final LongSparseArray<String> mMonthDays = new LongSparseArray<>();
+    // Unit strings
+    private final LongSparseArray<String> mTemperatures = new LongSparseArray<>();
+    private final LongSparseArray<String> mWinds = new LongSparseArray<>();
+
+    private Locale mLocale;
+    private boolean mMetric;
+    // The day everything in the tables was formatted on
+    private long mTodayStart;
+    private long mTomorrowStart;
+
+    private FormatCache(SunshineApplication application) {
+        mApplication = application;
+        mMetric = application.getPreferences().metric;
+    }
+
+    static synchronized FormatCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new FormatCache(SunshineApplication.get(context));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Forgets everything formatted so far.  Call this when the time zone, locale or date may
+     * have changed.
+     */
+    static synchronized void invalidate() {
+        if (sInstance != null) {
+            sInstance.clear();
+        }
+    }
+
+    synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        long day = checkDay(dateInMillis);
+        LongSparseArray<String> table = displayLongToday ? mLongFriendlyDays : mFriendlyDays;
+        String text = table.get(day);
+        if (text == null) {
+            text = Utility.formatFriendlyDayString(mApplication, dateInMillis, displayLongToday);
+            put(table, day, text);
+        }
+        return text;
+    }
+
+    synchronized String getFullFriendlyDayString(long dateInMillis) {
+        long day = checkDay(dateInMillis);
+        String text = mFullFriendlyDays.get(day);
+        if (text == null) {
+            text = Utility.formatFullFriendlyDayString(mApplication, dateInMillis);
+            put(mFullFriendlyDays, day, text);
+        }
+        return text;
+    }
+
+    synchronized String getDayName(long dateInMillis) {
+        long day = checkDay(dateInMillis);
+        String text = mDayNames.get(day);
+        if (text == null) {
+            text = Utility.formatDayName(mApplication, dateInMillis);
+            put(mDayNames, day, text);
+        }
+        return text;
+    }
+
+    synchronized String getFormattedMonthDay(long dateInMillis) {
+        long day = checkDay(dateInMillis);
+        String text = mMonthDays.get(day);
+        if (text == null) {
+            text = Utility.formatMonthDay(dateInMillis);
+            put(mMonthDays, day, text);
+        }
+        return text;
+    }
+
+    synchronized String formatTemperature(double temperature) {
+        checkLocale();
+        checkUnits();
+        long key = Double.doubleToLongBits(temperature);
+        String text = mTemperatures.get(key);
+        if (text == null) {
+            text = Utility.formatTemperature(mApplication, temperature, mMetric);
+            put(mTemperatures, key, text);
+        }
+        return text;
+    }
+
+    synchronized String getFormattedWind(float windSpeed, float degrees) {
+        checkLocale();
+        checkUnits();
+        long key = ((long) Float.floatToIntBits(windSpeed) << 32)
+                | (Float.floatToIntBits(degrees) & 0xffffffffL);
+        String text = mWinds.get(key);
+        if (text == null) {
+            text = Utility.formatWind(mApplication, windSpeed, degrees, mMetric);
+            put(mWinds, key, text);
+        }
+        return text;
+    }
+
+    /**
+     * Checks the locale and the current day, and returns the key for the day containing
+     * dateInMillis.
+     */
+    private long checkDay(long dateInMillis) {
+        checkLocale();
+        long now = System.currentTimeMillis();
+        if (now < mTodayStart || now >= mTomorrowStart) {
+            clearDays();
+            mTodayStart = DateNormalizer.normalizeDate(now);
+            // Half a day past the end of today is in tomorrow whatever the DST transitions
+            mTomorrowStart = DateNormalizer.normalizeDate(mTodayStart + DAY_IN_MILLIS * 3 / 2);
+        }
+        return DateNormalizer.normalizeDate(dateInMillis);
+    }
+
+    private void checkLocale() {
+        // getDefault() only returns a field, unlike TimeZone.getDefault()
+        Locale locale = Locale.getDefault();
+        if (locale != mLocale && !locale.equals(mLocale)) {
+            clear();
+            mLocale = locale;
+        }
+    }
+
+    private void checkUnits() {
+        boolean metric = mApplication.getPreferences().metric;
+        if (metric != mMetric) {
+            mMetric = metric;
+            mTemperatures.clear();
+            mWinds.clear();
+        }
+    }
+
+    private synchronized void clear() {
+        clearDays();
+        mTemperatures.clear();
+        mWinds.clear();
+        mLocale = null;
+    }
+
+    private void clearDays() {
+        mFriendlyDays.clear();
+        mLongFriendlyDays.clear();
+        mFullFriendlyDays.clear();
+        mDayNames.clear();
+        mMonthDays.clear();
+        mTodayStart = 0;
+        mTomorrowStart = 0;
+    }
+
+    private static void put(LongSparseArray<String> table, long key, String text) {
+        if (table.size() >= MAX_ENTRIES) {
+            table.clear();
+        }
+        table.put(key, text);
+    }
+}
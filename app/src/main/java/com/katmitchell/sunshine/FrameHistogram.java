@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import java.util.Arrays;
+
+/**
+ * Counts durations into fixed buckets, without allocating, so it can be fed every frame.
+ */
+class FrameHistogram {
+
+    private final long[] mUpperBoundsNanos;
+    private final String mUnit;
+    private final long mNanosPerUnit;
+    // One more than the bounds, for everything past the last one
+    private final int[] mCounts;
+    private int mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    /**
+     * @param upperBounds the inclusive upper bound of every bucket but the last, in unit
+     * @param unit        the name of the unit, "ms" or "us"
+     */
+    FrameHistogram(long[] upperBounds, String unit) {
+        mUnit = unit;
+        mNanosPerUnit = "ms".equals(unit) ? 1000000 : 1000;
+        mUpperBoundsNanos = new long[upperBounds.length];
+        for (int i = 0; i < upperBounds.length; i++) {
+            mUpperBoundsNanos[i] = upperBounds[i] * mNanosPerUnit;
+        }
+        mCounts = new int[upperBounds.length + 1];
+    }
+
+    void record(long nanos) {
+        int bucket = 0;
+        while (bucket < mUpperBoundsNanos.length && nanos > mUpperBoundsNanos[bucket]) {
+            bucket++;
+        }
+        mCounts[bucket]++;
+        mCount++;
+        mTotalNanos += nanos;
+        if (nanos > mMaxNanos) {
+            mMaxNanos = nanos;
+        }
+    }
+
+    void reset() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    long getAverageNanos() {
+        return mCount == 0 ? 0 : mTotalNanos / mCount;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile, in nanoseconds, or
+     * the largest duration if that is past the last bound.
+     */
+    long getPercentileNanos(int percentile) {
+        int target = (int) Math.ceil(mCount * percentile / 100.0);
+        int seen = 0;
+        for (int i = 0; i < mUpperBoundsNanos.length; i++) {
+            seen += mCounts[i];
+            if (seen >= target && seen > 0) {
+                return mUpperBoundsNanos[i];
+            }
+        }
+        return mMaxNanos;
+    }
+
+    /**
+     * Appends the counts, a bucket to a line, and a summary.
+     */
+    void appendTo(StringBuilder builder) {
+        long previous = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            if (i < mUpperBoundsNanos.length) {
+                long bound = mUpperBoundsNanos[i] / mNanosPerUnit;
+                builder.append(previous).append('-').append(bound);
+                previous = bound;
+            } else {
+                builder.append('>').append(previous);
+            }
+            builder.append(mUnit).append(": ").append(mCounts[i]).append('\n');
+        }
+        builder.append("count ").append(mCount)
+                .append(", avg ").append(getAverageNanos() / mNanosPerUnit).append(mUnit)
+                .append(", 90th <= ").append(getPercentileNanos(90) / mNanosPerUnit).append(mUnit)
+                .append(", max ").append(mMaxNanos / mNanosPerUnit).append(mUnit).append('\n');
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+/**
+ * Records how smoothly the forecast list scrolls: the time between the frames drawn while it
+ * is scrolling, how long each row takes to bind, and how many frames were late.
+ * <p>
+ * Frames are timed from the vsync times Choreographer hands its callbacks, so a frame that
+ * took too long shows up as a gap of more than one refresh before the next.  Nothing is
+ * recorded while the list is still, so the screen is free to stop refreshing.  Everything
+ * here is on the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class FrameMetricsCollector extends RecyclerView.OnScrollListener
+        implements Choreographer.FrameCallback {
+
+    // A frame this much longer than the refresh interval missed at least one refresh
+    private static final double JANK_THRESHOLD = 1.5;
+
+    private static final long[] FRAME_BUCKETS_MS = {8, 12, 17, 20, 25, 33, 50, 67, 100, 200};
+    private static final long[] BIND_BUCKETS_US = {50, 100, 200, 500, 1000, 2000, 4000, 8000};
+
+    private static FrameMetricsCollector sInstance;
+
+    private final long mRefreshNanos;
+    private final FrameHistogram mFrames = new FrameHistogram(FRAME_BUCKETS_MS, "ms");
+    private final FrameHistogram mBinds = new FrameHistogram(BIND_BUCKETS_US, "us");
+    private int mJankFrames;
+    private int mDroppedFrames;
+
+    private RecyclerView mRecyclerView;
+    private ForecastAdapter mAdapter;
+    private boolean mRunning;
+    private long mLastFrameNanos;
+
+    static FrameMetricsCollector getInstance(Context context) {
+        if (sInstance == null) {
+            WindowManager windowManager =
+                    (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+            float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+            sInstance = new FrameMetricsCollector(
+                    (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60)));
+        }
+        return sInstance;
+    }
+
+    FrameMetricsCollector(long refreshNanos) {
+        mRefreshNanos = refreshNanos;
+    }
+
+    /**
+     * Starts recording the scrolling of recyclerView and the binds of adapter, in place of
+     * whatever list was attached before.
+     */
+    void attach(RecyclerView recyclerView, ForecastAdapter adapter) {
+        detach(mRecyclerView);
+        mRecyclerView = recyclerView;
+        mAdapter = adapter;
+        recyclerView.addOnScrollListener(this);
+        adapter.setFrameMetricsCollector(this);
+    }
+
+    /**
+     * Stops recording recyclerView, if it is still the list attached.
+     */
+    void detach(RecyclerView recyclerView) {
+        if (recyclerView == null || recyclerView != mRecyclerView) {
+            return;
+        }
+        stop();
+        mRecyclerView.removeOnScrollListener(this);
+        mRecyclerView = null;
+        mAdapter.setFrameMetricsCollector(null);
+        mAdapter = null;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            stop();
+        } else if (!mRunning) {
+            mRunning = true;
+            mLastFrameNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void stop() {
+        if (mRunning) {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            recordFrame(frameTimeNanos - mLastFrameNanos);
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void recordFrame(long frameNanos) {
+        mFrames.record(frameNanos);
+        if (frameNanos > mRefreshNanos * JANK_THRESHOLD) {
+            mJankFrames++;
+            mDroppedFrames += Math.round((double) frameNanos / mRefreshNanos) - 1;
+        }
+    }
+
+    void recordBind(long bindNanos) {
+        mBinds.record(bindNanos);
+    }
+
+    void reset() {
+        mFrames.reset();
+        mBinds.reset();
+        mJankFrames = 0;
+        mDroppedFrames = 0;
+        // The frame in progress started before the reset
+        mLastFrameNanos = 0;
+    }
+
+    FrameHistogram getFrames() {
+        return mFrames;
+    }
+
+    FrameHistogram getBinds() {
+        return mBinds;
+    }
+
+    int getJankFrames() {
+        return mJankFrames;
+    }
+
+    int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Returns everything recorded since the last reset, for the debug screen and the logs.
+     */
+    String getReport() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Refresh interval ").append(mRefreshNanos / 1000).append("us\n")
+                .append("Janky frames ").append(mJankFrames)
+                .append(" of ").append(mFrames.getCount())
+                .append(", ").append(mDroppedFrames).append(" refreshes missed\n\n")
+                .append("Frame time\n");
+        mFrames.appendTo(builder);
+        builder.append("\nBind time\n");
+        mBinds.appendTo(builder);
+        return builder.toString();
+    }
+}
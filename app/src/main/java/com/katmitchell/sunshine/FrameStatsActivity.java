@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * Shows what {@link FrameMetricsCollector} has recorded of the forecast list's scrolling.
+ * Only reachable from the main menu of debug builds.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class FrameStatsActivity extends AppCompatActivity {
+
+    private FrameMetricsCollector mCollector;
+    private TextView mReportView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_frame_stats);
+        mCollector = FrameMetricsCollector.getInstance(this);
+        mReportView = (TextView) findViewById(R.id.frame_stats_textview);
+        findViewById(R.id.frame_stats_reset).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                mCollector.reset();
+                mReportView.setText(mCollector.getReport());
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mReportView.setText(mCollector.getReport());
+    }
+}
@@ -15,13 +15,16 @@
  */
 package com.katmitchell.sunshine;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.ActivityOptionsCompat;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.util.Pair;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
@@ -37,23 +40,37 @@ import com.katmitchell.sunshine.sync.SunshineSyncAdapter;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
-public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback {
+public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback,
+        ForecastViewPool.Host {
 
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private static final String DETAILFRAGMENT_TAG = "DFTAG";
     private final static int PLAY_SERVICES_RESOLUTION_REQUEST = 9000;
     public static final String SENT_TOKEN_TO_SERVER = "sentTokenToServer";
 
+    // The work left until after the first frame, in StartupInitializer
+    static final String STAGE_SYNC_ACCOUNT = "initializeSyncAdapter";
+    static final String STAGE_PLAY_SERVICES = "checkPlayServices";
+    static final String STAGE_GCM_REGISTRATION = "registerGcm";
+    static final String STAGE_WEAR = "updateWear";
+
     private boolean mTwoPane;
     private String mLocation;
+    private ForecastViewPool mForecastViewPool;
+    private StartupInitializer mStartupInitializer;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        TraceCompat.beginSection("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
+        // Starts inflating the forecast rows while the rest of the screen is inflated
+        mForecastViewPool = new ForecastViewPool(this);
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
 
+        TraceCompat.beginSection("setContentView");
         setContentView(R.layout.activity_main);
+        TraceCompat.endSection();
         Toolbar toolbar = (Toolbar)findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
         getSupportActionBar().setDisplayShowTitleEnabled(false);
@@ -90,32 +107,71 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
-
-        // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
-        // skip the registration and this device will not receive any downstream messages from
-        // our fake server. Because weather alerts are not a core feature of the app, this should
-        // not affect the behavior of the app, from a user perspective.
-        if (checkPlayServices()) {
-            // Because this is the initial creation of the app, we'll want to be certain we have
-            // a token. If we do not, then we will start the IntentService that will register this
-            // application with GCM.
-            SharedPreferences sharedPreferences =
-                    PreferenceManager.getDefaultSharedPreferences(this);
-            boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
-            if (!sentToken) {
-                Intent intent = new Intent(this, RegistrationIntentService.class);
-                startService(intent);
-            }
-        }
+        // Nothing the first frame needs, so it waits until the frame has been drawn
+        mStartupInitializer = createStartupInitializer();
+        mStartupInitializer.startAfterFirstFrame(getWindow().getDecorView());
+        TraceCompat.endSection();
+    }
 
-        Wear.updateWearAsynchronous(this);
+    private StartupInitializer createStartupInitializer() {
+        final Context context = getApplicationContext();
+        return new StartupInitializer()
+                .add(new StartupInitializer.Stage(STAGE_SYNC_ACCOUNT, false) {
+                    @Override
+                    boolean run() {
+                        SunshineSyncAdapter.initializeSyncAdapter(context);
+                        return true;
+                    }
+                })
+                // It may need to show a dialog
+                .add(new StartupInitializer.Stage(STAGE_PLAY_SERVICES, true) {
+                    @Override
+                    boolean run() {
+                        return !isFinishing() && checkPlayServices();
+                    }
+                })
+                // If Google Play Services is up to date, we'll want to register GCM. If it is
+                // not, we'll skip the registration and this device will not receive any
+                // downstream messages from our fake server. Because weather alerts are not a
+                // core feature of the app, this should not affect the behavior of the app, from
+                // a user perspective.
+                .add(new StartupInitializer.Stage(STAGE_GCM_REGISTRATION, false,
+                        STAGE_PLAY_SERVICES) {
+                    @Override
+                    boolean run() {
+                        // Because this is the initial creation of the app, we'll want to be
+                        // certain we have a token. If we do not, then we will start the
+                        // IntentService that will register this application with GCM.
+                        SharedPreferences sharedPreferences =
+                                PreferenceManager.getDefaultSharedPreferences(context);
+                        boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
+                        if (!sentToken) {
+                            Intent intent = new Intent(context, RegistrationIntentService.class);
+                            context.startService(intent);
+                        }
+                        return true;
+                    }
+                })
+                // Only queues the forecast; the watch is reached on its own thread
+                .add(new StartupInitializer.Stage(STAGE_WEAR, false, STAGE_PLAY_SERVICES) {
+                    @Override
+                    boolean run() {
+                        Wear.updateWear(context);
+                        return true;
+                    }
+                });
+    }
+
+    StartupInitializer getStartupInitializer() {
+        return mStartupInitializer;
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_frame_stats).setVisible(
+                BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN);
         return true;
     }
 
@@ -131,10 +187,26 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
         }
+        if (id == R.id.action_frame_stats) {
+            startActivity(new Intent(this, FrameStatsActivity.class));
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onDestroy() {
+        mStartupInitializer.cancel();
+        mForecastViewPool.cancel();
+        super.onDestroy();
+    }
+
+    @Override
+    public ForecastViewPool getForecastViewPool() {
+        return mForecastViewPool;
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.katmitchell.sunshine.common.WeatherConditions;
+
+import java.util.Locale;
+
+/**
+ * The preferences read while binding rows, widgets and notifications, read once and never
+ * changed.  {@link SunshineApplication} replaces its snapshot whenever one of them changes, so
+ * readers get a consistent set of values with a single field read.
+ */
+class PreferenceSnapshot {
+
+    final String locationSetting;
+    final boolean metric;
+    final boolean localGraphics;
+    // The art pack's URL format, or null for the local graphics
+    final String artPack;
+    // See Utility.getDisplayPreferences
+    final String displayPreferences;
+    // The art pack's URLs, indexed by WeatherConditions condition
+    final String[] artUrls = new String[WeatherConditions.CONDITION_COUNT];
+
+    PreferenceSnapshot(Context context, SharedPreferences prefs) {
+        locationSetting = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String unitsMetric = context.getString(R.string.pref_units_metric);
+        String units = prefs.getString(context.getString(R.string.pref_units_key), unitsMetric);
+        metric = units.equals(unitsMetric);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        String artPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        localGraphics = artPack.equals(sunshineArtPack);
+        this.artPack = localGraphics ? null : artPack;
+        for (int condition = 0; condition < artUrls.length; condition++) {
+            artUrls[condition] = String.format(Locale.US, artPack,
+                    WeatherConditions.getArtName(condition));
+        }
+
+        displayPreferences = units + "|" + artPack;
+    }
+
+    /**
+     * Returns true if key is one of the preferences held in a snapshot.
+     */
+    static boolean isSnapshotKey(Context context, String key) {
+        return context.getString(R.string.pref_location_key).equals(key)
+                || context.getString(R.string.pref_units_key).equals(key)
+                || context.getString(R.string.pref_art_pack_key).equals(key);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the startup work that the first frame doesn't need once that frame has been drawn.
+ * <p>
+ * Each {@link Stage} names the stages it depends on, and runs after them, on a background
+ * thread unless it has to be on the main thread.  A stage that doesn't complete skips the
+ * stages that depend on it.  Every stage is a trace section of its own, and its duration is
+ * kept for the startup benchmark.
+ */
+class StartupInitializer {
+
+    public static final String LOG_TAG = StartupInitializer.class.getSimpleName();
+
+    /**
+     * A piece of startup work.
+     */
+    abstract static class Stage {
+        final String name;
+        final String[] dependencies;
+        final boolean onMainThread;
+
+        Stage(String name, boolean onMainThread, String... dependencies) {
+            this.name = name;
+            this.onMainThread = onMainThread;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Does the work of this stage.
+         *
+         * @return false to skip the stages that depend on this one
+         */
+        abstract boolean run();
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Stage> mStages = new ArrayList<>();
+    private final HashMap<String, Long> mStageMillis = new HashMap<>();
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private volatile boolean mCancelled;
+
+    StartupInitializer add(Stage stage) {
+        mStages.add(stage);
+        return this;
+    }
+
+    /**
+     * Starts the stages once decorView has drawn its first frame.
+     */
+    void startAfterFirstFrame(final View decorView) {
+        // Checked now, rather than once the frame has been drawn
+        final ArrayList<Stage> ordered = order(mStages);
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Posted from here, this runs once the frame has been drawn
+                        mMainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                start(ordered);
+                            }
+                        });
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Starts the stages straight away.
+     */
+    void start() {
+        start(order(mStages));
+    }
+
+    /**
+     * Stops before the next stage, for when the activity goes.
+     */
+    void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Waits for every stage to have run or been skipped.
+     *
+     * @return false if that took longer than timeoutMillis
+     */
+    boolean await(long timeoutMillis) throws InterruptedException {
+        return mDone.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns how long the stage took, or -1 if it hasn't run.
+     */
+    long getStageMillis(String name) {
+        synchronized (mStageMillis) {
+            Long millis = mStageMillis.get(name);
+            return millis != null ? millis : -1;
+        }
+    }
+
+    /**
+     * Returns stages with every stage after the ones it depends on.
+     *
+     * @throws IllegalArgumentException if a dependency is missing or circular
+     */
+    static ArrayList<Stage> order(ArrayList<Stage> stages) {
+        HashMap<String, Stage> byName = new HashMap<>();
+        for (Stage stage : stages) {
+            if (byName.put(stage.name, stage) != null) {
+                throw new IllegalArgumentException("Two stages are named " + stage.name);
+            }
+        }
+        ArrayList<Stage> ordered = new ArrayList<>(stages.size());
+        HashSet<String> visiting = new HashSet<>();
+        HashSet<String> visited = new HashSet<>();
+        for (Stage stage : stages) {
+            visit(stage, byName, visiting, visited, ordered);
+        }
+        return ordered;
+    }
+
+    private static void visit(Stage stage, HashMap<String, Stage> byName, HashSet<String> visiting,
+                              HashSet<String> visited, ArrayList<Stage> ordered) {
+        if (visited.contains(stage.name)) {
+            return;
+        }
+        if (!visiting.add(stage.name)) {
+            throw new IllegalArgumentException("Stage " + stage.name + " depends on itself");
+        }
+        for (String name : stage.dependencies) {
+            Stage dependency = byName.get(name);
+            if (dependency == null) {
+                throw new IllegalArgumentException(
+                        "Stage " + stage.name + " depends on missing stage " + name);
+            }
+            visit(dependency, byName, visiting, visited, ordered);
+        }
+        visiting.remove(stage.name);
+        visited.add(stage.name);
+        ordered.add(stage);
+    }
+
+    private void start(final ArrayList<Stage> ordered) {
+        if (mCancelled) {
+            mDone.countDown();
+            return;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Whatever the user does next comes first
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    runStages(ordered);
+                } finally {
+                    mDone.countDown();
+                }
+            }
+        }, LOG_TAG).start();
+    }
+
+    private void runStages(ArrayList<Stage> ordered) {
+        HashSet<String> completed = new HashSet<>();
+        for (Stage stage : ordered) {
+            if (mCancelled) {
+                return;
+            }
+            boolean ready = true;
+            for (String dependency : stage.dependencies) {
+                ready &= completed.contains(dependency);
+            }
+            if (!ready) {
+                Log.d(LOG_TAG, "Skipping " + stage.name);
+                continue;
+            }
+            long startNanos = System.nanoTime();
+            boolean complete = stage.onMainThread ? runOnMainThread(stage) : runTraced(stage);
+            long millis = (System.nanoTime() - startNanos) / 1000000;
+            synchronized (mStageMillis) {
+                mStageMillis.put(stage.name, millis);
+            }
+            Log.d(LOG_TAG, stage.name + " took " + millis + "ms");
+            if (complete) {
+                completed.add(stage.name);
+            }
+        }
+    }
+
+    private static boolean runTraced(Stage stage) {
+        TraceCompat.beginSection(stage.name);
+        try {
+            return stage.run();
+        } catch (RuntimeException e) {
+            // The app is usable without any of this, so carry on with the rest
+            Log.e(LOG_TAG, "Stage " + stage.name + " failed", e);
+            return false;
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private boolean runOnMainThread(final Stage stage) {
+        final boolean[] complete = new boolean[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                complete[0] = !mCancelled && runTraced(stage);
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return complete[0];
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * Holds the current {@link PreferenceSnapshot}, and swaps in a new one whenever a preference
+ * it holds changes.
+ */
+public class SunshineApplication extends Application {
+
+    private volatile PreferenceSnapshot mPreferences;
+
+    // SharedPreferences only keeps a weak reference to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    if (PreferenceSnapshot.isSnapshotKey(SunshineApplication.this, key)) {
+                        mPreferences = new PreferenceSnapshot(SunshineApplication.this, prefs);
+                    }
+                }
+            };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .registerOnSharedPreferenceChangeListener(mPreferenceListener);
+        reloadPreferences();
+    }
+
+    static SunshineApplication get(Context context) {
+        return (SunshineApplication) context.getApplicationContext();
+    }
+
+    /**
+     * Returns the preferences as of the last change.  The listener is told about changes
+     * committed on other threads through the main thread, so until it has run this can still
+     * return the values from before them.
+     */
+    PreferenceSnapshot getPreferences() {
+        PreferenceSnapshot preferences = mPreferences;
+        if (preferences == null) {
+            // Content providers are created before onCreate
+            reloadPreferences();
+            preferences = mPreferences;
+        }
+        return preferences;
+    }
+
+    /**
+     * Reads the preferences again, without waiting for the listener.
+     */
+    public void reloadPreferences() {
+        mPreferences = new PreferenceSnapshot(this,
+                PreferenceManager.getDefaultSharedPreferences(this));
+    }
+}
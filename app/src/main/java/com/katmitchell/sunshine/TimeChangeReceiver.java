@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.katmitchell.sunshine.data.DateNormalizer;
+
+/**
+ * Clears anything that caches day boundaries or formatted dates when the device's time zone,
+ * locale or date changes.
+ */
+public class TimeChangeReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            // Before the formats, which look their days up through it
+            DateNormalizer.invalidate();
+            FormatCache.invalidate();
+        } else if (Intent.ACTION_LOCALE_CHANGED.equals(action)
+                || Intent.ACTION_DATE_CHANGED.equals(action)) {
+            FormatCache.invalidate();
+        }
+    }
+}
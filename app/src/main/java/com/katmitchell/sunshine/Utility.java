@@ -23,32 +23,112 @@ import android.preference.PreferenceManager;
 import android.text.format.Time;
 
 import com.katmitchell.sunshine.R;
+import com.katmitchell.sunshine.common.WeatherConditions;
 import com.katmitchell.sunshine.sync.SunshineSyncAdapter;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
 
 public class Utility {
+
+    // Indexed by WeatherConditions condition
+    private static final int[] ICON_RESOURCES = {
+            R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain, R.drawable.ic_snow,
+            R.drawable.ic_fog, R.drawable.ic_clear, R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+    };
+    private static final int[] ART_RESOURCES = {
+            R.drawable.art_storm, R.drawable.art_light_rain, R.drawable.art_rain, R.drawable.art_snow,
+            R.drawable.art_fog, R.drawable.art_clear, R.drawable.art_light_clouds, R.drawable.art_clouds
+    };
+
+    // Condition strings indexed by weatherId - MIN_CONDITION_STRING_ID, 0 where there is none
+    private static final int MIN_CONDITION_STRING_ID = 200;
+    private static final int MAX_CONDITION_STRING_ID = 962;
+    private static final int[] CONDITION_STRINGS = buildConditionStrings();
+
+    private static int[] buildConditionStrings() {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        int[] strings = new int[MAX_CONDITION_STRING_ID - MIN_CONDITION_STRING_ID + 1];
+        for (int id = 200; id <= 232; id++) {
+            strings[id - MIN_CONDITION_STRING_ID] = R.string.condition_2xx;
+        }
+        for (int id = 300; id <= 321; id++) {
+            strings[id - MIN_CONDITION_STRING_ID] = R.string.condition_3xx;
+        }
+        strings[500 - MIN_CONDITION_STRING_ID] = R.string.condition_500;
+        strings[501 - MIN_CONDITION_STRING_ID] = R.string.condition_501;
+        strings[502 - MIN_CONDITION_STRING_ID] = R.string.condition_502;
+        strings[503 - MIN_CONDITION_STRING_ID] = R.string.condition_503;
+        strings[504 - MIN_CONDITION_STRING_ID] = R.string.condition_504;
+        strings[511 - MIN_CONDITION_STRING_ID] = R.string.condition_511;
+        strings[520 - MIN_CONDITION_STRING_ID] = R.string.condition_520;
+        strings[531 - MIN_CONDITION_STRING_ID] = R.string.condition_531;
+        strings[600 - MIN_CONDITION_STRING_ID] = R.string.condition_600;
+        strings[601 - MIN_CONDITION_STRING_ID] = R.string.condition_601;
+        strings[602 - MIN_CONDITION_STRING_ID] = R.string.condition_602;
+        strings[611 - MIN_CONDITION_STRING_ID] = R.string.condition_611;
+        strings[612 - MIN_CONDITION_STRING_ID] = R.string.condition_612;
+        strings[615 - MIN_CONDITION_STRING_ID] = R.string.condition_615;
+        strings[616 - MIN_CONDITION_STRING_ID] = R.string.condition_616;
+        strings[620 - MIN_CONDITION_STRING_ID] = R.string.condition_620;
+        strings[621 - MIN_CONDITION_STRING_ID] = R.string.condition_621;
+        strings[622 - MIN_CONDITION_STRING_ID] = R.string.condition_622;
+        strings[701 - MIN_CONDITION_STRING_ID] = R.string.condition_701;
+        strings[711 - MIN_CONDITION_STRING_ID] = R.string.condition_711;
+        strings[721 - MIN_CONDITION_STRING_ID] = R.string.condition_721;
+        strings[731 - MIN_CONDITION_STRING_ID] = R.string.condition_731;
+        strings[741 - MIN_CONDITION_STRING_ID] = R.string.condition_741;
+        strings[751 - MIN_CONDITION_STRING_ID] = R.string.condition_751;
+        strings[761 - MIN_CONDITION_STRING_ID] = R.string.condition_761;
+        strings[762 - MIN_CONDITION_STRING_ID] = R.string.condition_762;
+        strings[771 - MIN_CONDITION_STRING_ID] = R.string.condition_771;
+        strings[781 - MIN_CONDITION_STRING_ID] = R.string.condition_781;
+        strings[800 - MIN_CONDITION_STRING_ID] = R.string.condition_800;
+        strings[801 - MIN_CONDITION_STRING_ID] = R.string.condition_801;
+        strings[802 - MIN_CONDITION_STRING_ID] = R.string.condition_802;
+        strings[803 - MIN_CONDITION_STRING_ID] = R.string.condition_803;
+        strings[804 - MIN_CONDITION_STRING_ID] = R.string.condition_804;
+        strings[900 - MIN_CONDITION_STRING_ID] = R.string.condition_900;
+        strings[901 - MIN_CONDITION_STRING_ID] = R.string.condition_901;
+        strings[902 - MIN_CONDITION_STRING_ID] = R.string.condition_902;
+        strings[903 - MIN_CONDITION_STRING_ID] = R.string.condition_903;
+        strings[904 - MIN_CONDITION_STRING_ID] = R.string.condition_904;
+        strings[905 - MIN_CONDITION_STRING_ID] = R.string.condition_905;
+        strings[906 - MIN_CONDITION_STRING_ID] = R.string.condition_906;
+        strings[951 - MIN_CONDITION_STRING_ID] = R.string.condition_951;
+        strings[952 - MIN_CONDITION_STRING_ID] = R.string.condition_952;
+        strings[953 - MIN_CONDITION_STRING_ID] = R.string.condition_953;
+        strings[954 - MIN_CONDITION_STRING_ID] = R.string.condition_954;
+        strings[955 - MIN_CONDITION_STRING_ID] = R.string.condition_955;
+        strings[956 - MIN_CONDITION_STRING_ID] = R.string.condition_956;
+        strings[957 - MIN_CONDITION_STRING_ID] = R.string.condition_957;
+        strings[958 - MIN_CONDITION_STRING_ID] = R.string.condition_958;
+        strings[959 - MIN_CONDITION_STRING_ID] = R.string.condition_959;
+        strings[960 - MIN_CONDITION_STRING_ID] = R.string.condition_960;
+        strings[961 - MIN_CONDITION_STRING_ID] = R.string.condition_961;
+        strings[962 - MIN_CONDITION_STRING_ID] = R.string.condition_962;
+        return strings;
+    }
+
     public static String getPreferredLocation(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_location_key),
-                context.getString(R.string.pref_location_default));
+        return SunshineApplication.get(context).getPreferences().locationSetting;
     }
 
     public static boolean isMetric(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_units_key),
-                context.getString(R.string.pref_units_metric))
-                .equals(context.getString(R.string.pref_units_metric));
+        return SunshineApplication.get(context).getPreferences().metric;
     }
 
     public static String formatTemperature(Context context, double temperature) {
+        return FormatCache.getInstance(context).formatTemperature(temperature);
+    }
+
+    static String formatTemperature(Context context, double temperature, boolean isMetric) {
         // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
         // the values here.
         String suffix = "\u00B0";
-        if (!isMetric(context)) {
+        if (!isMetric) {
             temperature = (temperature * 1.8) + 32;
         }
 
@@ -74,6 +154,10 @@ public class Utility {
      * @return a user-friendly representation of the date.
      */
     public static String getFriendlyDayString(Context context, long dateInMillis, boolean displayLongToday) {
+        return FormatCache.getInstance(context).getFriendlyDayString(dateInMillis, displayLongToday);
+    }
+
+    static String formatFriendlyDayString(Context context, long dateInMillis, boolean displayLongToday) {
         // The day string for forecast uses the following logic:
         // For today: "Today, June 8"
         // For tomorrow:  "Tomorrow"
@@ -94,10 +178,10 @@ public class Utility {
             return String.format(context.getString(
                     formatId,
                     today,
-                    getFormattedMonthDay(context, dateInMillis)));
+                    formatMonthDay(dateInMillis)));
         } else if ( julianDay < currentJulianDay + 7 ) {
             // If the input date is less than a week in the future, just return the day name.
-            return getDayName(context, dateInMillis);
+            return formatDayName(context, dateInMillis);
         } else {
             // Otherwise, use the form "Mon Jun 3"
             SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
@@ -114,13 +198,16 @@ public class Utility {
      * @return a user-friendly representation of the date.
      */
     public static String getFullFriendlyDayString(Context context, long dateInMillis) {
+        return FormatCache.getInstance(context).getFullFriendlyDayString(dateInMillis);
+    }
 
-        String day = getDayName(context, dateInMillis);
+    static String formatFullFriendlyDayString(Context context, long dateInMillis) {
+        String day = formatDayName(context, dateInMillis);
         int formatId = R.string.format_full_friendly_date;
         return String.format(context.getString(
                 formatId,
                 day,
-                getFormattedMonthDay(context, dateInMillis)));
+                formatMonthDay(dateInMillis)));
     }
 
     /**
@@ -132,6 +219,10 @@ public class Utility {
      * @return
      */
     public static String getDayName(Context context, long dateInMillis) {
+        return FormatCache.getInstance(context).getDayName(dateInMillis);
+    }
+
+    static String formatDayName(Context context, long dateInMillis) {
         // If the date is today, return the localized version of "Today" instead of the actual
         // day name.
 
@@ -160,6 +251,10 @@ public class Utility {
      * @return The day in the form of a string formatted "December 6"
      */
     public static String getFormattedMonthDay(Context context, long dateInMillis ) {
+        return FormatCache.getInstance(context).getFormattedMonthDay(dateInMillis);
+    }
+
+    static String formatMonthDay(long dateInMillis) {
         Time time = new Time();
         time.setToNow();
         SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
@@ -169,8 +264,12 @@ public class Utility {
     }
 
     public static String getFormattedWind(Context context, float windSpeed, float degrees) {
+        return FormatCache.getInstance(context).getFormattedWind(windSpeed, degrees);
+    }
+
+    static String formatWind(Context context, float windSpeed, float degrees, boolean isMetric) {
         int windFormat;
-        if (Utility.isMetric(context)) {
+        if (isMetric) {
             windFormat = R.string.format_wind_kmh;
         } else {
             windFormat = R.string.format_wind_mph;
@@ -208,32 +307,7 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getIconResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        }
-        return -1;
+        return WeatherConditions.getResource(ICON_RESOURCES, weatherId);
     }
 
     /**
@@ -243,10 +317,29 @@ public class Utility {
      * @return true if Sunshine is using local graphics, false otherwise.
      */
     public static boolean usingLocalGraphics(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
-        return prefs.getString(context.getString(R.string.pref_art_pack_key),
-                sunshineArtPack).equals(sunshineArtPack);
+        return SunshineApplication.get(context).getPreferences().localGraphics;
+    }
+
+    /**
+     * Returns the URL format of the art pack in use, with a %s for the name of the art.
+     *
+     * @param context Context to use for retrieving the preference
+     * @return the art pack, or null if Sunshine is using local graphics
+     */
+    public static String getArtPack(Context context) {
+        return SunshineApplication.get(context).getPreferences().artPack;
+    }
+
+    /**
+     * Returns a string that changes whenever a preference that only affects how the weather is
+     * displayed changes, i.e. the units or the art pack.  Screens compare it to what they last
+     * rendered with to know when to re-render the data they already hold.
+     *
+     * @param context Context to use for retrieving the preferences
+     * @return a value that is equal for equal display preferences
+     */
+    public static String getDisplayPreferences(Context context) {
+        return SunshineApplication.get(context).getPreferences().displayPreferences;
     }
 
     /**
@@ -258,36 +351,11 @@ public class Utility {
      * @return url for the corresponding weather artwork. null if no relation is found.
      */
     public static String getArtUrlForWeatherCondition(Context context, int weatherId) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
-                context.getString(R.string.pref_art_pack_sunshine));
-
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return String.format(Locale.US, formatArtUrl, "storm");
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return String.format(Locale.US, formatArtUrl, "light_rain");
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return String.format(Locale.US, formatArtUrl, "rain");
-        } else if (weatherId == 511) {
-            return String.format(Locale.US, formatArtUrl, "snow");
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return String.format(Locale.US, formatArtUrl, "rain");
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return String.format(Locale.US, formatArtUrl, "snow");
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return String.format(Locale.US, formatArtUrl, "fog");
-        } else if (weatherId == 761 || weatherId == 781) {
-            return String.format(Locale.US, formatArtUrl, "storm");
-        } else if (weatherId == 800) {
-            return String.format(Locale.US, formatArtUrl, "clear");
-        } else if (weatherId == 801) {
-            return String.format(Locale.US, formatArtUrl, "light_clouds");
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return String.format(Locale.US, formatArtUrl, "clouds");
+        int condition = WeatherConditions.getCondition(weatherId);
+        if (condition == WeatherConditions.NONE) {
+            return null;
         }
-        return null;
+        return SunshineApplication.get(context).getPreferences().artUrls[condition];
     }
 
     /**
@@ -297,32 +365,7 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        }
-        return -1;
+        return WeatherConditions.getResource(ART_RESOURCES, weatherId);
     }
 
     /**
@@ -333,172 +376,11 @@ public class Utility {
      * @return string for the weather condition. null if no relation is found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        int stringId;
-        if (weatherId >= 200 && weatherId <= 232) {
-            stringId = R.string.condition_2xx;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            stringId = R.string.condition_3xx;
-        } else switch (weatherId) {
-            case 500:
-                stringId = R.string.condition_500;
-                break;
-            case 501:
-                stringId = R.string.condition_501;
-                break;
-            case 502:
-                stringId = R.string.condition_502;
-                break;
-            case 503:
-                stringId = R.string.condition_503;
-                break;
-            case 504:
-                stringId = R.string.condition_504;
-                break;
-            case 511:
-                stringId = R.string.condition_511;
-                break;
-            case 520:
-                stringId = R.string.condition_520;
-                break;
-            case 531:
-                stringId = R.string.condition_531;
-                break;
-            case 600:
-                stringId = R.string.condition_600;
-                break;
-            case 601:
-                stringId = R.string.condition_601;
-                break;
-            case 602:
-                stringId = R.string.condition_602;
-                break;
-            case 611:
-                stringId = R.string.condition_611;
-                break;
-            case 612:
-                stringId = R.string.condition_612;
-                break;
-            case 615:
-                stringId = R.string.condition_615;
-                break;
-            case 616:
-                stringId = R.string.condition_616;
-                break;
-            case 620:
-                stringId = R.string.condition_620;
-                break;
-            case 621:
-                stringId = R.string.condition_621;
-                break;
-            case 622:
-                stringId = R.string.condition_622;
-                break;
-            case 701:
-                stringId = R.string.condition_701;
-                break;
-            case 711:
-                stringId = R.string.condition_711;
-                break;
-            case 721:
-                stringId = R.string.condition_721;
-                break;
-            case 731:
-                stringId = R.string.condition_731;
-                break;
-            case 741:
-                stringId = R.string.condition_741;
-                break;
-            case 751:
-                stringId = R.string.condition_751;
-                break;
-            case 761:
-                stringId = R.string.condition_761;
-                break;
-            case 762:
-                stringId = R.string.condition_762;
-                break;
-            case 771:
-                stringId = R.string.condition_771;
-                break;
-            case 781:
-                stringId = R.string.condition_781;
-                break;
-            case 800:
-                stringId = R.string.condition_800;
-                break;
-            case 801:
-                stringId = R.string.condition_801;
-                break;
-            case 802:
-                stringId = R.string.condition_802;
-                break;
-            case 803:
-                stringId = R.string.condition_803;
-                break;
-            case 804:
-                stringId = R.string.condition_804;
-                break;
-            case 900:
-                stringId = R.string.condition_900;
-                break;
-            case 901:
-                stringId = R.string.condition_901;
-                break;
-            case 902:
-                stringId = R.string.condition_902;
-                break;
-            case 903:
-                stringId = R.string.condition_903;
-                break;
-            case 904:
-                stringId = R.string.condition_904;
-                break;
-            case 905:
-                stringId = R.string.condition_905;
-                break;
-            case 906:
-                stringId = R.string.condition_906;
-                break;
-            case 951:
-                stringId = R.string.condition_951;
-                break;
-            case 952:
-                stringId = R.string.condition_952;
-                break;
-            case 953:
-                stringId = R.string.condition_953;
-                break;
-            case 954:
-                stringId = R.string.condition_954;
-                break;
-            case 955:
-                stringId = R.string.condition_955;
-                break;
-            case 956:
-                stringId = R.string.condition_956;
-                break;
-            case 957:
-                stringId = R.string.condition_957;
-                break;
-            case 958:
-                stringId = R.string.condition_958;
-                break;
-            case 959:
-                stringId = R.string.condition_959;
-                break;
-            case 960:
-                stringId = R.string.condition_960;
-                break;
-            case 961:
-                stringId = R.string.condition_961;
-                break;
-            case 962:
-                stringId = R.string.condition_962;
-                break;
-            default:
-                return context.getString(R.string.condition_unknown, weatherId);
+        int index = weatherId - MIN_CONDITION_STRING_ID;
+        int stringId = index >= 0 && index < CONDITION_STRINGS.length ?
+                CONDITION_STRINGS[index] : 0;
+        if (stringId == 0) {
+            return context.getString(R.string.condition_unknown, weatherId);
         }
         return context.getString(stringId);
     }
@@ -511,32 +393,7 @@ public class Utility {
      * @return A string URL to an appropriate image or null if no mapping is found
      */
     public static String getImageUrlForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
-        } else if (weatherId == 511) {
-            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
-        } else if (weatherId == 761 || weatherId == 781) {
-            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
-        } else if (weatherId == 800) {
-            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
-        } else if (weatherId == 801) {
-            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
-        }
-        return null;
+        return WeatherConditions.getImageUrl(weatherId);
     }
 
     /**
@@ -1,27 +1,14 @@
 package com.katmitchell.sunshine;
 
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
-import com.google.android.gms.common.api.ResultCallbacks;
-import com.google.android.gms.common.api.Status;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
-
-import com.katmitchell.sunshine.data.WeatherContract;
-import com.katmitchell.sunshine.sync.SunshineSyncAdapter;
+import com.katmitchell.sunshine.common.ForecastPayload;
+import com.katmitchell.sunshine.data.PackedForecast;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.AsyncTask;
-import android.os.Bundle;
-import android.support.annotation.NonNull;
 import android.util.Log;
 
-import java.util.Date;
+import java.util.Arrays;
+import java.util.TimeZone;
 
 /**
  * Created by Kat on 7/31/16.
@@ -30,75 +17,54 @@ public class Wear {
 
     private static final String TAG = "Wear";
 
+    // As many days as the sync fetches
+    static final int DAYS = 14;
+
+    private static WearForecast sWearForecast;
+
+    /**
+     * Queues the forecast from today on to be sent to the watch.  This queries the database,
+     * so don't call it on the main thread, but it doesn't wait for the watch.
+     */
     public static void updateWear(Context context) {
-        GoogleApiClient googleApiClient = new GoogleApiClient.Builder(context)
-                .addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
-                    @Override
-                    public void onConnected(Bundle connectionHint) {
-                        Log.d(TAG, "onConnected: " + connectionHint);
-                    }
-
-                    @Override
-                    public void onConnectionSuspended(int cause) {
-                        Log.d(TAG, "onConnectionSuspended: " + cause);
-                    }
-                })
-                .addOnConnectionFailedListener(new GoogleApiClient.OnConnectionFailedListener() {
-                    @Override
-                    public void onConnectionFailed(ConnectionResult result) {
-                        Log.d(TAG, "onConnectionFailed: " + result);
-                    }
-                })
-                // Request access only to the Wearable API
-                .addApi(Wearable.API)
-                .build();
-
-        ConnectionResult connectionResult = googleApiClient.blockingConnect();
-
-        if (connectionResult.isSuccess()) {
-
-            // we'll query our contentProvider, as always
-            String locationQuery = Utility.getPreferredLocation(context);
-            Uri weatherUri = WeatherContract.WeatherEntry
-                    .buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-            Cursor cursor = context.getContentResolver()
-                    .query(weatherUri, SunshineSyncAdapter.NOTIFY_WEATHER_PROJECTION, null, null,
-                            null);
-
-            if (cursor.moveToFirst()) {
-                int weatherId = cursor.getInt(SunshineSyncAdapter.INDEX_WEATHER_ID);
-                double high = cursor.getDouble(SunshineSyncAdapter.INDEX_MAX_TEMP);
-                double low = cursor.getDouble(SunshineSyncAdapter.INDEX_MIN_TEMP);
-                Log.d(TAG, "updateWear with data: " + weatherId + ", " + high + ", " + low);
-
-                PutDataMapRequest putDataMapReq = PutDataMapRequest.create("/forecast");
-                putDataMapReq.getDataMap().putInt("weather_id", weatherId);
-                putDataMapReq.getDataMap().putDouble("high", high);
-                putDataMapReq.getDataMap().putDouble("low", low);
-                putDataMapReq.getDataMap().putLong("timestamp", System.currentTimeMillis());
-                PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
-                putDataMapReq.setUrgent();
-                PendingResult<DataApi.DataItemResult> pendingResult =
-                        Wearable.DataApi.putDataItem(googleApiClient, putDataReq);
-                pendingResult.setResultCallback(new ResultCallbacks<DataApi.DataItemResult>() {
-                    @Override
-                    public void onSuccess(@NonNull DataApi.DataItemResult dataItemResult) {
-                        Log.d(TAG, "onSuccess");
-                    }
-
-                    @Override
-                    public void onFailure(@NonNull Status status) {
-                        Log.d(TAG, "onFailure: " + status.getStatusMessage());
-                    }
-                });
-                Log.d(TAG, "updateWear: sent update");
-
-            }
-            cursor.close();
+        // we'll query our contentProvider, as always
+        String locationQuery = Utility.getPreferredLocation(context);
+        PackedForecast packed = PackedForecast.load(context, locationQuery,
+                System.currentTimeMillis(), DAYS);
+        ForecastPayload.Forecast forecast = toForecast(packed);
+        Log.d(TAG, "updateWear with " + forecast.getDayCount() + " days");
+        if (forecast.getDayCount() > 0) {
+            getWearForecast(context).send(forecast);
+        }
+    }
 
+    private static synchronized WearForecast getWearForecast(Context context) {
+        if (sWearForecast == null) {
+            sWearForecast = new WearForecast(WearChannel.getInstance(context));
         }
+        return sWearForecast;
+    }
+
+    /**
+     * Returns the days of packed that follow on from its first, which are all of them unless
+     * the database is missing one.
+     */
+    static ForecastPayload.Forecast toForecast(PackedForecast packed) {
+        TimeZone timeZone = TimeZone.getDefault();
+        int firstDay = packed.count == 0 ? 0 : getLocalDay(timeZone, packed.dates[0]);
+        int days = 0;
+        while (days < packed.count
+                && getLocalDay(timeZone, packed.dates[days]) == firstDay + days) {
+            days++;
+        }
+        return new ForecastPayload.Forecast(firstDay,
+                Arrays.copyOf(packed.weatherIds, days),
+                Arrays.copyOf(packed.maxTemps, days),
+                Arrays.copyOf(packed.minTemps, days));
+    }
 
-        googleApiClient.disconnect();
+    private static int getLocalDay(TimeZone timeZone, long date) {
+        return ForecastPayload.getLocalDay(date, timeZone.getOffset(date) / 1000);
     }
 
     public static void updateWearAsynchronous(Context context) {
@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends data items to the watch over one connection that lasts as long as the process.
+ * <p>
+ * Callers queue an item for a path and return straight away.  The connection is made the
+ * first time there is something to send, and made again after it fails, waiting twice as
+ * long after each failure in a row.  Only the latest item for each path is kept, and at most
+ * {@link #MAX_PENDING} paths are queued, so a watch that is away for a while gets the
+ * newest data when it comes back rather than everything it missed.  All the sending happens
+ * on a thread of the channel's own.
+ * <p>
+ * If the Wearable API isn't there at all, say because there's no Android Wear app, retrying
+ * won't help, so the queue is dropped and the channel waits for the next send to try again.
+ */
+class WearChannel {
+
+    public static final String LOG_TAG = WearChannel.class.getSimpleName();
+
+    /**
+     * The Data API, as far as the channel needs it.  The calls block, and are only made on
+     * the channel's thread.
+     */
+    interface Transport {
+        /**
+         * @return {@link #CONNECTED}, {@link #CONNECT_FAILED} if it is worth trying again, or
+         * {@link #CONNECT_UNAVAILABLE} if it isn't
+         */
+        int connect(long timeoutMillis);
+
+        boolean isConnected();
+
+        /**
+         * @return true if the item was put within timeoutMillis
+         */
+        boolean putDataItem(String path, DataMap data, long timeoutMillis);
+
+        void disconnect();
+    }
+
+    static final int CONNECTED = 0;
+    static final int CONNECT_FAILED = 1;
+    static final int CONNECT_UNAVAILABLE = 2;
+
+    static final int MAX_PENDING = 4;
+    static final long INITIAL_BACKOFF_MILLIS = 1000;
+    static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+    private static final long CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    private static final long SEND_TIMEOUT_MILLIS = 10 * 1000;
+
+    private static WearChannel sInstance;
+
+    private final Transport mTransport;
+    private final long mInitialBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final Handler mHandler;
+
+    private final Object mLock = new Object();
+    // Path to the latest item for it and when that was queued, oldest path first
+    private final LinkedHashMap<String, Pending> mPending = new LinkedHashMap<>();
+    private int mConnects;
+    private int mConnectFailures;
+    private long mTotalConnectNanos;
+    private int mSent;
+    private int mSendFailures;
+    private long mTotalSendNanos;
+    private long mMaxSendNanos;
+    private int mCoalesced;
+    private int mDropped;
+
+    // Only touched on the channel's thread
+    private long mBackoffMillis;
+    private boolean mWaitingToRetry;
+
+    private static class Pending {
+        final DataMap data;
+        final long queuedNanos;
+
+        Pending(DataMap data, long queuedNanos) {
+            this.data = data;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            if (!mWaitingToRetry) {
+                drain();
+            }
+        }
+    };
+
+    private final Runnable mRetry = new Runnable() {
+        @Override
+        public void run() {
+            mWaitingToRetry = false;
+            drain();
+        }
+    };
+
+    static synchronized WearChannel getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearChannel(new GmsTransport(context.getApplicationContext()),
+                    INITIAL_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS);
+        }
+        return sInstance;
+    }
+
+    WearChannel(Transport transport, long initialBackoffMillis, long maxBackoffMillis) {
+        mTransport = transport;
+        mInitialBackoffMillis = initialBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mBackoffMillis = initialBackoffMillis;
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Queues data to be put at path, in place of anything still queued for it.
+     */
+    void send(String path, DataMap data) {
+        synchronized (mLock) {
+            if (mPending.remove(path) != null) {
+                mCoalesced++;
+            } else if (mPending.size() == MAX_PENDING) {
+                Iterator<String> oldest = mPending.keySet().iterator();
+                Log.d(LOG_TAG, "Dropping the update for " + oldest.next());
+                oldest.remove();
+                mDropped++;
+            }
+            mPending.put(path, new Pending(data, System.nanoTime()));
+        }
+        mHandler.removeCallbacks(mDrain);
+        mHandler.post(mDrain);
+    }
+
+    private void drain() {
+        if (!mTransport.isConnected()) {
+            int result = connect();
+            if (result == CONNECT_UNAVAILABLE) {
+                dropAll();
+                return;
+            } else if (result != CONNECTED) {
+                retryLater();
+                return;
+            }
+        }
+        while (true) {
+            String path;
+            Pending pending;
+            synchronized (mLock) {
+                Iterator<Map.Entry<String, Pending>> iterator = mPending.entrySet().iterator();
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                Map.Entry<String, Pending> next = iterator.next();
+                iterator.remove();
+                path = next.getKey();
+                pending = next.getValue();
+            }
+
+            boolean sent = mTransport.putDataItem(path, pending.data, SEND_TIMEOUT_MILLIS);
+            synchronized (mLock) {
+                if (sent) {
+                    long nanos = System.nanoTime() - pending.queuedNanos;
+                    mSent++;
+                    mTotalSendNanos += nanos;
+                    mMaxSendNanos = Math.max(mMaxSendNanos, nanos);
+                } else {
+                    mSendFailures++;
+                    // Unless something newer has been queued for it meanwhile
+                    if (!mPending.containsKey(path)) {
+                        if (mPending.size() < MAX_PENDING) {
+                            mPending.put(path, pending);
+                        } else {
+                            Log.d(LOG_TAG, "Dropping the failed update for " + path);
+                            mDropped++;
+                        }
+                    }
+                }
+            }
+            if (!sent) {
+                // Most likely the connection has gone bad, so start again with a new one
+                mTransport.disconnect();
+                retryLater();
+                return;
+            }
+            mBackoffMillis = mInitialBackoffMillis;
+        }
+        Log.d(LOG_TAG, getReport());
+    }
+
+    private int connect() {
+        long startNanos = System.nanoTime();
+        int result = mTransport.connect(CONNECT_TIMEOUT_MILLIS);
+        synchronized (mLock) {
+            if (result == CONNECTED) {
+                mConnects++;
+                mTotalConnectNanos += System.nanoTime() - startNanos;
+            } else {
+                mConnectFailures++;
+            }
+        }
+        return result;
+    }
+
+    private void dropAll() {
+        synchronized (mLock) {
+            Log.d(LOG_TAG, "Wearable API unavailable, dropping " + mPending.size() + " updates");
+            mDropped += mPending.size();
+            mPending.clear();
+        }
+        // The next send starts afresh
+        mBackoffMillis = mInitialBackoffMillis;
+    }
+
+    private void retryLater() {
+        Log.d(LOG_TAG, "Trying again in " + mBackoffMillis + "ms");
+        mWaitingToRetry = true;
+        mHandler.postDelayed(mRetry, mBackoffMillis);
+        mBackoffMillis = Math.min(mBackoffMillis * 2, mMaxBackoffMillis);
+    }
+
+    int getConnects() {
+        synchronized (mLock) {
+            return mConnects;
+        }
+    }
+
+    int getConnectFailures() {
+        synchronized (mLock) {
+            return mConnectFailures;
+        }
+    }
+
+    long getAverageConnectMillis() {
+        synchronized (mLock) {
+            return mConnects == 0 ? 0 : mTotalConnectNanos / mConnects / 1000000;
+        }
+    }
+
+    int getSent() {
+        synchronized (mLock) {
+            return mSent;
+        }
+    }
+
+    int getSendFailures() {
+        synchronized (mLock) {
+            return mSendFailures;
+        }
+    }
+
+    /**
+     * Returns the average time from an item being queued to it being put.
+     */
+    long getAverageSendMillis() {
+        synchronized (mLock) {
+            return mSent == 0 ? 0 : mTotalSendNanos / mSent / 1000000;
+        }
+    }
+
+    int getCoalesced() {
+        synchronized (mLock) {
+            return mCoalesced;
+        }
+    }
+
+    int getDropped() {
+        synchronized (mLock) {
+            return mDropped;
+        }
+    }
+
+    int getPendingCount() {
+        synchronized (mLock) {
+            return mPending.size();
+        }
+    }
+
+    String getReport() {
+        synchronized (mLock) {
+            return "Connected " + mConnects + " times in " + getAverageConnectMillis() +
+                    "ms on average, failed " + mConnectFailures + "; sent " + mSent +
+                    " in " + getAverageSendMillis() + "ms on average, at most " +
+                    mMaxSendNanos / 1000000 + "ms, failed " + mSendFailures + "; coalesced " +
+                    mCoalesced + ", dropped " + mDropped;
+        }
+    }
+
+    private static class GmsTransport implements Transport {
+        private final GoogleApiClient mClient;
+
+        GmsTransport(Context context) {
+            mClient = new GoogleApiClient.Builder(context)
+                    // Request access only to the Wearable API
+                    .addApi(Wearable.API)
+                    .build();
+        }
+
+        @Override
+        public int connect(long timeoutMillis) {
+            ConnectionResult result =
+                    mClient.blockingConnect(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (result.isSuccess()) {
+                return CONNECTED;
+            }
+            Log.d(LOG_TAG, "Couldn't connect: " + result);
+            switch (result.getErrorCode()) {
+                // Nothing that trying again later will fix
+                case ConnectionResult.API_UNAVAILABLE:
+                case ConnectionResult.SERVICE_MISSING:
+                case ConnectionResult.SERVICE_DISABLED:
+                case ConnectionResult.SERVICE_INVALID:
+                case ConnectionResult.SERVICE_VERSION_UPDATE_REQUIRED:
+                case ConnectionResult.DEVELOPER_ERROR:
+                    return CONNECT_UNAVAILABLE;
+                default:
+                    return CONNECT_FAILED;
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mClient.isConnected();
+        }
+
+        @Override
+        public boolean putDataItem(String path, DataMap data, long timeoutMillis) {
+            PutDataMapRequest putDataMapReq = PutDataMapRequest.create(path);
+            putDataMapReq.getDataMap().putAll(data);
+            PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
+            putDataReq.setUrgent();
+            DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mClient, putDataReq)
+                    .await(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (!result.getStatus().isSuccess()) {
+                Log.d(LOG_TAG, "Couldn't put " + path + ": " +
+                        result.getStatus().getStatusMessage());
+            }
+            return result.getStatus().isSuccess();
+        }
+
+        @Override
+        public void disconnect() {
+            mClient.disconnect();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.util.Log;
+
+import com.google.android.gms.wearable.DataMap;
+import com.katmitchell.sunshine.common.ForecastPayload;
+
+/**
+ * Sends the forecast to the watch as {@link ForecastPayload}s.
+ * <p>
+ * The full forecast is put at {@link #BASE_PATH} only now and then, and each update puts just
+ * a delta against it at {@link #PATH}.  Deltas are always against that base rather than the
+ * delta before, since the Data API only promises the watch the latest item at each path, and
+ * a watch that missed a delta can still decode the next one.  A new base is sent when a delta
+ * would be more than half the size of one.
+ */
+class WearForecast {
+
+    public static final String LOG_TAG = WearForecast.class.getSimpleName();
+
+    static final String BASE_PATH = "/forecast/base";
+    static final String PATH = "/forecast";
+    static final String KEY_PAYLOAD = "payload";
+
+    private final WearChannel mChannel;
+    private ForecastPayload.Forecast mBase;
+    private int mBaseSequence;
+
+    WearForecast(WearChannel channel) {
+        mChannel = channel;
+        // A base from before the app restarted may still be on the watch, so don't reuse its
+        // sequence.
+        mBaseSequence = (int) (System.currentTimeMillis() / 1000) & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Queues forecast to be sent to the watch, along with a new base if it needs one.
+     *
+     * @return the size of the payloads queued, in bytes
+     */
+    synchronized int send(ForecastPayload.Forecast forecast) {
+        int size = 0;
+        byte[] delta = mBase == null ? null
+                : ForecastPayload.encodeDelta(forecast, mBase, mBaseSequence);
+        if (delta == null
+                || 2 * delta.length > ForecastPayload.encode(forecast, mBaseSequence).length) {
+            mBase = forecast;
+            mBaseSequence = (mBaseSequence + 1) & Integer.MAX_VALUE;
+            byte[] base = ForecastPayload.encode(forecast, mBaseSequence);
+            mChannel.send(BASE_PATH, toDataMap(base));
+            size += base.length;
+            delta = ForecastPayload.encodeDelta(forecast, mBase, mBaseSequence);
+        }
+        mChannel.send(PATH, toDataMap(delta));
+        size += delta.length;
+        Log.d(LOG_TAG, "Sending " + forecast.getDayCount() + " days in " + size + " bytes");
+        return size;
+    }
+
+    private static DataMap toDataMap(byte[] payload) {
+        DataMap dataMap = new DataMap();
+        dataMap.putByteArray(KEY_PAYLOAD, payload);
+        return dataMap;
+    }
+}
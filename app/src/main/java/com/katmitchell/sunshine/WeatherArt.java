@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads remote art pack images for the list and the detail screen.
+ * <p>
+ * Glide keys its memory and result caches on the size and transformation of a request, so the
+ * screens and the prefetching all build their requests here, at one of two fixed sizes.  A
+ * prefetched image is then exactly the one a bind asks for, rather than a near miss that
+ * decodes again.
+ */
+public class WeatherArt {
+
+    public static final String LOG_TAG = WeatherArt.class.getSimpleName();
+
+    // For each size; a slow server shouldn't hold the art executor up for long
+    private static final long PREFETCH_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Returns the size of the art in the list's future day rows.
+     */
+    public static int getSmallSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    /**
+     * Returns the size of the art in the list's today row and on the detail screen.
+     */
+    public static int getLargeSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+    }
+
+    /**
+     * Starts a request for url at size, which must be {@link #getSmallSize} or
+     * {@link #getLargeSize}.  The source is cached too, so the second size doesn't download it
+     * again.
+     */
+    public static DrawableRequestBuilder<String> load(RequestManager glide, String url, int size) {
+        return glide.load(url)
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .fitCenter()
+                .override(size, size);
+    }
+
+    /**
+     * Warms Glide's disk and memory caches with the art for weatherIds at both sizes, so that
+     * screens bound after a sync find it ready.  Does nothing if the local graphics are in use.
+     * This blocks until every image has loaded or timed out, so don't call it on the main thread,
+     * or on the sync thread.
+     * <p>
+     * The images are fetched together, one size at a time, so a slow server holds the caller up
+     * for at most a timeout for each size rather than for each image.  The sizes go one after
+     * the other so that the second is decoded from the download the first left on disk.
+     *
+     * @return the number of images that loaded
+     */
+    public static int prefetch(Context context, int[] weatherIds) {
+        if (Utility.usingLocalGraphics(context)) {
+            return 0;
+        }
+        HashSet<String> urls = new HashSet<>();
+        for (int weatherId : weatherIds) {
+            String url = Utility.getArtUrlForWeatherCondition(context, weatherId);
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+
+        RequestManager glide = Glide.with(context.getApplicationContext());
+        int[] sizes = {getSmallSize(context), getLargeSize(context)};
+        int loaded = 0;
+        ArrayList<FutureTarget<GlideDrawable>> futures = new ArrayList<>(urls.size());
+        for (int size : sizes) {
+            for (String url : urls) {
+                futures.add(load(glide, url, size).into(size, size));
+            }
+            long deadline = System.nanoTime()
+                    + TimeUnit.SECONDS.toNanos(PREFETCH_TIMEOUT_SECONDS);
+            try {
+                for (FutureTarget<GlideDrawable> future : futures) {
+                    try {
+                        future.get(Math.max(0, deadline - System.nanoTime()),
+                                TimeUnit.NANOSECONDS);
+                        loaded++;
+                    } catch (ExecutionException | TimeoutException e) {
+                        Log.w(LOG_TAG, "Couldn't prefetch art at " + size + "px", e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return loaded;
+            } finally {
+                // Clearing moves the images from the requests into the memory cache
+                for (FutureTarget<GlideDrawable> future : futures) {
+                    Glide.clear(future);
+                }
+                futures.clear();
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import java.util.TimeZone;
+
+/**
+ * Finds the start of the local day for a point in time using plain epoch-day arithmetic.
+ * <p>
+ * This gives the same answer as {@link android.text.format.Time#setJulianDay(int)} for the
+ * Julian day containing the time, without allocating a Time on every call.  Each computed day
+ * is remembered as a [start, end) range in a small direct-mapped table, so the common case of
+ * normalizing many times from the same few days is a check of the default time zone and two
+ * comparisons.
+ */
+public class DateNormalizer {
+
+    static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+
+    // Must be a power of two
+    private static final int CACHE_SIZE = 32;
+
+    private static final long[] sDayStart = new long[CACHE_SIZE];
+    private static final long[] sDayEnd = new long[CACHE_SIZE];
+    private static TimeZone sTimeZone;
+
+    /**
+     * Returns the first instant, in milliseconds, of the local day that contains millis.
+     */
+    public static synchronized long normalizeDate(long millis) {
+        // Checked on hits too, so a cached day never outlives a change of time zone that
+        // nothing told us about
+        TimeZone timeZone = TimeZone.getDefault();
+        if (sTimeZone == null || !sTimeZone.getID().equals(timeZone.getID())) {
+            sTimeZone = timeZone;
+            clearCache();
+        }
+
+        int slot = (int) (floorDiv(millis, DAY_IN_MILLIS) & (CACHE_SIZE - 1));
+        if (millis >= sDayStart[slot] && millis < sDayEnd[slot]) {
+            return sDayStart[slot];
+        }
+
+        long localDay = floorDiv(millis + sTimeZone.getOffset(millis), DAY_IN_MILLIS);
+        long start = startOfLocalDay(sTimeZone, localDay);
+        long end = startOfLocalDay(sTimeZone, localDay + 1);
+        sDayStart[slot] = start;
+        sDayEnd[slot] = end;
+        return start;
+    }
+
+    /**
+     * Forgets every cached day.  A change of default time zone is noticed without this, but a
+     * change to the rules of the same zone is not.
+     */
+    public static synchronized void invalidate() {
+        sTimeZone = null;
+        clearCache();
+    }
+
+    private static void clearCache() {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            sDayStart[i] = 0;
+            sDayEnd[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the first instant of the given local day (days since the epoch, in local time).
+     */
+    static long startOfLocalDay(TimeZone timeZone, long localDay) {
+        long localMidnight = localDay * DAY_IN_MILLIS;
+
+        // First guess using the offset in effect a little before midnight
+        int guessOffset = timeZone.getOffset(localMidnight - timeZone.getRawOffset());
+        long guess = localMidnight - guessOffset;
+        int offset = timeZone.getOffset(guess);
+        if (offset == guessOffset) {
+            return guess;
+        }
+
+        // The offset changes close to midnight, so try again with the other one
+        long retry = localMidnight - offset;
+        if (timeZone.getOffset(retry) == offset) {
+            return retry;
+        }
+
+        // Midnight doesn't exist on this day because the clocks jump over it, so the day
+        // starts at the transition, which is the later of the two candidates.
+        return Math.max(guess, retry);
+    }
+
+    static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+/**
+ * The columns of a day that only the detail screen shows, and that {@link Forecast} leaves out.
+ * Loaded on demand by {@link ForecastRepository#getDayExtras}.
+ */
+public class DayExtras {
+
+    public final String locationSetting;
+    public final long date;
+    public final float humidity;
+    public final float pressure;
+    public final float windSpeed;
+    public final float degrees;
+
+    DayExtras(String locationSetting, long date, float humidity, float pressure, float windSpeed,
+              float degrees) {
+        this.locationSetting = locationSetting;
+        this.date = date;
+        this.humidity = humidity;
+        this.pressure = pressure;
+        this.windSpeed = windSpeed;
+        this.degrees = degrees;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the forecast for one location from one day on, as published by
+ * {@link ForecastRepository}.  It holds raw values only; formatting them for the current units
+ * and art pack is up to whoever displays it, so a display preference change never needs a
+ * new snapshot.
+ */
+public class Forecast {
+
+    public final String locationSetting;
+    // Normalized start of the first day asked for
+    public final long startDate;
+    // NaN until the location has been synced
+    public final double coordLat;
+    public final double coordLong;
+    public final PackedForecast days;
+
+    public Forecast(String locationSetting, long startDate, double coordLat, double coordLong,
+                    PackedForecast days) {
+        this.locationSetting = locationSetting;
+        this.startDate = startDate;
+        this.coordLat = coordLat;
+        this.coordLong = coordLong;
+        this.days = days;
+    }
+
+    public boolean hasCoordinates() {
+        return !Double.isNaN(coordLat) && !Double.isNaN(coordLong);
+    }
+
+    /**
+     * Returns the position of the day starting at date, or -1 if it isn't in the forecast.
+     */
+    public int indexOfDate(long date) {
+        long[] dates = days.dates;
+        for (int i = 0; i < days.count; i++) {
+            if (dates[i] == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if other would display exactly the same as this snapshot.
+     */
+    boolean sameContentAs(Forecast other) {
+        return other != null
+                && locationSetting.equals(other.locationSetting)
+                && startDate == other.startDate
+                && Double.compare(coordLat, other.coordLat) == 0
+                && Double.compare(coordLong, other.coordLong) == 0
+                && Arrays.equals(days.ids, other.days.ids)
+                && Arrays.equals(days.dates, other.days.dates)
+                && Arrays.equals(days.weatherIds, other.days.weatherIds)
+                && Arrays.equals(days.shortDescs, other.days.shortDescs)
+                && Arrays.equals(days.maxTemps, other.days.maxTemps)
+                && Arrays.equals(days.minTemps, other.days.minTemps);
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps an in-memory {@link Forecast} for every location someone is watching, and pushes a new
+ * snapshot to the observers of that location whenever the weather data really changes.
+ * <p>
+ * Change notifications from the provider are coalesced: a burst of them while a load is
+ * queued costs nothing, and a burst while one is running costs one more load.  Snapshots that
+ * come back identical to the last one aren't published at all.  Observers are registered,
+ * called and removed on the main thread.
+ */
+public class ForecastRepository {
+
+    /**
+     * Receives forecast snapshots on the main thread.
+     */
+    public interface Observer {
+        void onForecastChanged(Forecast forecast);
+    }
+
+    /**
+     * Receives the extra columns of a day on the main thread, once they have loaded.
+     */
+    public interface DayExtrasCallback {
+        void onDayExtrasLoaded(DayExtras extras);
+    }
+
+    // How long to wait after a change notification for more of them before loading
+    private static final long DEFAULT_COALESCE_MILLIS = 100;
+
+    private static final String[] LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+    private static final String[] EXTRAS_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+    // these indices must match the projection
+    private static final int EXTRAS_DATE = 0;
+    private static final int EXTRAS_HUMIDITY = 1;
+    private static final int EXTRAS_PRESSURE = 2;
+    private static final int EXTRAS_WIND_SPEED = 3;
+    private static final int EXTRAS_DEGREES = 4;
+
+    private static final String LOCATION_SETTING_SELECTION =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    private static ForecastRepository sInstance;
+
+    private final Context mContext;
+    private final long mCoalesceMillis;
+    private final Handler mMainHandler;
+    private final HandlerThread mWorkerThread;
+    private final Handler mWorkerHandler;
+
+    // Past this many snapshots in all, those of locations nobody observes are let go.  Two
+    // still keeps the last location in memory for going back to it.
+    static final int MAX_FORECASTS = 2;
+
+    // Main thread only.  Oldest publish first.
+    private final LinkedHashMap<String, Forecast> mForecasts = new LinkedHashMap<>();
+    private final ArrayList<String> mObservedLocations = new ArrayList<>();
+    private final ArrayList<Observer> mObservers = new ArrayList<>();
+    private boolean mWatchingProvider;
+    // The extras loaded for one location, the days of it being loaded, and the callbacks
+    // waiting on them.  All keyed by date, and all dropped when the location changes.
+    private String mExtrasLocation;
+    private final LongSparseArray<DayExtras> mExtras = new LongSparseArray<>();
+    private final LongSparseArray<Boolean> mExtrasLoading = new LongSparseArray<>();
+    private final LongSparseArray<ArrayList<DayExtrasCallback>> mExtrasCallbacks =
+            new LongSparseArray<>();
+    // Bumped whenever the data changes, so loads from before then aren't kept
+    private int mExtrasGeneration;
+
+    // Locations with a load queued but not yet started.  Guarded by itself.
+    private final HashSet<String> mPendingLoads = new HashSet<>();
+
+    private final ContentObserver mContentObserver;
+
+    public static synchronized ForecastRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastRepository(context.getApplicationContext(),
+                    DEFAULT_COALESCE_MILLIS);
+        }
+        return sInstance;
+    }
+
+    ForecastRepository(Context context, long coalesceMillis) {
+        mContext = context;
+        mCoalesceMillis = coalesceMillis;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mWorkerThread = new HandlerThread("ForecastRepository",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        mContentObserver = new ContentObserver(mMainHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mExtras.clear();
+                // Loads already underway would be thrown away, so don't wait on them
+                mExtrasLoading.clear();
+                mExtrasGeneration++;
+                for (int i = 0; i < mObservedLocations.size(); i++) {
+                    scheduleLoad(mObservedLocations.get(i), mCoalesceMillis);
+                }
+            }
+        };
+    }
+
+    /**
+     * Starts sending snapshots for locationSetting to observer.  If a current snapshot is already
+     * in memory it is delivered before this returns, otherwise one is loaded in the background.
+     */
+    public void observe(String locationSetting, Observer observer) {
+        removeObserver(observer);
+        mObservers.add(observer);
+        mObservedLocations.add(locationSetting);
+        if (!mWatchingProvider) {
+            mContext.getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mContentObserver);
+            mWatchingProvider = true;
+        }
+
+        Forecast forecast = mForecasts.get(locationSetting);
+        if (forecast != null) {
+            observer.onForecastChanged(forecast);
+        }
+        // A snapshot taken on an earlier day starts with a day that is now in the past
+        if (forecast == null ||
+                forecast.startDate != WeatherContract.normalizeDate(System.currentTimeMillis())) {
+            scheduleLoad(locationSetting, 0);
+        }
+    }
+
+    public void removeObserver(Observer observer) {
+        int index = mObservers.indexOf(observer);
+        if (index < 0) {
+            return;
+        }
+        mObservers.remove(index);
+        mObservedLocations.remove(index);
+        if (mObservers.isEmpty() && mWatchingProvider) {
+            mContext.getContentResolver().unregisterContentObserver(mContentObserver);
+            mWatchingProvider = false;
+        }
+    }
+
+    /**
+     * Returns the last snapshot published for locationSetting, or null if there isn't one.
+     * Main thread only.
+     */
+    public Forecast getForecast(String locationSetting) {
+        return mForecasts.get(locationSetting);
+    }
+
+    /**
+     * Returns the extras of day index of forecast if they are in memory, otherwise null.  If
+     * they aren't, or those of the days either side aren't, they are loaded in the background
+     * in a single query, and if it was this day's that were missing, handed to callback.
+     * Days already being loaded aren't asked for again.  Main thread only.
+     */
+    public DayExtras getDayExtras(Forecast forecast, int index, DayExtrasCallback callback) {
+        if (!forecast.locationSetting.equals(mExtrasLocation)) {
+            // Callbacks for the old location have their own forecast to ask again with
+            mExtras.clear();
+            mExtrasLoading.clear();
+            mExtrasCallbacks.clear();
+            // Nothing asks for the old location's snapshot any more unless it is observed
+            if (mExtrasLocation != null && !mObservedLocations.contains(mExtrasLocation)) {
+                synchronized (mForecasts) {
+                    mForecasts.remove(mExtrasLocation);
+                }
+            }
+            mExtrasLocation = forecast.locationSetting;
+        }
+        long date = forecast.days.dates[index];
+        DayExtras extras = mExtras.get(date);
+
+        // The neighbours too, so that moving to the next or previous day finds them ready
+        int first = Math.max(index - 1, 0);
+        int last = Math.min(index + 1, forecast.days.count - 1);
+        boolean loaded = true;
+        for (int i = first; i <= last; i++) {
+            long day = forecast.days.dates[i];
+            loaded &= mExtras.get(day) != null || mExtrasLoading.get(day) != null;
+        }
+        if (extras == null) {
+            ArrayList<DayExtrasCallback> callbacks = mExtrasCallbacks.get(date);
+            if (callbacks != null) {
+                // Already on its way
+                callbacks.add(callback);
+                return null;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            mExtrasCallbacks.put(date, callbacks);
+        }
+        if (!loaded) {
+            for (int i = first; i <= last; i++) {
+                mExtrasLoading.put(forecast.days.dates[i], Boolean.TRUE);
+            }
+            loadExtras(forecast.locationSetting, forecast.days.dates[first],
+                    forecast.days.dates[last]);
+        }
+        return extras;
+    }
+
+    private void loadExtras(final String locationSetting, final long fromDate,
+                            final long toDate) {
+        final int generation = mExtrasGeneration;
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<DayExtras> days = new ArrayList<>(3);
+                Cursor cursor = WeatherQuery.forLocationWithStartDate(locationSetting, fromDate,
+                        EXTRAS_COLUMNS, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC")
+                        .query(mContext);
+                if (cursor != null) {
+                    while (cursor.moveToNext() && cursor.getLong(EXTRAS_DATE) <= toDate) {
+                        days.add(new DayExtras(locationSetting, cursor.getLong(EXTRAS_DATE),
+                                cursor.getFloat(EXTRAS_HUMIDITY),
+                                cursor.getFloat(EXTRAS_PRESSURE),
+                                cursor.getFloat(EXTRAS_WIND_SPEED),
+                                cursor.getFloat(EXTRAS_DEGREES)));
+                    }
+                    cursor.close();
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        publishExtras(locationSetting, generation, fromDate, toDate, days);
+                    }
+                });
+            }
+        });
+    }
+
+    private void publishExtras(String locationSetting, int generation, long fromDate,
+                               long toDate, ArrayList<DayExtras> days) {
+        if (!locationSetting.equals(mExtrasLocation)) {
+            // Nobody is waiting on these any more, and the days would be mistaken for the
+            // new location's
+            return;
+        }
+        boolean current = generation == mExtrasGeneration;
+        if (current) {
+            for (int i = mExtrasLoading.size() - 1; i >= 0; i--) {
+                long date = mExtrasLoading.keyAt(i);
+                if (date >= fromDate && date <= toDate) {
+                    mExtrasLoading.removeAt(i);
+                }
+            }
+        }
+        for (DayExtras extras : days) {
+            if (current) {
+                mExtras.put(extras.date, extras);
+            }
+            // Even if the data has changed since, it is the best there is for now, and the
+            // change will bring a new forecast to ask again with
+            ArrayList<DayExtrasCallback> callbacks = mExtrasCallbacks.get(extras.date);
+            if (callbacks != null) {
+                mExtrasCallbacks.remove(extras.date);
+                for (DayExtrasCallback callback : callbacks) {
+                    callback.onDayExtrasLoaded(extras);
+                }
+            }
+        }
+        // Days that are no longer there won't be coming, so let a later request try again
+        for (int i = mExtrasCallbacks.size() - 1; i >= 0; i--) {
+            long date = mExtrasCallbacks.keyAt(i);
+            if (date >= fromDate && date <= toDate) {
+                mExtrasCallbacks.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker thread.  Only for instances that aren't the shared one.
+     */
+    void quit() {
+        mWorkerThread.quit();
+    }
+
+    private void scheduleLoad(final String locationSetting, long delayMillis) {
+        synchronized (mPendingLoads) {
+            if (!mPendingLoads.add(locationSetting)) {
+                return;
+            }
+        }
+        mWorkerHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mPendingLoads) {
+                    mPendingLoads.remove(locationSetting);
+                }
+                final Forecast forecast = load(locationSetting);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        publish(forecast);
+                    }
+                });
+            }
+        }, delayMillis);
+    }
+
+    private Forecast load(String locationSetting) {
+        long startDate = WeatherContract.normalizeDate(System.currentTimeMillis());
+        PackedForecast days = PackedForecast.load(mContext, locationSetting, startDate,
+                PackedForecast.MAX_DAYS);
+
+        // The coordinates only change when the location is first synced, so only look them up
+        // until we have them
+        double coordLat = Double.NaN;
+        double coordLong = Double.NaN;
+        Forecast previous = getPublishedForecast(locationSetting);
+        if (previous != null && previous.hasCoordinates()) {
+            coordLat = previous.coordLat;
+            coordLong = previous.coordLong;
+        } else {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherContract.LocationEntry.CONTENT_URI, LOCATION_COLUMNS,
+                    LOCATION_SETTING_SELECTION, new String[]{locationSetting}, null);
+            if (cursor != null) {
+                if (cursor.moveToFirst()) {
+                    coordLat = cursor.getDouble(0);
+                    coordLong = cursor.getDouble(1);
+                }
+                cursor.close();
+            }
+        }
+        return new Forecast(locationSetting, startDate, coordLat, coordLong, days);
+    }
+
+    private Forecast getPublishedForecast(String locationSetting) {
+        synchronized (mForecasts) {
+            return mForecasts.get(locationSetting);
+        }
+    }
+
+    private void publish(Forecast forecast) {
+        Forecast previous = mForecasts.get(forecast.locationSetting);
+        if (forecast.sameContentAs(previous)) {
+            return;
+        }
+        synchronized (mForecasts) {
+            // Removed first so it moves to the end of the publish order
+            mForecasts.remove(forecast.locationSetting);
+            mForecasts.put(forecast.locationSetting, forecast);
+            trimForecasts();
+        }
+        // Copy first, since an observer may well remove itself or observe another location
+        ArrayList<Observer> observers = new ArrayList<>();
+        for (int i = 0; i < mObservers.size(); i++) {
+            if (mObservedLocations.get(i).equals(forecast.locationSetting)) {
+                observers.add(mObservers.get(i));
+            }
+        }
+        for (Observer observer : observers) {
+            if (mObservers.contains(observer)) {
+                observer.onForecastChanged(forecast);
+            }
+        }
+    }
+
+    // Lets the oldest snapshots of locations nobody observes go, until there are no more than
+    // MAX_FORECASTS.  Called holding the lock on mForecasts.
+    private void trimForecasts() {
+        Iterator<String> locations = mForecasts.keySet().iterator();
+        while (mForecasts.size() > MAX_FORECASTS && locations.hasNext()) {
+            if (!mObservedLocations.contains(locations.next())) {
+                locations.remove();
+            }
+        }
+    }
+}
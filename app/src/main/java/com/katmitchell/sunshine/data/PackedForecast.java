@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+
+/**
+ * An N-day forecast for one location, stored as parallel primitive arrays.
+ * <p>
+ * {@link WeatherProvider#call} hands this out as a single {@link Bundle}, so a consumer that
+ * just wants a handful of rows gets them in one transaction instead of opening, stepping and
+ * closing a cursor.  Use {@link #load} rather than calling the provider directly.
+ */
+public class PackedForecast {
+
+    public static final String METHOD_GET_FORECAST_PACKED = "getForecastPacked";
+    public static final String EXTRA_START_DATE = "start_date";
+    public static final String EXTRA_MAX_DAYS = "max_days";
+
+    // The provider never packs more days than this, whatever the caller asks for
+    public static final int MAX_DAYS = 28;
+
+    private static final String KEY_IDS = "ids";
+    private static final String KEY_DATES = "dates";
+    private static final String KEY_WEATHER_IDS = "weather_ids";
+    private static final String KEY_SHORT_DESCS = "short_descs";
+    private static final String KEY_MAX_TEMPS = "max_temps";
+    private static final String KEY_MIN_TEMPS = "min_temps";
+
+    static final String[] PACKED_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_MIN_TEMP = 5;
+
+    public final int count;
+    public final long[] ids;
+    public final long[] dates;
+    public final int[] weatherIds;
+    public final String[] shortDescs;
+    public final double[] maxTemps;
+    public final double[] minTemps;
+
+    private PackedForecast(long[] ids, long[] dates, int[] weatherIds, String[] shortDescs,
+                           double[] maxTemps, double[] minTemps) {
+        this.count = ids.length;
+        this.ids = ids;
+        this.dates = dates;
+        this.weatherIds = weatherIds;
+        this.shortDescs = shortDescs;
+        this.maxTemps = maxTemps;
+        this.minTemps = minTemps;
+    }
+
+    /**
+     * Returns up to maxDays days of forecast for the location, starting at startDate.  Never
+     * returns null; an unknown location gives an empty forecast.
+     */
+    public static PackedForecast load(Context context, String locationSetting, long startDate,
+                                      int maxDays) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Bundle result = callProvider(context, locationSetting, startDate, maxDays);
+            if (result != null) {
+                return fromBundle(result);
+            }
+        }
+        // ContentResolver.call isn't available, so fall back to a cursor
+        Cursor cursor = WeatherQuery.forLocationWithStartDate(locationSetting, startDate,
+                PACKED_COLUMNS, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC").query(context);
+        try {
+            return fromCursor(cursor, Math.min(maxDays, MAX_DAYS));
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Bundle callProvider(Context context, String locationSetting, long startDate,
+                                       int maxDays) {
+        Bundle extras = new Bundle();
+        extras.putLong(EXTRA_START_DATE, startDate);
+        extras.putInt(EXTRA_MAX_DAYS, maxDays);
+        return context.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                METHOD_GET_FORECAST_PACKED, locationSetting, extras);
+    }
+
+    static PackedForecast fromCursor(Cursor cursor, int maxDays) {
+        int count = cursor == null ? 0 : Math.min(cursor.getCount(), maxDays);
+        long[] ids = new long[count];
+        long[] dates = new long[count];
+        int[] weatherIds = new int[count];
+        String[] shortDescs = new String[count];
+        double[] maxTemps = new double[count];
+        double[] minTemps = new double[count];
+        for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+            ids[i] = cursor.getLong(INDEX_ID);
+            dates[i] = cursor.getLong(INDEX_DATE);
+            weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+            shortDescs[i] = cursor.getString(INDEX_SHORT_DESC);
+            maxTemps[i] = cursor.getDouble(INDEX_MAX_TEMP);
+            minTemps[i] = cursor.getDouble(INDEX_MIN_TEMP);
+        }
+        return new PackedForecast(ids, dates, weatherIds, shortDescs, maxTemps, minTemps);
+    }
+
+    static PackedForecast fromBundle(Bundle bundle) {
+        long[] ids = bundle.getLongArray(KEY_IDS);
+        if (ids == null) {
+            return fromCursor(null, 0);
+        }
+        return new PackedForecast(ids,
+                bundle.getLongArray(KEY_DATES),
+                bundle.getIntArray(KEY_WEATHER_IDS),
+                bundle.getStringArray(KEY_SHORT_DESCS),
+                bundle.getDoubleArray(KEY_MAX_TEMPS),
+                bundle.getDoubleArray(KEY_MIN_TEMPS));
+    }
+
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLongArray(KEY_IDS, ids);
+        bundle.putLongArray(KEY_DATES, dates);
+        bundle.putIntArray(KEY_WEATHER_IDS, weatherIds);
+        bundle.putStringArray(KEY_SHORT_DESCS, shortDescs);
+        bundle.putDoubleArray(KEY_MAX_TEMPS, maxTemps);
+        bundle.putDoubleArray(KEY_MIN_TEMPS, minTemps);
+        return bundle;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Applies {@link RetentionPolicy} limits to the weather database and hands freed pages back to
+ * the file system with an incremental vacuum.  Every run does a bounded amount of work, so it is
+ * cheap enough to call at the end of each sync.
+ */
+public class RetentionEnforcer {
+
+    private static final String LOG_TAG = RetentionEnforcer.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // When the size budget is exceeded, rows are dropped oldest first in batches of this size,
+    // and a single run never drops more than MAX_SIZE_BATCHES of them.
+    static final int SIZE_BATCH_ROWS = 32;
+    static final int MAX_SIZE_BATCHES = 8;
+
+    // Upper bound on the number of free pages returned to the file system per run.
+    static final int VACUUM_PAGES_PER_RUN = 64;
+
+    // Number of database size samples remembered for getSizeHistory()
+    static final int SIZE_HISTORY_LENGTH = 32;
+
+    private static final long[] sSizeHistoryTimes = new long[SIZE_HISTORY_LENGTH];
+    private static final long[] sSizeHistoryBytes = new long[SIZE_HISTORY_LENGTH];
+    private static int sSizeHistoryCount = 0;
+
+    /**
+     * Result of a single enforcement run.
+     */
+    public static class Stats {
+        public int rowsDeletedByAge;
+        public int rowsDeletedByCount;
+        public int rowsDeletedBySize;
+        public int locationsDeleted;
+        public long bytesBefore;
+        public long bytesAfter;
+
+        public int totalRowsDeleted() {
+            return rowsDeletedByAge + rowsDeletedByCount + rowsDeletedBySize + locationsDeleted;
+        }
+
+        @Override
+        public String toString() {
+            return "age=" + rowsDeletedByAge + " count=" + rowsDeletedByCount +
+                    " size=" + rowsDeletedBySize + " locations=" + locationsDeleted +
+                    " bytes=" + bytesBefore + "->" + bytesAfter;
+        }
+    }
+
+    /**
+     * Deletes the rows that fall outside of the policy.  This is meant to be called inside the
+     * transaction that wrote the new rows, so a sync either lands trimmed or not at all.
+     *
+     * @param currentLocationId row id of the location being synced, whose rows the size budget
+     *                          only drops once every other location's are gone, or -1 for none
+     */
+    public static Stats prune(SQLiteDatabase db, RetentionPolicy policy, long currentLocationId,
+                              long nowMillis) {
+        Stats stats = new Stats();
+        stats.bytesBefore = getBytesInUse(db);
+
+        if (policy.maxAgeDays != RetentionPolicy.UNLIMITED && policy.dateColumn != null) {
+            long cutoff = WeatherContract.normalizeDate(nowMillis)
+                    - policy.maxAgeDays * DAY_IN_MILLIS;
+            stats.rowsDeletedByAge = db.delete(policy.table, policy.dateColumn + " < ?",
+                    new String[]{Long.toString(cutoff)});
+        }
+
+        if (policy.maxRowsPerLocation != RetentionPolicy.UNLIMITED &&
+                policy.locationColumn != null && policy.dateColumn != null) {
+            stats.rowsDeletedByCount = pruneRowsPerLocation(db, policy);
+        }
+
+        if (policy.maxTotalBytes != RetentionPolicy.UNLIMITED && policy.dateColumn != null) {
+            // Other locations' rows go first, so a long history of old ones can't push out the
+            // forecast the user is looking at
+            String order = policy.dateColumn + " ASC";
+            if (currentLocationId != -1 && policy.locationColumn != null) {
+                order = policy.locationColumn + " = " + currentLocationId + ", " + order;
+            }
+            for (int batch = 0; batch < MAX_SIZE_BATCHES
+                    && getBytesInUse(db) > policy.maxTotalBytes; batch++) {
+                int deleted = db.delete(policy.table, "_id IN (SELECT _id FROM " + policy.table +
+                        " ORDER BY " + order + " LIMIT " + SIZE_BATCH_ROWS + ")",
+                        null);
+                if (deleted == 0) break;
+                stats.rowsDeletedBySize += deleted;
+            }
+        }
+
+        // Locations that no longer have any weather are only taking up room
+        stats.locationsDeleted = db.delete(WeatherContract.LocationEntry.TABLE_NAME,
+                WeatherContract.LocationEntry._ID + " NOT IN (SELECT " +
+                        WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " FROM " +
+                        WeatherContract.WeatherEntry.TABLE_NAME + ")",
+                null);
+        return stats;
+    }
+
+    private static int pruneRowsPerLocation(SQLiteDatabase db, RetentionPolicy policy) {
+        int deleted = 0;
+        Cursor locations = db.rawQuery("SELECT DISTINCT " + policy.locationColumn +
+                " FROM " + policy.table, null);
+        try {
+            while (locations.moveToNext()) {
+                String locationId = locations.getString(0);
+                // Everything older than the Nth newest row for this location goes.  If there
+                // are fewer than N rows the subquery is NULL and nothing matches.
+                deleted += db.delete(policy.table,
+                        policy.locationColumn + " = ? AND " + policy.dateColumn +
+                                " < (SELECT " + policy.dateColumn + " FROM " + policy.table +
+                                " WHERE " + policy.locationColumn + " = ? ORDER BY " +
+                                policy.dateColumn + " DESC LIMIT 1 OFFSET " +
+                                (policy.maxRowsPerLocation - 1) + ")",
+                        new String[]{locationId, locationId});
+            }
+        } finally {
+            locations.close();
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns up to {@link #VACUUM_PAGES_PER_RUN} free pages to the file system and records the
+     * resulting file size.  Must be called outside of a transaction.
+     */
+    public static void vacuum(SQLiteDatabase db, Stats stats, long nowMillis) {
+        if (WeatherDbHelper.getAutoVacuumMode(db) != WeatherDbHelper.AUTO_VACUUM_INCREMENTAL) {
+            // Switching a database over takes one full VACUUM.  It waits for a sync, which is
+            // off the main thread, rather than running wherever the database is first opened.
+            db.execSQL("PRAGMA auto_vacuum = " + WeatherDbHelper.AUTO_VACUUM_INCREMENTAL);
+            db.execSQL("VACUUM");
+        }
+        Cursor c = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_RUN + ")", null);
+        try {
+            // Stepping through the whole result is what actually runs the vacuum
+            c.getCount();
+        } finally {
+            c.close();
+        }
+        stats.bytesAfter = getBytesInUse(db);
+        recordSize(nowMillis, getFileBytes(db));
+        Log.d(LOG_TAG, "Retention: " + stats);
+    }
+
+    /**
+     * Bytes taken by pages that hold data, i.e. the file size minus the free list.
+     */
+    static long getBytesInUse(SQLiteDatabase db) {
+        return (longForPragma(db, "page_count") - longForPragma(db, "freelist_count"))
+                * longForPragma(db, "page_size");
+    }
+
+    static long getFileBytes(SQLiteDatabase db) {
+        return longForPragma(db, "page_count") * longForPragma(db, "page_size");
+    }
+
+    private static long longForPragma(SQLiteDatabase db, String pragma) {
+        Cursor c = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            return c.moveToFirst() ? c.getLong(0) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static synchronized void recordSize(long timeMillis, long bytes) {
+        int index = sSizeHistoryCount % SIZE_HISTORY_LENGTH;
+        sSizeHistoryTimes[index] = timeMillis;
+        sSizeHistoryBytes[index] = bytes;
+        sSizeHistoryCount++;
+    }
+
+    /**
+     * Returns the most recent database file sizes, oldest first, as {time, bytes} pairs.
+     */
+    public static synchronized long[][] getSizeHistory() {
+        int length = Math.min(sSizeHistoryCount, SIZE_HISTORY_LENGTH);
+        int start = sSizeHistoryCount - length;
+        long[][] history = new long[length][2];
+        for (int i = 0; i < length; i++) {
+            int index = (start + i) % SIZE_HISTORY_LENGTH;
+            history[i][0] = sSizeHistoryTimes[index];
+            history[i][1] = sSizeHistoryBytes[index];
+        }
+        return history;
+    }
+}
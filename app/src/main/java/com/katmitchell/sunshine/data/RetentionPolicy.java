@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+/**
+ * Describes how much history a single table in the weather database is allowed to keep.
+ * Any limit that a table doesn't need is set to {@link #UNLIMITED}.
+ */
+public class RetentionPolicy {
+
+    public static final int UNLIMITED = -1;
+
+    // The policy used for the weather table.  The forecast is only useful from today onwards,
+    // and a sync never returns more than two weeks, so anything beyond that is dead weight.
+    public static final RetentionPolicy WEATHER = new RetentionPolicy(
+            WeatherContract.WeatherEntry.TABLE_NAME,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            0,
+            28,
+            512 * 1024);
+
+    public final String table;
+    public final String dateColumn;
+    public final String locationColumn;
+
+    // Number of days before today that rows are kept for.  0 keeps today onwards.
+    public final int maxAgeDays;
+    // Newest rows kept for each distinct value of locationColumn.
+    public final int maxRowsPerLocation;
+    // Upper bound for the bytes in use by the whole database file.
+    public final long maxTotalBytes;
+
+    public RetentionPolicy(String table, String dateColumn, String locationColumn,
+                           int maxAgeDays, int maxRowsPerLocation, long maxTotalBytes) {
+        this.table = table;
+        this.dateColumn = dateColumn;
+        this.locationColumn = locationColumn;
+        this.maxAgeDays = maxAgeDays;
+        this.maxRowsPerLocation = maxRowsPerLocation;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+}
@@ -19,7 +19,6 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
 
 /**
  * Defines table and column names for the weather database.
@@ -44,14 +43,16 @@ public class WeatherContract {
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
 
+    // Query parameter set by the sync adapter on its bulk inserts.  The provider enforces the
+    // retention policy as part of those inserts only, so other writers never lose rows behind
+    // their back.
+    public static final String PARAM_CALLER_IS_SYNC_ADAPTER = "caller_is_sync_adapter";
+
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of the Julian day.  This runs for every row written and
+    // every Uri built, so it uses DateNormalizer rather than allocating a Time each call.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return DateNormalizer.normalizeDate(startDate);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -126,6 +127,15 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        public static Uri buildWeatherSyncUri() {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_CALLER_IS_SYNC_ADAPTER, "true").build();
+        }
+
+        public static boolean isCallerSyncAdapter(Uri uri) {
+            return Boolean.parseBoolean(uri.getQueryParameter(PARAM_CALLER_IS_SYNC_ADAPTER));
+        }
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
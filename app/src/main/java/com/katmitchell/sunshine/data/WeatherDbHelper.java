@@ -16,6 +16,7 @@
 package com.katmitchell.sunshine.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
@@ -32,12 +33,20 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Value of PRAGMA auto_vacuum for INCREMENTAL mode
+    static final int AUTO_VACUUM_INCREMENTAL = 2;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        // Incremental auto_vacuum lets RetentionEnforcer hand free pages back to the file system
+        // a few at a time.  The open helper has already created its metadata table, so this
+        // only takes hold with RetentionEnforcer's first VACUUM, which is cheap on a new file.
+        sqLiteDatabase.execSQL("PRAGMA auto_vacuum = " + AUTO_VACUUM_INCREMENTAL);
+
         // Create a table to hold locations.  A location consists of the string supplied in the
         // location setting, the city name, and the latitude and longitude
         final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
@@ -83,6 +92,15 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
     }
 
+    static int getAutoVacuumMode(SQLiteDatabase sqLiteDatabase) {
+        Cursor c = sqLiteDatabase.rawQuery("PRAGMA auto_vacuum", null);
+        try {
+            return c.moveToFirst() ? c.getInt(0) : 0;
+        } finally {
+            c.close();
+        }
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
         // This database is only a cache for online data, so its upgrade policy is
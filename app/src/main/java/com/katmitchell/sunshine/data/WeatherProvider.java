@@ -23,6 +23,9 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -30,6 +33,9 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // Every read that reaches the database, so tests can see how many a scenario costs
+    private static final AtomicInteger sQueryCount = new AtomicInteger();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
@@ -71,7 +77,11 @@ public class WeatherProvider extends ContentProvider {
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        return getWeatherByLocationSetting(locationSetting, startDate, projection, sortOrder);
+    }
 
+    private Cursor getWeatherByLocationSetting(
+            String locationSetting, long startDate, String[] projection, String sortOrder) {
         String[] selectionArgs;
         String selection;
 
@@ -97,7 +107,11 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        return getWeatherByLocationSettingAndDate(locationSetting, date, projection, sortOrder);
+    }
 
+    private Cursor getWeatherByLocationSettingAndDate(
+            String locationSetting, long date, String[] projection, String sortOrder) {
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
@@ -172,6 +186,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        sQueryCount.incrementAndGet();
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
@@ -221,6 +236,65 @@ public class WeatherProvider extends ContentProvider {
         return retCursor;
     }
 
+    /**
+     * Typed counterpart of {@link #query(Uri, String[], String, String[], String)} for callers in
+     * our own process.  See {@link WeatherQuery}.
+     */
+    public Cursor query(WeatherQuery query) {
+        sQueryCount.incrementAndGet();
+        Cursor retCursor;
+        if (query.date != 0) {
+            retCursor = getWeatherByLocationSettingAndDate(
+                    query.locationSetting, query.date, query.projection, query.sortOrder);
+        } else {
+            retCursor = getWeatherByLocationSetting(
+                    query.locationSetting, query.startDate, query.projection, query.sortOrder);
+        }
+        // Every write notifies at or below the weather Uri, so watching it covers this query
+        retCursor.setNotificationUri(getContext().getContentResolver(),
+                WeatherContract.WeatherEntry.CONTENT_URI);
+        return retCursor;
+    }
+
+    /**
+     * Handles {@link PackedForecast#METHOD_GET_FORECAST_PACKED}: arg is the location setting,
+     * and the extras hold the start date and the number of days wanted.  See
+     * {@link PackedForecast#load}.
+     */
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!PackedForecast.METHOD_GET_FORECAST_PACKED.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        sQueryCount.incrementAndGet();
+        if (arg == null || extras == null) {
+            throw new IllegalArgumentException("Missing location setting or extras");
+        }
+        long startDate = WeatherContract.normalizeDate(
+                extras.getLong(PackedForecast.EXTRA_START_DATE));
+        int maxDays = Math.min(extras.getInt(PackedForecast.EXTRA_MAX_DAYS),
+                PackedForecast.MAX_DAYS);
+        if (maxDays <= 0) {
+            return PackedForecast.fromCursor(null, 0).toBundle();
+        }
+
+        Cursor cursor = sWeatherByLocationSettingQueryBuilder.query(
+                mOpenHelper.getReadableDatabase(),
+                PackedForecast.PACKED_COLUMNS,
+                sLocationSettingWithStartDateSelection,
+                new String[]{arg, Long.toString(startDate)},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                Integer.toString(maxDays));
+        try {
+            return PackedForecast.fromCursor(cursor, maxDays).toBundle();
+        } finally {
+            cursor.close();
+        }
+    }
+
     /*
         Student: Add the ability to insert Locations to the implementation of this function.
      */
@@ -321,6 +395,9 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                boolean enforceRetention = WeatherContract.WeatherEntry.isCallerSyncAdapter(uri);
+                long now = System.currentTimeMillis();
+                RetentionEnforcer.Stats retentionStats = null;
                 db.beginTransaction();
                 int returnCount = 0;
                 try {
@@ -331,17 +408,32 @@ public class WeatherProvider extends ContentProvider {
                             returnCount++;
                         }
                     }
+                    if (enforceRetention) {
+                        // The sync adapter only writes the location being synced
+                        Long locationId = values.length > 0 ? values[0].getAsLong(
+                                WeatherContract.WeatherEntry.COLUMN_LOC_KEY) : null;
+                        retentionStats = RetentionEnforcer.prune(db, RetentionPolicy.WEATHER,
+                                locationId != null ? locationId : -1, now);
+                    }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                if (retentionStats != null) {
+                    RetentionEnforcer.vacuum(db, retentionStats, now);
+                }
+                getContext().getContentResolver().notifyChange(
+                        WeatherContract.WeatherEntry.CONTENT_URI, null);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    static int getQueryCount() {
+        return sQueryCount.get();
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.data;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * A weather query for callers running in our own process.
+ * <p>
+ * It asks the same questions as the weather/* Uris, but hands the location and dates straight
+ * to {@link WeatherProvider} instead of encoding them into a Uri only for the provider to match
+ * and parse it again.  External callers, and anything that needs a Uri such as a CursorLoader,
+ * keep using {@link WeatherContract.WeatherEntry}.
+ */
+public class WeatherQuery {
+
+    // Dates are normalized when the query is built, the same way the Uri builders do it
+    final String locationSetting;
+    final long date;
+    final long startDate;
+    final String[] projection;
+    final String sortOrder;
+
+    private static volatile WeatherProvider sLocalProvider;
+
+    private WeatherQuery(String locationSetting, long date, long startDate,
+                         String[] projection, String sortOrder) {
+        this.locationSetting = locationSetting;
+        this.date = date;
+        this.startDate = startDate;
+        this.projection = projection;
+        this.sortOrder = sortOrder;
+    }
+
+    /**
+     * Same rows as {@link WeatherContract.WeatherEntry#buildWeatherLocation(String)}
+     */
+    public static WeatherQuery forLocation(String locationSetting, String[] projection,
+                                           String sortOrder) {
+        return new WeatherQuery(locationSetting, 0, 0, projection, sortOrder);
+    }
+
+    /**
+     * Same rows as {@link WeatherContract.WeatherEntry#buildWeatherLocationWithStartDate}
+     */
+    public static WeatherQuery forLocationWithStartDate(String locationSetting, long startDate,
+                                                        String[] projection, String sortOrder) {
+        return new WeatherQuery(locationSetting, 0, WeatherContract.normalizeDate(startDate),
+                projection, sortOrder);
+    }
+
+    /**
+     * Same rows as {@link WeatherContract.WeatherEntry#buildWeatherLocationWithDate}
+     */
+    public static WeatherQuery forLocationAndDate(String locationSetting, long date,
+                                                  String[] projection) {
+        return new WeatherQuery(locationSetting, WeatherContract.normalizeDate(date), 0,
+                projection, null);
+    }
+
+    /**
+     * Returns the Uri asking for the same rows, for when one is needed after all.
+     */
+    public Uri toUri() {
+        if (date != 0) {
+            return WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationSetting, date);
+        } else if (startDate != 0) {
+            return WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                    locationSetting, startDate);
+        }
+        return WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting);
+    }
+
+    /**
+     * Runs the query against our provider, falling back to the ContentResolver if the provider
+     * lives in another process.
+     */
+    public Cursor query(Context context) {
+        WeatherProvider provider = getLocalProvider(context);
+        if (provider != null) {
+            return provider.query(this);
+        }
+        return context.getContentResolver().query(toUri(), projection, null, null, sortOrder);
+    }
+
+    private static WeatherProvider getLocalProvider(Context context) {
+        WeatherProvider provider = sLocalProvider;
+        if (provider == null) {
+            ContentProviderClient client = context.getContentResolver()
+                    .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+            if (client != null) {
+                // A provider in our own process lives as long as the process does, so it is
+                // safe to hold on to it after releasing the client.
+                ContentProvider localProvider = client.getLocalContentProvider();
+                if (localProvider instanceof WeatherProvider) {
+                    provider = (WeatherProvider) localProvider;
+                    sLocalProvider = provider;
+                }
+                client.release();
+            }
+        }
+        return provider;
+    }
+}
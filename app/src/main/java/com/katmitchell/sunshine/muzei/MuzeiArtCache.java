@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.muzei;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.katmitchell.sunshine.FileLruCache;
+import com.katmitchell.sunshine.R;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Keeps local copies of the wallpaper photos, so Muzei can be given a content:// Uri served
+ * by {@link MuzeiArtProvider} rather than download the photo itself every time it is
+ * published.  Only the most recently used {@link #MAX_IMAGES} are kept.  The methods here
+ * read files and download, so don't call them on the main thread.
+ */
+public class MuzeiArtCache {
+
+    public static final String LOG_TAG = MuzeiArtCache.class.getSimpleName();
+
+    static final String DIRECTORY = "muzei";
+    private static final int MAX_IMAGES = 4;
+    private static final int TIMEOUT_MILLIS = 15 * 1000;
+
+    private final FileLruCache mFiles;
+    private final String mAuthority;
+
+    public MuzeiArtCache(Context context) {
+        mFiles = new FileLruCache(getDirectory(context), MAX_IMAGES);
+        mAuthority = context.getString(R.string.muzei_art_authority);
+    }
+
+    static File getDirectory(Context context) {
+        return new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    /**
+     * Returns the local Uri of the photo at imageUrl, downloading it first if it isn't here.
+     *
+     * @return the local Uri, or null if the photo couldn't be downloaded
+     */
+    public Uri get(String imageUrl) {
+        String name = getName(imageUrl);
+        if (mFiles.get(name) == null && !download(imageUrl, name)) {
+            return null;
+        }
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(mAuthority)
+                .appendPath(name)
+                .build();
+    }
+
+    /**
+     * Returns true if the photo at imageUrl is here.
+     */
+    public boolean contains(String imageUrl) {
+        return mFiles.contains(getName(imageUrl));
+    }
+
+    /**
+     * Deletes every photo.
+     */
+    public void clear() {
+        mFiles.clear();
+    }
+
+    private static String getName(String imageUrl) {
+        return Integer.toHexString(imageUrl.hashCode());
+    }
+
+    private boolean download(String imageUrl, String name) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(imageUrl).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                Log.w(LOG_TAG, "Couldn't download " + imageUrl + ": " +
+                        connection.getResponseCode());
+                return false;
+            }
+            final InputStream in = connection.getInputStream();
+            try {
+                mFiles.put(name, new FileLruCache.Writer() {
+                    @Override
+                    public void write(OutputStream out) throws IOException {
+                        byte[] buffer = new byte[8192];
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                        }
+                    }
+                });
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing more to do with it
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't download " + imageUrl, e);
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.muzei;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+import com.google.android.apps.muzei.api.Artwork;
+import com.katmitchell.sunshine.MainActivity;
+
+/**
+ * Decides what to publish to Muzei for a forecast.
+ * <p>
+ * Each photo's remote URL is kept as its artwork's token, so an update that would publish the
+ * same photo with the same title and byline as the current artwork publishes nothing, and
+ * Muzei doesn't load and decode it again.  Photos are published from {@link MuzeiArtCache},
+ * and tomorrow's is fetched ahead, since it is the likeliest to be published next.
+ */
+public class MuzeiUpdater {
+
+    /**
+     * What the updater needs of the art source.
+     */
+    public interface Publisher {
+        Artwork getCurrentArtwork();
+
+        void publishArtwork(Artwork artwork);
+    }
+
+    private final Context mContext;
+    private final MuzeiArtCache mArtCache;
+
+    public MuzeiUpdater(Context context, MuzeiArtCache artCache) {
+        mContext = context;
+        mArtCache = artCache;
+    }
+
+    /**
+     * Publishes today's photo, unless it is already the current artwork, then fetches
+     * tomorrow's.  This can download, so don't call it on the main thread.
+     *
+     * @param imageUrl     today's photo, or null if there isn't one
+     * @param nextImageUrl tomorrow's photo, or null if there isn't one
+     * @return true if anything was published
+     */
+    public boolean update(Publisher publisher, String location, String description,
+                          String imageUrl, String nextImageUrl) {
+        boolean published = false;
+        // Only publish a new wallpaper if we have a valid image
+        if (imageUrl != null && !isCurrent(publisher.getCurrentArtwork(), location,
+                description, imageUrl)) {
+            Uri imageUri = mArtCache.get(imageUrl);
+            if (imageUri == null) {
+                // Muzei can still try for itself
+                imageUri = Uri.parse(imageUrl);
+            }
+            publisher.publishArtwork(new Artwork.Builder()
+                    .imageUri(imageUri)
+                    .token(imageUrl)
+                    .title(description)
+                    .byline(location)
+                    .viewIntent(new Intent(mContext, MainActivity.class))
+                    .build());
+            published = true;
+        }
+        if (nextImageUrl != null && !nextImageUrl.equals(imageUrl)) {
+            mArtCache.get(nextImageUrl);
+        }
+        return published;
+    }
+
+    private static boolean isCurrent(Artwork current, String location, String description,
+                                     String imageUrl) {
+        return current != null
+                && imageUrl.equals(current.getToken())
+                && description.equals(current.getTitle())
+                && location.equals(current.getByline());
+    }
+}
@@ -16,12 +16,9 @@
 package com.katmitchell.sunshine.muzei;
 
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 
-import com.katmitchell.sunshine.MainActivity;
 import com.katmitchell.sunshine.Utility;
-import com.katmitchell.sunshine.data.WeatherContract;
+import com.katmitchell.sunshine.data.PackedForecast;
 import com.katmitchell.sunshine.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
@@ -30,13 +27,18 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
  * Muzei source that changes your background based on the current weather conditions
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
-    private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    // The source's own methods for these aren't public
+    private final MuzeiUpdater.Publisher mPublisher = new MuzeiUpdater.Publisher() {
+        @Override
+        public Artwork getCurrentArtwork() {
+            return WeatherMuzeiSource.this.getCurrentArtwork();
+        }
+
+        @Override
+        public void publishArtwork(Artwork artwork) {
+            WeatherMuzeiSource.this.publishArtwork(artwork);
+        }
     };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
 
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
@@ -55,25 +57,16 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
-
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
-            }
+        // Tomorrow's too, to fetch its photo ahead
+        PackedForecast forecast = PackedForecast.load(this, location, System.currentTimeMillis(), 2);
+        if (forecast.count > 0) {
+            String desc = forecast.shortDescs[0];
+            String imageUrl = Utility.getImageUrlForWeatherCondition(forecast.weatherIds[0]);
+            String nextImageUrl = forecast.count > 1
+                    ? Utility.getImageUrlForWeatherCondition(forecast.weatherIds[1])
+                    : null;
+            new MuzeiUpdater(this, new MuzeiArtCache(this))
+                    .update(mPublisher, location, desc, imageUrl, nextImageUrl);
         }
-        cursor.close();
     }
 }
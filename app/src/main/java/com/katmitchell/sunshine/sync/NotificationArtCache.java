@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.sync;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.katmitchell.sunshine.FileLruCache;
+import com.katmitchell.sunshine.R;
+import com.katmitchell.sunshine.Utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps the notification's large icons on disk, already scaled to the size the notification
+ * shows them at, so that notifying is a small file read rather than a download and a decode.
+ * <p>
+ * Icons are kept for each weather id and art pack.  Only the most recently used
+ * {@link #MAX_ICONS} are kept, so a change of art pack lets the old pack's icons go in time.
+ * The methods here read and write files, and can wait on the network, so call them off the
+ * main thread.
+ */
+public class NotificationArtCache {
+
+    public static final String LOG_TAG = NotificationArtCache.class.getSimpleName();
+
+    private static final String DIRECTORY = "notification_art";
+    private static final String EXTENSION = ".png";
+    static final int MAX_ICONS = 16;
+
+    private final Context mContext;
+    private final FileLruCache mFiles;
+    private final int mWidth;
+    private final int mHeight;
+
+    public NotificationArtCache(Context context) {
+        mContext = context.getApplicationContext();
+        mFiles = new FileLruCache(new File(context.getCacheDir(), DIRECTORY), MAX_ICONS);
+
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        Resources resources = context.getResources();
+        @SuppressLint("InlinedApi")
+        int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        @SuppressLint("InlinedApi")
+        int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        mWidth = largeIconWidth;
+        mHeight = largeIconHeight;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns the large icon for weatherId, from disk if it has been cached, or else loaded,
+     * scaled and cached.  Remote art that takes longer than timeoutMillis to load gives way
+     * to the local art, which isn't cached so that the remote art is tried again next time.
+     *
+     * @return the icon, or null if there is no art for weatherId
+     */
+    public Bitmap get(int weatherId, long timeoutMillis) {
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (artResourceId == -1) {
+            return null;
+        }
+        String artPack = Utility.getArtPack(mContext);
+        String name = getName(weatherId, artPack);
+        File file = mFiles.get(name);
+        Bitmap icon = file != null ? BitmapFactory.decodeFile(file.getPath()) : null;
+        if (icon != null) {
+            return icon;
+        }
+
+        if (artPack != null) {
+            icon = loadRemote(Utility.getArtUrlForWeatherCondition(mContext, weatherId),
+                    timeoutMillis);
+            if (icon == null) {
+                return scale(BitmapFactory.decodeResource(mContext.getResources(),
+                        artResourceId));
+            }
+        } else {
+            icon = scale(BitmapFactory.decodeResource(mContext.getResources(), artResourceId));
+        }
+        if (icon != null) {
+            store(name, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Returns true if the icon for weatherId in the current art pack is on disk.
+     */
+    public boolean contains(int weatherId) {
+        return mFiles.contains(getName(weatherId, Utility.getArtPack(mContext)));
+    }
+
+    /**
+     * Deletes every cached icon.
+     */
+    public void clear() {
+        mFiles.clear();
+    }
+
+    private String getName(int weatherId, String artPack) {
+        // The size is part of the name, in case the density changes
+        String pack = artPack == null ? "local" : Integer.toHexString(artPack.hashCode());
+        return pack + "_" + weatherId + "_" + mWidth + "x" + mHeight + EXTENSION;
+    }
+
+    private Bitmap loadRemote(String url, long timeoutMillis) {
+        FutureTarget<Bitmap> future = Glide.with(mContext)
+                .load(url)
+                .asBitmap()
+                .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+                .fitCenter()
+                .into(mWidth, mHeight);
+        try {
+            Bitmap bitmap = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            // Glide reuses its bitmaps once the request is cleared
+            return bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            Log.w(LOG_TAG, "Couldn't load the large icon from " + url, e);
+        } finally {
+            Glide.clear(future);
+        }
+        return null;
+    }
+
+    /**
+     * Scales bitmap down to fit the large icon, keeping its shape.
+     */
+    private Bitmap scale(Bitmap bitmap) {
+        if (bitmap == null) {
+            return null;
+        }
+        float scale = Math.min((float) mWidth / bitmap.getWidth(),
+                (float) mHeight / bitmap.getHeight());
+        if (scale >= 1) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        bitmap.recycle();
+        return scaled;
+    }
+
+    private void store(String name, final Bitmap icon) {
+        try {
+            mFiles.put(name, new FileLruCache.Writer() {
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    if (!icon.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                        throw new IOException("Couldn't compress the icon");
+                    }
+                }
+            });
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't cache the large icon " + name, e);
+        }
+    }
+}
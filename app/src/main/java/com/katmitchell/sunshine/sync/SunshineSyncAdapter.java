@@ -2,9 +2,6 @@ package com.katmitchell.sunshine.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
@@ -15,27 +12,22 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
-import android.content.res.Resources;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
-import android.support.v4.app.NotificationCompat;
-import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
 import com.katmitchell.sunshine.BuildConfig;
-import com.katmitchell.sunshine.MainActivity;
 import com.katmitchell.sunshine.R;
 import com.katmitchell.sunshine.Utility;
 import com.katmitchell.sunshine.Wear;
+import com.katmitchell.sunshine.WeatherArt;
 import com.katmitchell.sunshine.data.WeatherContract;
+import com.katmitchell.sunshine.data.WeatherQuery;
 import com.katmitchell.sunshine.muzei.WeatherMuzeiSource;
 
 import org.json.JSONArray;
@@ -51,7 +43,8 @@ import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.Vector;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -62,8 +55,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
-    private static final int WEATHER_NOTIFICATION_ID = 3004;
 
+    // Image work left over from a sync, one at a time and off the sync thread, so that
+    // the sync doesn't wait on the art server
+    private static final Executor sArtExecutor = Executors.newSingleThreadExecutor();
+    private static WeatherNotifier sWeatherNotifier;
 
     public static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
@@ -338,17 +334,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             if ( cVVector.size() > 0 ) {
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+                // Inserting through the sync Uri also trims old data in the same transaction,
+                // so we don't build up an endless history
+                getContext().getContentResolver().bulkInsert(
+                        WeatherContract.WeatherEntry.buildWeatherSyncUri(), cvArray);
 
                 updateWidgets();
                 updateWear();
                 updateMuzei();
                 notifyWeather();
+                prefetchArt(cvArray);
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
             setLocationStatus(getContext(), LOCATION_STATUS_OK);
@@ -360,6 +355,31 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    private void prefetchArt(ContentValues[] weatherValues) {
+        // Duplicates are dropped by the prefetch
+        final int[] weatherIds = new int[weatherValues.length];
+        for (int i = 0; i < weatherValues.length; i++) {
+            weatherIds[i] = weatherValues[i].getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        }
+        final Context context = getContext();
+        // After the notification, if there is one, which is more urgent
+        sArtExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int loaded = WeatherArt.prefetch(context, weatherIds);
+                Log.d(LOG_TAG, "Prefetched " + loaded + " art images");
+            }
+        });
+    }
+
+    private static synchronized WeatherNotifier getWeatherNotifier(Context context) {
+        if (sWeatherNotifier == null) {
+            sWeatherNotifier = new WeatherNotifier(context,
+                    WeatherNotifier.DEFAULT_ICON_TIMEOUT_MILLIS);
+        }
+        return sWeatherNotifier;
+    }
+
     private void updateWidgets() {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
@@ -399,85 +419,25 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
                 String locationQuery = Utility.getPreferredLocation(context);
 
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
                 // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+                Cursor cursor = WeatherQuery.forLocationAndDate(locationQuery,
+                        System.currentTimeMillis(), NOTIFY_WEATHER_PROJECTION).query(context);
 
                 if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
-
-                    int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-                    Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
-                    String title = context.getString(R.string.app_name);
-
-                    // Define the text of the forecast.
-                    String contentText = String.format(context.getString(R.string.format_notification),
-                            desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
-
-                    // NotificationCompatBuilder is a very convenient way to build backward-compatible
-                    // notifications.  Just throw in some data.
-                    NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
-                                    .setColor(resources.getColor(R.color.primary_light))
-                                    .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
-                                    .setContentTitle(title)
-                                    .setContentText(contentText);
-
-                    // Make something interesting happen when the user clicks on the notification.
-                    // In this case, opening the app is sufficient.
-                    Intent resultIntent = new Intent(context, MainActivity.class);
-
-                    // The stack builder object will contain an artificial back stack for the
-                    // started Activity.
-                    // This ensures that navigating backward from the Activity leads out of
-                    // your application to the Home screen.
-                    TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-                    stackBuilder.addNextIntent(resultIntent);
-                    PendingIntent resultPendingIntent =
-                            stackBuilder.getPendingIntent(
-                                    0,
-                                    PendingIntent.FLAG_UPDATE_CURRENT
-                            );
-                    mBuilder.setContentIntent(resultPendingIntent);
-
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+                    final int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+                    final double high = cursor.getDouble(INDEX_MAX_TEMP);
+                    final double low = cursor.getDouble(INDEX_MIN_TEMP);
+                    final String desc = cursor.getString(INDEX_SHORT_DESC);
+
+                    // The large icon can mean waiting on the art server, which the sync
+                    // shouldn't
+                    final WeatherNotifier notifier = getWeatherNotifier(context);
+                    sArtExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            notifier.notifyWeather(weatherId, desc, high, low);
+                        }
+                    });
 
                     //refreshing last sync
                     SharedPreferences.Editor editor = prefs.edit();
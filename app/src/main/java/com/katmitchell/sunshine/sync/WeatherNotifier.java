@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.sync;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+
+import com.katmitchell.sunshine.MainActivity;
+import com.katmitchell.sunshine.R;
+import com.katmitchell.sunshine.Utility;
+
+/**
+ * Builds and posts the daily weather notification.  The large icon comes from
+ * {@link NotificationArtCache}, and is given up on for the local art after a bounded wait, so
+ * notifying never takes much longer than that however slow the art server is.
+ */
+public class WeatherNotifier {
+
+    public static final int WEATHER_NOTIFICATION_ID = 3004;
+
+    static final long DEFAULT_ICON_TIMEOUT_MILLIS = 5000;
+
+    private final Context mContext;
+    private final NotificationArtCache mArtCache;
+    private final long mIconTimeoutMillis;
+
+    public WeatherNotifier(Context context, long iconTimeoutMillis) {
+        mContext = context.getApplicationContext();
+        mArtCache = new NotificationArtCache(context);
+        mIconTimeoutMillis = iconTimeoutMillis;
+    }
+
+    public NotificationArtCache getArtCache() {
+        return mArtCache;
+    }
+
+    /**
+     * Posts the notification for today's weather.  This reads files and can wait on the
+     * network, so don't call it on the main thread, or the sync thread.
+     */
+    public void notifyWeather(int weatherId, String description, double high, double low) {
+        int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
+        Bitmap largeIcon = mArtCache.get(weatherId, mIconTimeoutMillis);
+        String title = mContext.getString(R.string.app_name);
+
+        // Define the text of the forecast.
+        String contentText = String.format(mContext.getString(R.string.format_notification),
+                description,
+                Utility.formatTemperature(mContext, high),
+                Utility.formatTemperature(mContext, low));
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        NotificationCompat.Builder builder =
+                new NotificationCompat.Builder(mContext)
+                        .setColor(mContext.getResources().getColor(R.color.primary_light))
+                        .setSmallIcon(iconId)
+                        .setLargeIcon(largeIcon)
+                        .setContentTitle(title)
+                        .setContentText(contentText);
+
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.
+        Intent resultIntent = new Intent(mContext, MainActivity.class);
+
+        // The stack builder object will contain an artificial back stack for the
+        // started Activity.
+        // This ensures that navigating backward from the Activity leads out of
+        // your application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(mContext);
+        stackBuilder.addNextIntent(resultIntent);
+        PendingIntent resultPendingIntent =
+                stackBuilder.getPendingIntent(
+                        0,
+                        PendingIntent.FLAG_UPDATE_CURRENT
+                );
+        builder.setContentIntent(resultPendingIntent);
+
+        NotificationManager notificationManager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        notificationManager.notify(WEATHER_NOTIFICATION_ID, builder.build());
+    }
+}
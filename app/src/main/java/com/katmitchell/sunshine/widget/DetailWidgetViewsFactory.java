@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.widget;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Build;
+import android.widget.AdapterView;
+import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
+
+import com.katmitchell.sunshine.R;
+import com.katmitchell.sunshine.Utility;
+import com.katmitchell.sunshine.data.PackedForecast;
+import com.katmitchell.sunshine.data.WeatherContract;
+
+/**
+ * Builds the rows of a detail widget, one for each day of the forecast.
+ * <p>
+ * The rows are all built when the data changes, from a forecast that is let go of straight
+ * after, so the launcher's calls to {@link #getViewAt} while it scrolls return one that is
+ * ready rather than formatting dates and temperatures on its binder thread.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class DetailWidgetViewsFactory implements RemoteViewsService.RemoteViewsFactory {
+
+    private static final RemoteViews[] NO_ROWS = new RemoteViews[0];
+
+    private final Context mContext;
+    private final WidgetArtCache mArtCache;
+    // Built in onDataSetChanged, and swapped in whole so that getViewAt never sees half
+    private volatile RemoteViews[] mRows = NO_ROWS;
+    private long[] mIds;
+
+    public DetailWidgetViewsFactory(Context context) {
+        mContext = context;
+        mArtCache = WidgetArtCache.getInstance(context);
+    }
+
+    @Override
+    public void onCreate() {
+        // Nothing to do
+    }
+
+    @Override
+    public void onDataSetChanged() {
+        // This method is called by the app hosting the widget (e.g., the launcher)
+        // However, our ContentProvider is not exported so it doesn't have access to the
+        // data. Therefore we need to clear (and finally restore) the calling identity so
+        // that calls use our process and permission
+        final long identityToken = Binder.clearCallingIdentity();
+        String location = Utility.getPreferredLocation(mContext);
+        PackedForecast data = PackedForecast.load(mContext, location, System.currentTimeMillis(),
+                PackedForecast.MAX_DAYS);
+        Binder.restoreCallingIdentity(identityToken);
+        mArtCache.retryFailed();
+
+        // Every row is built now, while the launcher expects to wait, so that scrolling only
+        // has to hand them over
+        RemoteViews[] rows = new RemoteViews[data.count];
+        for (int position = 0; position < data.count; position++) {
+            rows[position] = buildRow(data, position, location);
+        }
+        mIds = data.ids;
+        mRows = rows;
+    }
+
+    @Override
+    public void onDestroy() {
+        mRows = NO_ROWS;
+        mIds = null;
+    }
+
+    @Override
+    public int getCount() {
+        return mRows.length;
+    }
+
+    @Override
+    public RemoteViews getViewAt(int position) {
+        RemoteViews[] rows = mRows;
+        if (position == AdapterView.INVALID_POSITION || position >= rows.length) {
+            return null;
+        }
+        return rows[position];
+    }
+
+    private RemoteViews buildRow(PackedForecast data, int position, String locationSetting) {
+        RemoteViews views = new RemoteViews(mContext.getPackageName(),
+                R.layout.widget_detail_list_item);
+        int weatherId = data.weatherIds[position];
+        int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+        // Shared with the other rows and widgets, and only as big as the icon
+        Bitmap weatherArtImage = mArtCache.get(weatherId);
+        String description = data.shortDescs[position];
+        long dateInMillis = data.dates[position];
+        String formattedDate = Utility.getFriendlyDayString(mContext, dateInMillis, false);
+        double maxTemp = data.maxTemps[position];
+        double minTemp = data.minTemps[position];
+        String formattedMaxTemperature = Utility.formatTemperature(mContext, maxTemp);
+        String formattedMinTemperature = Utility.formatTemperature(mContext, minTemp);
+        if (weatherArtImage != null) {
+            views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+        } else {
+            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_date, formattedDate);
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+        final Intent fillInIntent = new Intent();
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                locationSetting,
+                dateInMillis);
+        fillInIntent.setData(weatherUri);
+        views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+        return views;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+
+    @Override
+    public RemoteViews getLoadingView() {
+        return new RemoteViews(mContext.getPackageName(), R.layout.widget_detail_list_item);
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        long[] ids = mIds;
+        if (ids != null && position >= 0 && position < ids.length)
+            return ids[position];
+        return position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+}
@@ -17,38 +17,29 @@ package com.katmitchell.sunshine.widget;
 
 import android.annotation.TargetApi;
 import android.app.IntentService;
-import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
-import com.katmitchell.sunshine.MainActivity;
 import com.katmitchell.sunshine.R;
 import com.katmitchell.sunshine.Utility;
-import com.katmitchell.sunshine.data.WeatherContract;
+import com.katmitchell.sunshine.data.PackedForecast;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
  */
-public class TodayWidgetIntentService extends IntentService {
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
+public class TodayWidgetIntentService extends IntentService
+        implements TodayWidgetUpdater.Host {
+
+    // Kept for as long as the process, which is as long as the widgets' state is worth keeping
+    private static TodayWidgetUpdater sUpdater;
+
+    private AppWidgetManager mAppWidgetManager;
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -56,69 +47,61 @@ public class TodayWidgetIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        // Retrieve all of the Today widget ids: these are the widgets we need to update
-        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
-        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
-                TodayWidgetProvider.class));
+        try {
+            updateWidgets(intent);
+        } finally {
+            WidgetRefreshCoordinator.getInstance(this)
+                    .finished(WidgetRefreshCoordinator.TYPE_TODAY);
+        }
+    }
+
+    private void updateWidgets(Intent intent) {
+        if (sUpdater == null) {
+            sUpdater = new TodayWidgetUpdater(getApplicationContext());
+        }
+        // Widgets that were resized or asked to update are measured and updated regardless
+        if (intent.hasExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS)) {
+            sUpdater.invalidate(intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS));
+        }
+        if (intent.hasExtra(AppWidgetManager.EXTRA_APPWIDGET_ID)) {
+            sUpdater.invalidate(intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                    AppWidgetManager.INVALID_APPWIDGET_ID));
+        }
 
         // Get today's data from the ContentProvider
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
-        }
-        if (!data.moveToFirst()) {
-            data.close();
+        PackedForecast data = PackedForecast.load(this, location, System.currentTimeMillis(), 1);
+        if (data.count == 0) {
             return;
         }
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
+        // Extract today's weather data
+        int weatherId = data.weatherIds[0];
         int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
-
-        // Perform this loop procedure for each Today widget
-        for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
-            }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
-
-            // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-            // Content Descriptions for RemoteViews were only added in ICS MR1
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
-            }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
-
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
-        }
+        String description = data.shortDescs[0];
+        String formattedMaxTemperature = Utility.formatTemperature(this, data.maxTemps[0]);
+        String formattedMinTemperature = Utility.formatTemperature(this, data.minTemps[0]);
+
+        mAppWidgetManager = AppWidgetManager.getInstance(this);
+        sUpdater.update(this, weatherArtResourceId, description, formattedMaxTemperature,
+                formattedMinTemperature);
+    }
+
+    @Override
+    public int[] getAppWidgetIds() {
+        // Retrieve all of the Today widget ids: these are the widgets we need to update
+        return mAppWidgetManager.getAppWidgetIds(new ComponentName(this,
+                TodayWidgetProvider.class));
+    }
+
+    @Override
+    public int getWidgetWidth(int appWidgetId) {
+        return getWidgetWidth(mAppWidgetManager, appWidgetId);
+    }
+
+    @Override
+    public void updateAppWidget(int[] appWidgetIds, RemoteViews views) {
+        mAppWidgetManager.updateAppWidget(appWidgetIds, views);
     }
 
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
@@ -143,9 +126,4 @@ public class TodayWidgetIntentService extends IntentService {
         }
         return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
     }
-
-    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
-    private void setRemoteContentDescription(RemoteViews views, String description) {
-        views.setContentDescription(R.id.widget_icon, description);
-    }
 }
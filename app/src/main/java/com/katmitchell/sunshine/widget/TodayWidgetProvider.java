@@ -28,26 +28,30 @@ import com.katmitchell.sunshine.sync.SunshineSyncAdapter;
  * Provider for a horizontally expandable widget showing today's weather.
  *
  * Delegates widget updating to {@link TodayWidgetIntentService} to ensure that
- * data retrieval is done on a background thread
+ * data retrieval is done on a background thread, through {@link WidgetRefreshCoordinator} so
+ * that a burst of updates only starts it once
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        WidgetRefreshCoordinator.getInstance(context)
+                .request(WidgetRefreshCoordinator.TYPE_TODAY, appWidgetIds);
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        WidgetRefreshCoordinator.getInstance(context)
+                .request(WidgetRefreshCoordinator.TYPE_TODAY, appWidgetId);
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            WidgetRefreshCoordinator.getInstance(context)
+                    .request(WidgetRefreshCoordinator.TYPE_TODAY);
         }
     }
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.widget;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.SparseIntArray;
+import android.widget.RemoteViews;
+
+import com.katmitchell.sunshine.MainActivity;
+import com.katmitchell.sunshine.R;
+
+import java.util.Arrays;
+
+/**
+ * Puts today's weather on every Today widget, without telling the widget service about
+ * widgets that already show it.
+ * <p>
+ * Each widget's width puts it in one of three size buckets, each with its own layout.  Which
+ * bucket a widget is in is remembered until it is resized, and so is a hash of what was last
+ * sent to it.  Only widgets whose hash differs are updated, with one update per bucket for all
+ * of them.  Every call on the {@link Host} is a binder transaction.
+ */
+public class TodayWidgetUpdater {
+
+    /**
+     * The widget service, as far as the updater needs it.
+     */
+    public interface Host {
+        int[] getAppWidgetIds();
+
+        /**
+         * Returns the current width of the widget, in pixels.
+         */
+        int getWidgetWidth(int appWidgetId);
+
+        void updateAppWidget(int[] appWidgetIds, RemoteViews views);
+    }
+
+    // Size buckets, smallest first
+    static final int[] LAYOUTS = {
+            R.layout.widget_today_small,
+            R.layout.widget_today,
+            R.layout.widget_today_large
+    };
+
+    private static final int UNKNOWN = -1;
+
+    private final Context mContext;
+    private final int mDefaultWidth;
+    private final int mLargeWidth;
+    // Widget id to size bucket, until the widget is resized
+    private SparseIntArray mBuckets = new SparseIntArray();
+    // Widget id to the hash of the content last sent to it
+    private SparseIntArray mHashes = new SparseIntArray();
+
+    public TodayWidgetUpdater(Context context) {
+        mContext = context;
+        mDefaultWidth = context.getResources()
+                .getDimensionPixelSize(R.dimen.widget_today_default_width);
+        mLargeWidth = context.getResources()
+                .getDimensionPixelSize(R.dimen.widget_today_large_width);
+    }
+
+    /**
+     * Forgets what the given widgets show and how big they are, so the next update measures
+     * and updates them whatever the weather.  For when they are resized, or asked to update.
+     */
+    public void invalidate(int... appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            mBuckets.delete(appWidgetId);
+            mHashes.delete(appWidgetId);
+        }
+    }
+
+    /**
+     * Updates the widgets that don't already show this weather.
+     *
+     * @return the number of updates sent, one for each size bucket with a widget to update
+     */
+    public int update(Host host, int weatherArtResourceId, String description,
+                      String formattedMaxTemperature, String formattedMinTemperature) {
+        int[] appWidgetIds = host.getAppWidgetIds();
+
+        // Rebuilt each time, so that removed widgets are let go of
+        SparseIntArray buckets = new SparseIntArray(appWidgetIds.length);
+        SparseIntArray hashes = new SparseIntArray(appWidgetIds.length);
+        int[][] stale = new int[LAYOUTS.length][appWidgetIds.length];
+        int[] staleCounts = new int[LAYOUTS.length];
+        for (int appWidgetId : appWidgetIds) {
+            int bucket = mBuckets.get(appWidgetId, UNKNOWN);
+            if (bucket == UNKNOWN) {
+                bucket = getBucket(host.getWidgetWidth(appWidgetId));
+            }
+            buckets.put(appWidgetId, bucket);
+
+            int hash = Arrays.hashCode(new Object[]{LAYOUTS[bucket], weatherArtResourceId,
+                    description, formattedMaxTemperature, formattedMinTemperature});
+            hashes.put(appWidgetId, hash);
+            if (mHashes.indexOfKey(appWidgetId) < 0 || mHashes.get(appWidgetId) != hash) {
+                stale[bucket][staleCounts[bucket]++] = appWidgetId;
+            }
+        }
+        mBuckets = buckets;
+
+        int updates = 0;
+        for (int bucket = 0; bucket < LAYOUTS.length; bucket++) {
+            if (staleCounts[bucket] == 0) {
+                continue;
+            }
+            RemoteViews views = buildViews(LAYOUTS[bucket], weatherArtResourceId, description,
+                    formattedMaxTemperature, formattedMinTemperature);
+            host.updateAppWidget(Arrays.copyOf(stale[bucket], staleCounts[bucket]), views);
+            updates++;
+        }
+        // Only once the updates have gone, so a failed one is tried again next time
+        mHashes = hashes;
+        return updates;
+    }
+
+    private int getBucket(int widgetWidth) {
+        if (widgetWidth >= mLargeWidth) {
+            return 2;
+        } else if (widgetWidth >= mDefaultWidth) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private RemoteViews buildViews(int layoutId, int weatherArtResourceId, String description,
+                                   String formattedMaxTemperature,
+                                   String formattedMinTemperature) {
+        RemoteViews views = new RemoteViews(mContext.getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(mContext, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(mContext, 0, launchIntent, 0);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+}
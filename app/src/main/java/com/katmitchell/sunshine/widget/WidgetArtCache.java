@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.katmitchell.sunshine.Utility;
+import com.katmitchell.sunshine.WeatherArt;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Holds the remote art shown by the widgets, decoded at the size of a widget row's icon.
+ * <p>
+ * A bitmap set on a RemoteViews is copied into every binder transaction that carries it, so
+ * one decoded at the size of the source costs the launcher far more than the icon shows, and
+ * can push a list of rows past the transaction limit.  Each distinct image is decoded once and
+ * shared by every row and every widget, until the art pack changes.
+ */
+public class WidgetArtCache {
+
+    public static final String LOG_TAG = WidgetArtCache.class.getSimpleName();
+
+    // Per image; the row falls back to the local art rather than hold the launcher up
+    private static final long LOAD_TIMEOUT_SECONDS = 10;
+
+    private static WidgetArtCache sInstance;
+
+    private final Context mContext;
+    private final int mSize;
+    // Each bitmap's request, which keeps Glide from reusing it while it is cached
+    private final HashMap<String, FutureTarget<Bitmap>> mBitmaps = new HashMap<>();
+    // Images that failed to load since the widgets' data last changed
+    private final HashSet<String> mFailed = new HashSet<>();
+    // The art pack the bitmaps came from
+    private String mArtPack;
+
+    public static synchronized WidgetArtCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WidgetArtCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WidgetArtCache(Context context) {
+        mContext = context;
+        // The same size as the list's rows, so the decode Glide caches for them is this one
+        mSize = WeatherArt.getSmallSize(context);
+    }
+
+    /**
+     * Returns the art for weatherId, loading it if this is the first time it is asked for.
+     * This can block on the network, so don't call it on the main thread.  The wait happens
+     * outside the cache's lock, so other images, and the calls that don't load, aren't held up
+     * behind a slow one.
+     *
+     * @return the art, or null if the local graphics are in use or it couldn't be loaded
+     */
+    public Bitmap get(int weatherId) {
+        String url;
+        FutureTarget<Bitmap> future;
+        synchronized (this) {
+            String artPack = Utility.getArtPack(mContext);
+            if (artPack == null ? mArtPack != null : !artPack.equals(mArtPack)) {
+                evictAll();
+                mArtPack = artPack;
+            }
+            if (artPack == null) {
+                return null;
+            }
+            url = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            if (url == null || mFailed.contains(url)) {
+                return null;
+            }
+            future = mBitmaps.get(url);
+            if (future == null) {
+                future = Glide.with(mContext)
+                        .load(url)
+                        .asBitmap()
+                        .diskCacheStrategy(DiskCacheStrategy.ALL)
+                        .fitCenter()
+                        .into(mSize, mSize);
+                mBitmaps.put(url, future);
+            }
+        }
+
+        Bitmap bitmap = null;
+        boolean failed = false;
+        try {
+            bitmap = future.get(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (CancellationException e) {
+            // Evicted while it loaded
+        } catch (ExecutionException | TimeoutException e) {
+            Log.w(LOG_TAG, "Couldn't load widget art from " + url, e);
+            failed = true;
+        }
+
+        synchronized (this) {
+            if (mBitmaps.get(url) != future) {
+                // Evicted while it loaded, so Glide may already have the bitmap back
+                return null;
+            }
+            if (bitmap == null) {
+                if (failed) {
+                    mFailed.add(url);
+                }
+                Glide.clear(future);
+                mBitmaps.remove(url);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * Lets images that failed to load be tried again, for when the widgets' data changes.
+     */
+    public synchronized void retryFailed() {
+        mFailed.clear();
+    }
+
+    /**
+     * Lets go of every bitmap.
+     */
+    public synchronized void evictAll() {
+        for (FutureTarget<Bitmap> future : mBitmaps.values()) {
+            Glide.clear(future);
+        }
+        mBitmaps.clear();
+        mFailed.clear();
+    }
+
+    /**
+     * Returns the width and height the art is decoded at.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of images held.
+     */
+    public synchronized int getCount() {
+        return mBitmaps.size();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.widget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Receives the alarms {@link WidgetRefreshCoordinator} waits out its windows with, and starts
+ * the refreshes while the broadcast keeps the process alive.
+ */
+public class WidgetRefreshAlarmReceiver extends BroadcastReceiver {
+
+    static final String EXTRA_PID = "pid";
+    static final String EXTRA_ALARM_ID = "alarm_id";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        WidgetRefreshCoordinator.getInstance(context).onAlarm(intent.getIntExtra(EXTRA_PID, 0),
+                intent.getIntExtra(EXTRA_ALARM_ID, -1));
+    }
+}
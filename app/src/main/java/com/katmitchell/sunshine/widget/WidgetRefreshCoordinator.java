@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.widget;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.katmitchell.sunshine.R;
+
+/**
+ * Collapses the bursts of refresh requests the widgets get into one refresh each.
+ * <p>
+ * A sync, a preference change and a resize can all ask the same widgets to refresh within a
+ * moment of each other, and each refresh queries the provider again.  The first request for
+ * a type of widget schedules its refresh for a window later, and requests made before then
+ * ride along with it.  At most one refresh of each type is in flight; requests made while
+ * one is run another once it has finished.  A refresh that never reports back is taken to
+ * have finished after {@link #IN_FLIGHT_TIMEOUT_MILLIS}.
+ * <p>
+ * Requests come from widget providers, and the process has nothing running once they return,
+ * so the window is waited out with an alarm rather than on a Handler: the alarm's receiver
+ * keeps the process up while the refresh is handed to the service.  If the process was
+ * killed in the meantime, its requests went with it, and the alarm refreshes everything.
+ */
+public class WidgetRefreshCoordinator {
+
+    public static final int TYPE_TODAY = 0;
+    public static final int TYPE_DETAIL = 1;
+    private static final int TYPE_COUNT = 2;
+
+    static final long DEFAULT_WINDOW_MILLIS = 500;
+    static final long IN_FLIGHT_TIMEOUT_MILLIS = 30 * 1000;
+
+    /**
+     * The time, and a way to run something later, so that tests can stand in for both.
+     */
+    public interface Clock {
+        long uptimeMillis();
+
+        void runAt(Runnable runnable, long uptimeMillis);
+    }
+
+    /**
+     * Does the refreshing.
+     */
+    public interface Refresher {
+        /**
+         * Refreshes the widgets of type, and calls {@link #finished} once that is done.
+         *
+         * @param appWidgetIds the widgets that asked to be measured and updated regardless,
+         *                     if any
+         */
+        void refresh(WidgetRefreshCoordinator coordinator, int type, int[] appWidgetIds);
+    }
+
+    private static class Slot {
+        int requested;
+        int executed;
+        boolean scheduled;
+        boolean inFlight;
+        // Whether a request came in while in flight
+        boolean again;
+        final SparseBooleanArray appWidgetIds = new SparseBooleanArray();
+    }
+
+    private static WidgetRefreshCoordinator sInstance;
+
+    private final Clock mClock;
+    private final Refresher mRefresher;
+    private final Slot[] mSlots = new Slot[TYPE_COUNT];
+    private long mWindowMillis;
+
+    public static synchronized WidgetRefreshCoordinator getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new WidgetRefreshCoordinator(new AlarmClock(appContext),
+                    new WidgetRefresher(appContext), DEFAULT_WINDOW_MILLIS);
+        }
+        return sInstance;
+    }
+
+    public WidgetRefreshCoordinator(Clock clock, Refresher refresher, long windowMillis) {
+        mClock = clock;
+        mRefresher = refresher;
+        mWindowMillis = windowMillis;
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            mSlots[type] = new Slot();
+        }
+    }
+
+    /**
+     * Sets how long a refresh waits for more requests to collapse into it.
+     */
+    public synchronized void setWindowMillis(long windowMillis) {
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Asks for the widgets of type to be refreshed.
+     *
+     * @param appWidgetIds widgets to measure and update even if they look up to date
+     */
+    public synchronized void request(int type, int... appWidgetIds) {
+        Slot slot = mSlots[type];
+        slot.requested++;
+        for (int appWidgetId : appWidgetIds) {
+            slot.appWidgetIds.put(appWidgetId, true);
+        }
+        if (slot.inFlight) {
+            slot.again = true;
+        } else if (!slot.scheduled) {
+            schedule(type);
+        }
+    }
+
+    /**
+     * Reports that the refresh of type in flight has finished.
+     */
+    public synchronized void finished(int type) {
+        Slot slot = mSlots[type];
+        if (!slot.inFlight) {
+            return;
+        }
+        slot.inFlight = false;
+        if (slot.again) {
+            slot.again = false;
+            schedule(type);
+        }
+    }
+
+    public synchronized int getRequested(int type) {
+        return mSlots[type].requested;
+    }
+
+    public synchronized int getExecuted(int type) {
+        return mSlots[type].executed;
+    }
+
+    private void schedule(final int type) {
+        mSlots[type].scheduled = true;
+        mClock.runAt(new Runnable() {
+            @Override
+            public void run() {
+                refresh(type);
+            }
+        }, mClock.uptimeMillis() + mWindowMillis);
+    }
+
+    private synchronized void refresh(final int type) {
+        Slot slot = mSlots[type];
+        slot.scheduled = false;
+        slot.inFlight = true;
+        final int run = ++slot.executed;
+        int[] appWidgetIds = new int[slot.appWidgetIds.size()];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            appWidgetIds[i] = slot.appWidgetIds.keyAt(i);
+        }
+        slot.appWidgetIds.clear();
+
+        mClock.runAt(new Runnable() {
+            @Override
+            public void run() {
+                timedOut(type, run);
+            }
+        }, mClock.uptimeMillis() + IN_FLIGHT_TIMEOUT_MILLIS);
+        mRefresher.refresh(this, type, appWidgetIds);
+    }
+
+    private synchronized void timedOut(int type, int run) {
+        // Unless it has finished, and another has started since
+        if (mSlots[type].executed == run) {
+            finished(type);
+        }
+    }
+
+    /**
+     * Runs what the alarm with alarmId was set for, from {@link WidgetRefreshAlarmReceiver}.
+     *
+     * @param pid the process that set the alarm
+     */
+    public void onAlarm(int pid, int alarmId) {
+        Runnable runnable = mClock instanceof AlarmClock && pid == Process.myPid()
+                ? ((AlarmClock) mClock).take(alarmId) : null;
+        if (runnable != null) {
+            runnable.run();
+        } else {
+            refreshAll();
+        }
+    }
+
+    // For an alarm set by a process that has since died, along with whatever it was for
+    private synchronized void refreshAll() {
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            Slot slot = mSlots[type];
+            if (!slot.inFlight && !slot.scheduled) {
+                slot.requested++;
+                refresh(type);
+            }
+        }
+    }
+
+    private static class AlarmClock implements Clock {
+        private final Context mContext;
+        private final SparseArray<Runnable> mRunnables = new SparseArray<>();
+        private int mNextAlarmId;
+
+        AlarmClock(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public void runAt(Runnable runnable, long uptimeMillis) {
+            int alarmId;
+            synchronized (this) {
+                alarmId = mNextAlarmId++;
+                mRunnables.put(alarmId, runnable);
+            }
+            Intent intent = new Intent(mContext, WidgetRefreshAlarmReceiver.class)
+                    .putExtra(WidgetRefreshAlarmReceiver.EXTRA_PID, Process.myPid())
+                    .putExtra(WidgetRefreshAlarmReceiver.EXTRA_ALARM_ID, alarmId);
+            PendingIntent operation = PendingIntent.getBroadcast(mContext, alarmId, intent,
+                    PendingIntent.FLAG_UPDATE_CURRENT);
+            // Not a wakeup alarm: nobody sees the widgets while the device is asleep
+            long triggerAtMillis = SystemClock.elapsedRealtime()
+                    + Math.max(0, uptimeMillis - SystemClock.uptimeMillis());
+            AlarmManager alarmManager =
+                    (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                setExact(alarmManager, triggerAtMillis, operation);
+            } else {
+                alarmManager.set(AlarmManager.ELAPSED_REALTIME, triggerAtMillis, operation);
+            }
+        }
+
+        @TargetApi(Build.VERSION_CODES.KITKAT)
+        private static void setExact(AlarmManager alarmManager, long triggerAtMillis,
+                                     PendingIntent operation) {
+            // Inexact alarms can be batched well past the window
+            alarmManager.setExact(AlarmManager.ELAPSED_REALTIME, triggerAtMillis, operation);
+        }
+
+        synchronized Runnable take(int alarmId) {
+            Runnable runnable = mRunnables.get(alarmId);
+            mRunnables.remove(alarmId);
+            return runnable;
+        }
+    }
+
+    private static class WidgetRefresher implements Refresher {
+        private final Context mContext;
+
+        WidgetRefresher(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public void refresh(WidgetRefreshCoordinator coordinator, int type, int[] appWidgetIds) {
+            if (type == TYPE_TODAY) {
+                // The service reports back when it is done
+                Intent intent = new Intent(mContext, TodayWidgetIntentService.class);
+                if (appWidgetIds.length > 0) {
+                    intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, appWidgetIds);
+                }
+                mContext.startService(intent);
+            } else {
+                // The launcher asks for the data in its own time, so this is all there is
+                notifyDetailWidgets();
+                coordinator.finished(type);
+            }
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        private void notifyDetailWidgets() {
+            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(mContext);
+            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                    new ComponentName(mContext, DetailWidgetProvider.class));
+            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.common;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * The text the watch face draws, kept in char arrays that are rewritten in place, so that
+ * drawing a frame allocates nothing.  Draw each with
+ * {@link android.graphics.Canvas#drawText(char[], int, int, float, float, android.graphics.Paint)}
+ * and its length.
+ * <p>
+ * The time is worked out from the clock and the cached time zone's offset, and only rewritten
+ * when the minute changes.  The date goes through a {@link SimpleDateFormat}, which does
+ * allocate, but only when the day changes.  Temperatures are written when the forecast does.
+ */
+public class FaceText {
+
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+    private static final long DAY_IN_MILLIS = 24 * 60 * MINUTE_IN_MILLIS;
+    private static final char DEGREE = '\u00B0';
+
+    // H:MM or HH:MM
+    public final char[] time = new char[5];
+    public int timeLength;
+
+    public final char[] date = new char[32];
+    public int dateLength;
+
+    // Enough for a sign, any int and the degree sign
+    public final char[] high = new char[12];
+    public int highLength;
+
+    public final char[] low = new char[12];
+    public int lowLength;
+
+    private final SimpleDateFormat mDateFormat;
+    private final Date mDate = new Date();
+    private TimeZone mTimeZone;
+    private int mDay = Integer.MIN_VALUE;
+    private long mMinute = Long.MIN_VALUE;
+
+    public FaceText(SimpleDateFormat dateFormat, TimeZone timeZone) {
+        mDateFormat = dateFormat;
+        setTimeZone(timeZone);
+    }
+
+    /**
+     * Changes the time zone the time and date are shown in.  Call this when the default
+     * time zone changes, with the new one.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mDateFormat.setTimeZone(timeZone);
+        mDay = Integer.MIN_VALUE;
+        mMinute = Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns the local day, in days since the epoch, that contains millis, as
+     * {@link ForecastPayload#getLocalDay(long, long)} does.
+     */
+    public int getLocalDay(long millis) {
+        return ForecastPayload.getLocalDay(millis, mTimeZone.getOffset(millis) / 1000);
+    }
+
+    /**
+     * Brings the time and date up to millis.
+     */
+    public void update(long millis) {
+        long local = millis + mTimeZone.getOffset(millis);
+        long minute = floorDiv(local, MINUTE_IN_MILLIS);
+        if (minute == mMinute) {
+            return;
+        }
+        mMinute = minute;
+        int minuteOfDay = (int) (minute - floorDiv(local, DAY_IN_MILLIS) * 24 * 60);
+        int hour = minuteOfDay / 60;
+        int minuteOfHour = minuteOfDay % 60;
+        int length = 0;
+        if (hour >= 10) {
+            time[length++] = (char) ('0' + hour / 10);
+        }
+        time[length++] = (char) ('0' + hour % 10);
+        time[length++] = ':';
+        time[length++] = (char) ('0' + minuteOfHour / 10);
+        time[length++] = (char) ('0' + minuteOfHour % 10);
+        timeLength = length;
+
+        int day = getLocalDay(millis);
+        if (day != mDay) {
+            mDay = day;
+            mDate.setTime(millis);
+            String text = mDateFormat.format(mDate);
+            dateLength = Math.min(text.length(), date.length);
+            text.getChars(0, dateLength, date, 0);
+        }
+    }
+
+    /**
+     * Sets the temperatures, in whole degrees, as they are to be shown.
+     */
+    public void setTemperatures(int highDegrees, int lowDegrees) {
+        highLength = writeDegrees(high, highDegrees);
+        lowLength = writeDegrees(low, lowDegrees);
+    }
+
+    private static int writeDegrees(char[] chars, int degrees) {
+        int length = 0;
+        // Negative all the way, so Integer.MIN_VALUE doesn't overflow
+        int value = degrees < 0 ? degrees : -degrees;
+        if (degrees < 0) {
+            chars[length++] = '-';
+        }
+        int start = length;
+        do {
+            chars[length++] = (char) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        // The digits went in backwards
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+        chars[length++] = DEGREE;
+        return length;
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.common;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * The binary form of the forecast sent from the phone to the watch, so that both sides
+ * encode and decode with the same code.
+ * <p>
+ * A payload starts with a version byte and a kind byte.  A full payload carries every day:
+ * <pre>
+ *   version, FULL, sequence, first day, day count,
+ *   then for each day: weather id, high, low
+ * </pre>
+ * A delta payload carries only what differs from an earlier full payload, its base:
+ * <pre>
+ *   version, DELTA, base sequence, first day - base first day, day count,
+ *   then for each day: a flags byte, then the fields the flags say changed
+ * </pre>
+ * Counts and sequences are unsigned varints, and everything else is a zigzag varint.
+ * Temperatures are sent as whole {@link #TEMPERATURE_STEP}s.  In a full payload each day's
+ * fields are the difference from the day before, and in a delta from the same day in the
+ * base, so a typical day takes a byte per field, and a day that hasn't changed takes one
+ * byte in all.
+ */
+public class ForecastPayload {
+
+    public static final int VERSION = 1;
+
+    // Temperatures are rounded to this many degrees
+    public static final double TEMPERATURE_STEP = 0.5;
+
+    // More than any forecast has, so a corrupt count is caught before allocating for it
+    public static final int MAX_DAYS = 31;
+
+    static final int KIND_FULL = 0;
+    static final int KIND_DELTA = 1;
+
+    private static final int FLAG_WEATHER_ID = 1;
+    private static final int FLAG_HIGH = 2;
+    private static final int FLAG_LOW = 4;
+    // The day isn't in the base, so its fields are sent whole
+    private static final int FLAG_NEW = 8;
+
+    /**
+     * A forecast for consecutive days, with temperatures already rounded to
+     * {@link #TEMPERATURE_STEP}, so it reads back exactly as it was sent.
+     */
+    public static class Forecast {
+        private final int mFirstDay;
+        private final int[] mWeatherIds;
+        private final int[] mHighSteps;
+        private final int[] mLowSteps;
+
+        /**
+         * @param firstDay local days since the epoch of the first day, as
+         *                 {@link #getLocalDay(long, long)} gives
+         */
+        public Forecast(int firstDay, int[] weatherIds, double[] highs, double[] lows) {
+            this(firstDay, weatherIds.clone(), toSteps(highs), toSteps(lows));
+            if (highs.length != weatherIds.length || lows.length != weatherIds.length) {
+                throw new IllegalArgumentException("Days don't match: " + weatherIds.length +
+                        ", " + highs.length + ", " + lows.length);
+            }
+        }
+
+        private Forecast(int firstDay, int[] weatherIds, int[] highSteps, int[] lowSteps) {
+            if (weatherIds.length > MAX_DAYS) {
+                throw new IllegalArgumentException("Too many days: " + weatherIds.length);
+            }
+            mFirstDay = firstDay;
+            mWeatherIds = weatherIds;
+            mHighSteps = highSteps;
+            mLowSteps = lowSteps;
+        }
+
+        public int getFirstDay() {
+            return mFirstDay;
+        }
+
+        public int getDayCount() {
+            return mWeatherIds.length;
+        }
+
+        /**
+         * Returns the index of the given local day, or -1 if the forecast doesn't cover it.
+         */
+        public int indexOf(int localDay) {
+            int index = localDay - mFirstDay;
+            return index >= 0 && index < mWeatherIds.length ? index : -1;
+        }
+
+        public int getWeatherId(int index) {
+            return mWeatherIds[index];
+        }
+
+        public double getHigh(int index) {
+            return mHighSteps[index] * TEMPERATURE_STEP;
+        }
+
+        public double getLow(int index) {
+            return mLowSteps[index] * TEMPERATURE_STEP;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Forecast)) {
+                return false;
+            }
+            Forecast other = (Forecast) o;
+            return mFirstDay == other.mFirstDay
+                    && Arrays.equals(mWeatherIds, other.mWeatherIds)
+                    && Arrays.equals(mHighSteps, other.mHighSteps)
+                    && Arrays.equals(mLowSteps, other.mLowSteps);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * mFirstDay + Arrays.hashCode(mWeatherIds))
+                    + Arrays.hashCode(mHighSteps)) + Arrays.hashCode(mLowSteps);
+        }
+
+        private static int[] toSteps(double[] temperatures) {
+            int[] steps = new int[temperatures.length];
+            for (int i = 0; i < temperatures.length; i++) {
+                steps[i] = (int) Math.round(temperatures[i] / TEMPERATURE_STEP);
+            }
+            return steps;
+        }
+    }
+
+    /**
+     * Returns the local day, in days since the epoch, that contains millis.
+     *
+     * @param gmtOffSeconds the local offset from GMT, as in {@link android.text.format.Time}
+     */
+    public static int getLocalDay(long millis, long gmtOffSeconds) {
+        long local = millis + gmtOffSeconds * 1000;
+        long day = local / (24 * 60 * 60 * 1000);
+        if (local < 0 && day * 24 * 60 * 60 * 1000 != local) {
+            day--;
+        }
+        return (int) day;
+    }
+
+    /**
+     * Encodes every day of forecast, to be used later as the base of deltas.
+     *
+     * @param sequence identifies this payload to the deltas against it; must not be negative
+     */
+    public static byte[] encode(Forecast forecast, int sequence) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + 3 * forecast.getDayCount());
+        out.write(VERSION);
+        out.write(KIND_FULL);
+        writeVarint(out, sequence);
+        writeSigned(out, forecast.mFirstDay);
+        writeVarint(out, forecast.getDayCount());
+        int weatherId = 0;
+        int high = 0;
+        int low = 0;
+        for (int i = 0; i < forecast.getDayCount(); i++) {
+            writeSigned(out, forecast.mWeatherIds[i] - weatherId);
+            writeSigned(out, forecast.mHighSteps[i] - high);
+            writeSigned(out, forecast.mLowSteps[i] - low);
+            weatherId = forecast.mWeatherIds[i];
+            high = forecast.mHighSteps[i];
+            low = forecast.mLowSteps[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes what differs in forecast from base.
+     *
+     * @param baseSequence the sequence base was encoded with
+     */
+    public static byte[] encodeDelta(Forecast forecast, Forecast base, int baseSequence) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + forecast.getDayCount());
+        out.write(VERSION);
+        out.write(KIND_DELTA);
+        writeVarint(out, baseSequence);
+        writeSigned(out, forecast.mFirstDay - base.mFirstDay);
+        writeVarint(out, forecast.getDayCount());
+        for (int i = 0; i < forecast.getDayCount(); i++) {
+            int weatherId = forecast.mWeatherIds[i];
+            int high = forecast.mHighSteps[i];
+            int low = forecast.mLowSteps[i];
+            int b = base.indexOf(forecast.mFirstDay + i);
+            if (b < 0) {
+                out.write(FLAG_NEW);
+                writeSigned(out, weatherId);
+                writeSigned(out, high);
+                writeSigned(out, low);
+                continue;
+            }
+            int flags = (weatherId != base.mWeatherIds[b] ? FLAG_WEATHER_ID : 0)
+                    | (high != base.mHighSteps[b] ? FLAG_HIGH : 0)
+                    | (low != base.mLowSteps[b] ? FLAG_LOW : 0);
+            out.write(flags);
+            if ((flags & FLAG_WEATHER_ID) != 0) {
+                writeSigned(out, weatherId - base.mWeatherIds[b]);
+            }
+            if ((flags & FLAG_HIGH) != 0) {
+                writeSigned(out, high - base.mHighSteps[b]);
+            }
+            if ((flags & FLAG_LOW) != 0) {
+                writeSigned(out, low - base.mLowSteps[b]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns true if payload is a delta, and so needs its base to be decoded.
+     */
+    public static boolean isDelta(byte[] payload) {
+        return new Reader(payload).readHeader() == KIND_DELTA;
+    }
+
+    /**
+     * Returns the sequence of a full payload, or the sequence of the base of a delta.
+     */
+    public static int getSequence(byte[] payload) {
+        Reader in = new Reader(payload);
+        in.readHeader();
+        return in.readVarint();
+    }
+
+    /**
+     * Decodes a payload.
+     *
+     * @param base         the forecast a delta is against, or null if there isn't one yet;
+     *                     ignored for a full payload
+     * @param baseSequence the sequence base was decoded from
+     * @return the forecast, or null if payload is a delta against some other base
+     * @throws IllegalArgumentException if payload is malformed or from another version
+     */
+    public static Forecast decode(byte[] payload, Forecast base, int baseSequence) {
+        Reader in = new Reader(payload);
+        int kind = in.readHeader();
+        int sequence = in.readVarint();
+        if (kind == KIND_DELTA && (base == null || sequence != baseSequence)) {
+            return null;
+        }
+
+        int firstDay = in.readSigned();
+        if (kind == KIND_DELTA) {
+            firstDay += base.mFirstDay;
+        }
+        int count = in.readVarint();
+        if (count > MAX_DAYS) {
+            throw new IllegalArgumentException("Too many days: " + count);
+        }
+        int[] weatherIds = new int[count];
+        int[] highs = new int[count];
+        int[] lows = new int[count];
+        int weatherId = 0;
+        int high = 0;
+        int low = 0;
+        for (int i = 0; i < count; i++) {
+            if (kind == KIND_FULL) {
+                weatherId += in.readSigned();
+                high += in.readSigned();
+                low += in.readSigned();
+            } else {
+                int flags = in.readByte();
+                int b = base.indexOf(firstDay + i);
+                if ((flags & FLAG_NEW) != 0) {
+                    weatherId = in.readSigned();
+                    high = in.readSigned();
+                    low = in.readSigned();
+                } else if (b < 0) {
+                    throw new IllegalArgumentException("Day " + i + " isn't in the base");
+                } else {
+                    weatherId = base.mWeatherIds[b]
+                            + ((flags & FLAG_WEATHER_ID) != 0 ? in.readSigned() : 0);
+                    high = base.mHighSteps[b] + ((flags & FLAG_HIGH) != 0 ? in.readSigned() : 0);
+                    low = base.mLowSteps[b] + ((flags & FLAG_LOW) != 0 ? in.readSigned() : 0);
+                }
+            }
+            weatherIds[i] = weatherId;
+            highs[i] = high;
+            lows[i] = low;
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException("Unexpected bytes after day " + count);
+        }
+        return new Forecast(firstDay, weatherIds, highs, lows);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeSigned(ByteArrayOutputStream out, int value) {
+        writeVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    private static class Reader {
+        private final byte[] mBytes;
+        private int mPosition;
+
+        Reader(byte[] bytes) {
+            mBytes = bytes;
+        }
+
+        int readHeader() {
+            int version = readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown version: " + version);
+            }
+            int kind = readByte();
+            if (kind != KIND_FULL && kind != KIND_DELTA) {
+                throw new IllegalArgumentException("Unknown kind: " + kind);
+            }
+            return kind;
+        }
+
+        int readByte() {
+            if (mPosition >= mBytes.length) {
+                throw new IllegalArgumentException("Truncated after " + mPosition + " bytes");
+            }
+            return mBytes[mPosition++] & 0xff;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint too long at " + mPosition);
+        }
+
+        int readSigned() {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        boolean hasRemaining() {
+            return mPosition < mBytes.length;
+        }
+    }
+}
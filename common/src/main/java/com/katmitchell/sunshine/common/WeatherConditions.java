@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.common;
+
+/**
+ * Maps OpenWeatherMap condition codes to the handful of conditions Sunshine has artwork for,
+ * for both the phone app and the watch face.
+ * <p>
+ * The mapping is worked out once, into tables indexed by weatherId - {@link #MIN_WEATHER_ID},
+ * so a lookup is a bounds check and an array load.  Each module keeps its own small array of
+ * drawables indexed by condition, since resources can't be shared through here as constants.
+ * <p>
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public class WeatherConditions {
+
+    public static final int MIN_WEATHER_ID = 200;
+    public static final int MAX_WEATHER_ID = 804;
+
+    public static final int NONE = -1;
+    public static final int STORM = 0;
+    public static final int LIGHT_RAIN = 1;
+    public static final int RAIN = 2;
+    public static final int SNOW = 3;
+    public static final int FOG = 4;
+    public static final int CLEAR = 5;
+    public static final int LIGHT_CLOUDS = 6;
+    public static final int CLOUDS = 7;
+    public static final int CONDITION_COUNT = 8;
+
+    // What each condition is called in the art pack URLs
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    private static final String IMAGE_STORM =
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+    private static final String IMAGE_LIGHT_RAIN =
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+    private static final String IMAGE_RAIN =
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+    private static final String IMAGE_SNOW =
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+    private static final String IMAGE_FOG =
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+    private static final String IMAGE_DUST =
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+    private static final String IMAGE_CLEAR =
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+    private static final String IMAGE_LIGHT_CLOUDS =
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+    private static final String IMAGE_CLOUDS =
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+
+    private static final byte[] sConditions = new byte[MAX_WEATHER_ID - MIN_WEATHER_ID + 1];
+    private static final String[] sImageUrls = new String[MAX_WEATHER_ID - MIN_WEATHER_ID + 1];
+
+    static {
+        fill(200, 232, STORM, IMAGE_STORM);
+        fill(300, 321, LIGHT_RAIN, IMAGE_LIGHT_RAIN);
+        fill(500, 504, RAIN, IMAGE_RAIN);
+        fill(511, 511, SNOW, IMAGE_SNOW);
+        fill(520, 531, RAIN, IMAGE_RAIN);
+        fill(600, 622, SNOW, IMAGE_SNOW);
+        // 761 (dust) falls in the fog range, but 781 (tornado) is a storm
+        fill(701, 761, FOG, IMAGE_FOG);
+        fill(781, 781, STORM, IMAGE_DUST);
+        fill(800, 800, CLEAR, IMAGE_CLEAR);
+        fill(801, 801, LIGHT_CLOUDS, IMAGE_LIGHT_CLOUDS);
+        fill(802, 804, CLOUDS, IMAGE_CLOUDS);
+    }
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * Returns the condition for weatherId, one of {@link #STORM} to {@link #CLOUDS}, or
+     * {@link #NONE} if Sunshine has no artwork for it.
+     */
+    public static int getCondition(int weatherId) {
+        int index = weatherId - MIN_WEATHER_ID;
+        if (index < 0 || index >= sConditions.length) {
+            return NONE;
+        }
+        // Unmapped entries are left at 0, so conditions are stored one up
+        return sConditions[index] - 1;
+    }
+
+    /**
+     * Returns what the condition is called in the art pack URLs.
+     */
+    public static String getArtName(int condition) {
+        return ART_NAMES[condition];
+    }
+
+    /**
+     * Returns the URL of a photo for weatherId, or null if there isn't one.
+     */
+    public static String getImageUrl(int weatherId) {
+        int index = weatherId - MIN_WEATHER_ID;
+        if (index < 0 || index >= sImageUrls.length) {
+            return null;
+        }
+        return sImageUrls[index];
+    }
+
+    /**
+     * Returns resourcesByCondition[getCondition(weatherId)], or -1 if there is no condition.
+     */
+    public static int getResource(int[] resourcesByCondition, int weatherId) {
+        int condition = getCondition(weatherId);
+        return condition == NONE ? -1 : resourcesByCondition[condition];
+    }
+
+    private static void fill(int firstId, int lastId, int condition, String imageUrl) {
+        for (int id = firstId; id <= lastId; id++) {
+            int index = id - MIN_WEATHER_ID;
+            // Earlier ranges win, as they did in the if/else chains this replaced
+            if (sConditions[index] == 0) {
+                sConditions[index] = (byte) (condition + 1);
+                sImageUrls[index] = imageUrl;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine.common;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+/**
+ * The watch face's weather icons, each decoded once, with the variants it draws in ambient
+ * mode made from it at the same time.
+ * <p>
+ * Going in or out of ambient mode only picks another of the bitmaps already here, so it
+ * neither decodes nor allocates.  Icons are only decoded when their condition is first asked
+ * for, and are kept for as long as the cache is.
+ */
+public class WeatherIcons {
+
+    public static final int MODE_COLOR = 0;
+    public static final int MODE_GRAYSCALE = 1;
+    // Pixels fully on or off, for screens with fewer bits in ambient mode
+    public static final int MODE_LOW_BIT = 2;
+    private static final int MODE_COUNT = 3;
+
+    // Brighter than this, in gray, is on in low-bit mode
+    private static final int LOW_BIT_THRESHOLD = 0x80;
+
+    private final Resources mResources;
+    private final int[] mResourcesByCondition;
+    private final Bitmap[] mIcons = new Bitmap[WeatherConditions.CONDITION_COUNT * MODE_COUNT];
+    private final Paint mGrayscalePaint = new Paint();
+    private int mDecodeCount;
+
+    /**
+     * @param resourcesByCondition the icon for each {@link WeatherConditions} condition
+     */
+    public WeatherIcons(Resources resources, int[] resourcesByCondition) {
+        mResources = resources;
+        mResourcesByCondition = resourcesByCondition;
+        ColorMatrix matrix = new ColorMatrix();
+        matrix.setSaturation(0);
+        mGrayscalePaint.setColorFilter(new ColorMatrixColorFilter(matrix));
+    }
+
+    /**
+     * Returns the icon for condition, drawn for mode, decoding it first if it is the first
+     * time the condition has been asked for.
+     */
+    public Bitmap get(int condition, int mode) {
+        int index = condition * MODE_COUNT;
+        if (mIcons[index] == null) {
+            load(condition);
+        }
+        return mIcons[index + mode];
+    }
+
+    /**
+     * Returns true if condition has been decoded, so getting any of its icons is free.
+     */
+    public boolean contains(int condition) {
+        return mIcons[condition * MODE_COUNT] != null;
+    }
+
+    /**
+     * Returns how many icons have been decoded, for testing.
+     */
+    public int getDecodeCount() {
+        return mDecodeCount;
+    }
+
+    private void load(int condition) {
+        Bitmap color = BitmapFactory.decodeResource(mResources,
+                mResourcesByCondition[condition]);
+        mDecodeCount++;
+        int index = condition * MODE_COUNT;
+        mIcons[index + MODE_COLOR] = color;
+        mIcons[index + MODE_GRAYSCALE] = toGrayscale(color);
+        mIcons[index + MODE_LOW_BIT] = toLowBit(mIcons[index + MODE_GRAYSCALE]);
+    }
+
+    private Bitmap toGrayscale(Bitmap color) {
+        Bitmap grayscale = Bitmap.createBitmap(color.getWidth(), color.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        new Canvas(grayscale).drawBitmap(color, 0, 0, mGrayscalePaint);
+        return grayscale;
+    }
+
+    private static Bitmap toLowBit(Bitmap grayscale) {
+        int width = grayscale.getWidth();
+        int height = grayscale.getHeight();
+        int[] pixels = new int[width * height];
+        grayscale.getPixels(pixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            // Weighted by alpha, so faint edges go off rather than become solid
+            int brightness = Color.red(pixel) * Color.alpha(pixel) / 0xff;
+            pixels[i] = brightness >= LOW_BIT_THRESHOLD ? Color.WHITE : Color.TRANSPARENT;
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.katmitchell.sunshine;
+
+import android.util.Log;
+
+import com.katmitchell.sunshine.common.ForecastPayload;
+
+/**
+ * Puts the forecast back together from the payloads the phone sends: the base, which only
+ * changes now and then, and the latest delta against it.  Either can arrive first, so the
+ * latest delta is kept until the base it was made against turns up.
+ */
+class ForecastDecoder {
+
+    private static final String TAG = "ForecastDecoder";
+
+    static final String BASE_PATH = "/forecast/base";
+    static final String PATH = "/forecast";
+    static final String KEY_PAYLOAD = "payload";
+
+    private ForecastPayload.Forecast mBase;
+    private int mBaseSequence;
+    private byte[] mDelta;
+    private ForecastPayload.Forecast mForecast;
+
+    /**
+     * Takes the payload put at path.
+     *
+     * @return true if the forecast changed
+     */
+    boolean onPayload(String path, byte[] payload) {
+        if (payload == null) {
+            return false;
+        }
+        try {
+            if (BASE_PATH.equals(path)) {
+                mBase = ForecastPayload.decode(payload, null, 0);
+                mBaseSequence = ForecastPayload.getSequence(payload);
+            } else if (PATH.equals(path)) {
+                mDelta = payload;
+            } else {
+                return false;
+            }
+            if (mDelta == null || mBase == null) {
+                return false;
+            }
+            ForecastPayload.Forecast forecast =
+                    ForecastPayload.decode(mDelta, mBase, mBaseSequence);
+            if (forecast == null || forecast.equals(mForecast)) {
+                // Waiting for the base, or nothing new
+                return false;
+            }
+            mForecast = forecast;
+            return true;
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Couldn't decode " + path, e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the latest forecast, or null if there isn't one yet.
+     */
+    ForecastPayload.Forecast getForecast() {
+        return mForecast;
+    }
+}
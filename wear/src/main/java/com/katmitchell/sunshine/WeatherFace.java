@@ -18,14 +18,20 @@ package com.katmitchell.sunshine;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
-import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.Wearable;
 
 import com.katmitchell.sunshine.R;
+import com.katmitchell.sunshine.common.FaceText;
+import com.katmitchell.sunshine.common.ForecastPayload;
+import com.katmitchell.sunshine.common.WeatherConditions;
+import com.katmitchell.sunshine.common.WeatherIcons;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
@@ -33,11 +39,8 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
@@ -46,14 +49,12 @@ import android.os.Handler;
 import android.os.Message;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
 import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -79,6 +80,12 @@ public class WeatherFace extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    // Indexed by WeatherConditions condition, as in the phone app
+    private static final int[] ICON_RESOURCES = {
+            R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain, R.drawable.ic_snow,
+            R.drawable.ic_fog, R.drawable.ic_clear, R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+    };
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -125,41 +132,82 @@ public class WeatherFace extends CanvasWatchFaceService {
 
         boolean mAmbient;
 
-        Time mTime;
+        // What onDraw draws, so that it draws without allocating
+        FaceText mFaceText;
 
-        Date mDate;
+        final ForecastDecoder mForecastDecoder = new ForecastDecoder();
 
-        SimpleDateFormat mDateFormat;
+        // The local day the weather shown is for, or -1 if it needs looking up again
+        int mShownDay = -1;
 
-        int mWeatherId;
+        WeatherIcons mWeatherIcons;
 
-        String mTempHigh = "90", mTempLow = "60";
+        // The WeatherConditions condition shown
+        int mCondition = WeatherConditions.CLEAR;
 
         Bitmap mWeatherBitmap;
 
+        // When ambient mode last changed, until the frame after it is drawn, if timing that
+        long mAmbientChangeNanos;
+
         @Override
         public void onDataChanged(DataEventBuffer dataEventBuffer) {
             Log.d(TAG, "onDataChanged: ");
 
+            boolean changed = false;
             for (DataEvent event : dataEventBuffer) {
-                DataMap dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
-                mWeatherId = dataMap.getInt("weather_id");
-                mTempHigh = Integer.toString((int) dataMap.getDouble("high"));
-                mTempLow = Integer.toString((int) dataMap.getDouble("low"));
+                if (event.getType() == DataEvent.TYPE_CHANGED) {
+                    changed |= onDataItem(event.getDataItem());
+                }
+            }
+            if (changed) {
+                onForecastChanged();
+            }
+        }
 
-                setWeatherBitmap();
+        private boolean onDataItem(DataItem item) {
+            byte[] payload = DataMapItem.fromDataItem(item).getDataMap()
+                    .getByteArray(ForecastDecoder.KEY_PAYLOAD);
+            return mForecastDecoder.onPayload(item.getUri().getPath(), payload);
+        }
 
-                invalidate();
+        private void onForecastChanged() {
+            mShownDay = -1;
+            showToday();
+            invalidate();
+        }
+
+        /**
+         * Shows today's weather from the forecast, if it has any, and the day has changed
+         * since it was last shown.
+         */
+        private void showToday() {
+            ForecastPayload.Forecast forecast = mForecastDecoder.getForecast();
+            if (forecast == null) {
+                return;
+            }
+            int today = mFaceText.getLocalDay(System.currentTimeMillis());
+            int index = forecast.indexOf(today);
+            if (today == mShownDay || index < 0) {
+                // Past the end of the forecast, the last day shown is the best there is
+                return;
             }
+            mShownDay = today;
+            int condition = WeatherConditions.getCondition(forecast.getWeatherId(index));
+            if (condition != WeatherConditions.NONE) {
+                mCondition = condition;
+            }
+            mFaceText.setTemperatures((int) forecast.getHigh(index),
+                    (int) forecast.getLow(index));
+            setWeatherBitmap();
         }
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
-
-                mDate = new Date();
+                String timeZone = intent.getStringExtra("time-zone");
+                mFaceText.setTimeZone(timeZone != null
+                        ? TimeZone.getTimeZone(timeZone) : TimeZone.getDefault());
             }
         };
 
@@ -212,11 +260,9 @@ public class WeatherFace extends CanvasWatchFaceService {
 
             mTimePaint = new Paint();
             mTimePaint = createTextPaint(resources.getColor(R.color.solid_text));
-            mTime = new Time();
 
             mDatePaint = new Paint();
             mDatePaint = createTextPaint(resources.getColor(R.color.alpha_text));
-            mDate = new Date();
 
             mHighPaint = new Paint();
             mHighPaint = createTextPaint(resources.getColor(R.color.solid_text));
@@ -224,9 +270,12 @@ public class WeatherFace extends CanvasWatchFaceService {
             mLowPaint = new Paint();
             mLowPaint = createTextPaint(resources.getColor(R.color.alpha_text));
 
-            mDateFormat = new SimpleDateFormat("EEE, MMM d yyyy");
+            mFaceText = new FaceText(new SimpleDateFormat("EEE, MMM d yyyy"),
+                    TimeZone.getDefault());
+            mFaceText.setTemperatures(90, 60);
 
-            mWeatherBitmap = BitmapFactory.decodeResource(resources, R.drawable.ic_clear);
+            mWeatherIcons = new WeatherIcons(resources, ICON_RESOURCES);
+            setWeatherBitmap();
 
             mGoogleApiClient = new GoogleApiClient.Builder(getApplicationContext())
                     .addConnectionCallbacks(new GoogleApiClient.ConnectionCallbacks() {
@@ -234,6 +283,7 @@ public class WeatherFace extends CanvasWatchFaceService {
                         public void onConnected(Bundle connectionHint) {
                             Log.d(TAG, "onConnected: " + connectionHint);
                             Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
+                            loadDataItems();
                         }
 
                         @Override
@@ -251,6 +301,28 @@ public class WeatherFace extends CanvasWatchFaceService {
                     // Request access only to the Wearable API
                     .addApi(Wearable.API)
                     .build();
+            mGoogleApiClient.connect();
+        }
+
+        /**
+         * Reads the forecast the phone has already sent, since the listener only hears about
+         * what changes from now on.
+         */
+        private void loadDataItems() {
+            Wearable.DataApi.getDataItems(mGoogleApiClient).setResultCallback(
+                    new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            boolean changed = false;
+                            for (DataItem item : dataItems) {
+                                changed |= onDataItem(item);
+                            }
+                            dataItems.release();
+                            if (changed) {
+                                onForecastChanged();
+                            }
+                        }
+                    });
         }
 
         @Override
@@ -279,8 +351,8 @@ public class WeatherFace extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
+                mFaceText.setTimeZone(TimeZone.getDefault());
+                showToday();
             } else {
                 unregisterReceiver();
             }
@@ -346,11 +418,14 @@ public class WeatherFace extends CanvasWatchFaceService {
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            setWeatherBitmap();
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            // The next day's weather is already here, from the full forecast
+            showToday();
             invalidate();
         }
 
@@ -358,6 +433,11 @@ public class WeatherFace extends CanvasWatchFaceService {
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
+                // Timed to the end of the next frame; turn on with
+                // adb shell setprop log.tag.WeatherFace DEBUG
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    mAmbientChangeNanos = System.nanoTime();
+                }
                 mAmbient = inAmbientMode;
                 if (mLowBitAmbient) {
                     mTimePaint.setAntiAlias(!inAmbientMode);
@@ -366,12 +446,7 @@ public class WeatherFace extends CanvasWatchFaceService {
                     mLowPaint.setAntiAlias(!inAmbientMode);
 
                 }
-                if (mAmbient) {
-                    mWeatherBitmap = toGrayscale(mWeatherBitmap);
-                } else {
-                    mWeatherBitmap = BitmapFactory
-                            .decodeResource(getResources(), R.drawable.ic_clear);
-                }
+                setWeatherBitmap();
                 invalidate();
             }
 
@@ -381,58 +456,14 @@ public class WeatherFace extends CanvasWatchFaceService {
         }
 
 
+        /**
+         * Picks the icon for the condition shown and the current mode.  Only the first time a
+         * condition is shown is it decoded.
+         */
         private void setWeatherBitmap() {
-            int weatherRes = getIconResourceForWeatherCondition(mWeatherId);
-            mWeatherBitmap = BitmapFactory.decodeResource(getResources(), weatherRes);
-
-            if (mAmbient) {
-                mWeatherBitmap = toGrayscale(mWeatherBitmap);
-            }
-        }
-
-        public int getIconResourceForWeatherCondition(int weatherId) {
-            // Based on weather code data found at:
-            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-            if (weatherId >= 200 && weatherId <= 232) {
-                return R.drawable.ic_storm;
-            } else if (weatherId >= 300 && weatherId <= 321) {
-                return R.drawable.ic_light_rain;
-            } else if (weatherId >= 500 && weatherId <= 504) {
-                return R.drawable.ic_rain;
-            } else if (weatherId == 511) {
-                return R.drawable.ic_snow;
-            } else if (weatherId >= 520 && weatherId <= 531) {
-                return R.drawable.ic_rain;
-            } else if (weatherId >= 600 && weatherId <= 622) {
-                return R.drawable.ic_snow;
-            } else if (weatherId >= 701 && weatherId <= 761) {
-                return R.drawable.ic_fog;
-            } else if (weatherId == 761 || weatherId == 781) {
-                return R.drawable.ic_storm;
-            } else if (weatherId == 800) {
-                return R.drawable.ic_clear;
-            } else if (weatherId == 801) {
-                return R.drawable.ic_light_clouds;
-            } else if (weatherId >= 802 && weatherId <= 804) {
-                return R.drawable.ic_cloudy;
-            }
-            return -1;
-        }
-
-        private Bitmap toGrayscale(Bitmap bmpOriginal) {
-            int width, height;
-            height = bmpOriginal.getHeight();
-            width = bmpOriginal.getWidth();
-
-            Bitmap bmpGrayscale = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            Canvas c = new Canvas(bmpGrayscale);
-            Paint paint = new Paint();
-            ColorMatrix cm = new ColorMatrix();
-            cm.setSaturation(0);
-            ColorMatrixColorFilter f = new ColorMatrixColorFilter(cm);
-            paint.setColorFilter(f);
-            c.drawBitmap(bmpOriginal, 0, 0, paint);
-            return bmpGrayscale;
+            int mode = !mAmbient ? WeatherIcons.MODE_COLOR
+                    : mLowBitAmbient ? WeatherIcons.MODE_LOW_BIT : WeatherIcons.MODE_GRAYSCALE;
+            mWeatherBitmap = mWeatherIcons.get(mCondition, mode);
         }
 
         @Override
@@ -445,21 +476,27 @@ public class WeatherFace extends CanvasWatchFaceService {
             }
 
             // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
-            mTime.setToNow();
-            String timeText = String.format("%d:%02d", mTime.hour, mTime.minute);
-            canvas.drawText(timeText, mXOffsetTime, mYOffsetTime, mTimePaint);
-
-            mDate = new Date();
-            String dateText = mDateFormat.format(mDate);
-            canvas.drawText(dateText, mXOffsetDate, mYOffsetDate, mDatePaint);
-
-            canvas.drawText(mTempHigh + "\u00B0", mXOffsetHigh, mYOffsetTemp, mHighPaint);
-            canvas.drawText(mTempLow + "\u00B0", mXOffsetLow, mYOffsetTemp, mLowPaint);
+            // The date is only formatted again when the day changes
+            FaceText text = mFaceText;
+            text.update(System.currentTimeMillis());
+            canvas.drawText(text.time, 0, text.timeLength, mXOffsetTime, mYOffsetTime,
+                    mTimePaint);
+            canvas.drawText(text.date, 0, text.dateLength, mXOffsetDate, mYOffsetDate,
+                    mDatePaint);
+            canvas.drawText(text.high, 0, text.highLength, mXOffsetHigh, mYOffsetTemp,
+                    mHighPaint);
+            canvas.drawText(text.low, 0, text.lowLength, mXOffsetLow, mYOffsetTemp, mLowPaint);
 
             canvas.drawBitmap(mWeatherBitmap, mXOffsetImage, mYOffsetImage, mHighPaint);
 
             canvas.drawLine(mDividerLeft, mYOffsetDivider, mDividerRight, mYOffsetDivider,
                     mLowPaint);
+
+            if (mAmbientChangeNanos != 0) {
+                Log.d(TAG, "Ambient transition took " +
+                        (System.nanoTime() - mAmbientChangeNanos) / 1000 + "us");
+                mAmbientChangeNanos = 0;
+            }
         }
 
         /**